@@ -97,6 +97,26 @@ public class AppInfo implements JSONSerializable {
 		raw = data;
 	}
 
+	/**
+	 * Gets the URL of the app's icon, if the first screen device reported one.
+	 * Use IconCache to load it.
+	 */
+	public String getIconURL() {
+		if (raw == null)
+			return null;
+
+		String[] keys = { "largeIcon", "icon", "iconUrl", "iconURL" };
+
+		for (String key : keys) {
+			String url = raw.optString(key, null);
+
+			if (url != null && url.length() > 0)
+				return url;
+		}
+
+		return null;
+	}
+
 	// @cond INTERNAL
 	@Override
 	public JSONObject toJSONObject() throws JSONException {
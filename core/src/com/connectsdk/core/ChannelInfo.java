@@ -57,6 +57,19 @@ public class ChannelInfo implements JSONSerializable {
 		this.rawData = rawData;
 	}
 	
+	/** Gets the URL of the channel's logo, if the first screen device reported one. Use IconCache to load it. */
+	public String getIconURL() {
+		if (rawData == null)
+			return null;
+		
+		String url = rawData.optString("imgUrl", null);
+		
+		if (url == null || url.length() == 0)
+			url = rawData.optString("channelLogo", null);
+		
+		return (url == null || url.length() == 0) ? null : url;
+	}
+	
 	/** Gets the user-friendly name of the channel */
 	public String getName() {
 		return channelName;
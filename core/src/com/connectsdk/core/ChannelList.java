@@ -0,0 +1,243 @@
+/*
+ * ChannelList
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.core;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Latest snapshot of a TV's channel list.
+ *
+ * Each update is compared with the previous snapshot, channel by channel, and
+ * the differences are returned as a Diff. Channels that did not change keep
+ * their ChannelInfo object from the previous snapshot, so repeated refreshes
+ * of a large list do not keep a second copy of it alive.
+ *
+ * Services can also record a digest of the payload a snapshot was built
+ * from. A refresh that returns the same payload is then recognised with
+ * hasPayload() before any ChannelInfo is built. Only the digest is kept, not
+ * the payload.
+ */
+public class ChannelList {
+	private List<ChannelInfo> channels = Collections.emptyList();
+	private Map<String, Entry> entries = new HashMap<String, Entry>();
+	private byte[] payloadDigest;
+
+	private static class Entry {
+		final ChannelInfo channel;
+		final int fingerprint;
+
+		Entry(ChannelInfo channel, int fingerprint) {
+			this.channel = channel;
+			this.fingerprint = fingerprint;
+		}
+	}
+
+	/**
+	 * Changes between two snapshots of a channel list.
+	 */
+	public static class Diff {
+		final List<ChannelInfo> added;
+		final List<ChannelInfo> removed;
+		final List<ChannelInfo> changed;
+		final ChannelList channelList;
+
+		Diff(List<ChannelInfo> added, List<ChannelInfo> removed, List<ChannelInfo> changed, ChannelList channelList) {
+			this.added = Collections.unmodifiableList(added);
+			this.removed = Collections.unmodifiableList(removed);
+			this.changed = Collections.unmodifiableList(changed);
+			this.channelList = channelList;
+		}
+
+		/** Channels that were not in the previous snapshot */
+		public List<ChannelInfo> getAdded() {
+			return added;
+		}
+
+		/** Channels from the previous snapshot that are gone */
+		public List<ChannelInfo> getRemoved() {
+			return removed;
+		}
+
+		/** New versions of channels whose data changed */
+		public List<ChannelInfo> getChanged() {
+			return changed;
+		}
+
+		/** Returns true if nothing was added, removed or changed */
+		public boolean isEmpty() {
+			return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+		}
+
+		/** Gets the channel list the diff was applied to */
+		public ChannelList getChannelList() {
+			return channelList;
+		}
+	}
+
+	/**
+	 * Replaces the snapshot with a new list of channels.
+	 *
+	 * @return what changed compared to the previous snapshot
+	 */
+	public synchronized Diff update(List<ChannelInfo> newChannels) {
+		return update(newChannels, null, null);
+	}
+
+	/**
+	 * Replaces the snapshot with a new list of channels.
+	 *
+	 * @param fingerprints hashes of the channels' raw data, in the same order,
+	 * or null to compute them from the channels
+	 * @param payloadDigest digest of the payload the channels were parsed
+	 * from, or null
+	 * @return what changed compared to the previous snapshot
+	 */
+	public synchronized Diff update(List<ChannelInfo> newChannels, int[] fingerprints, byte[] payloadDigest) {
+		List<ChannelInfo> added = new ArrayList<ChannelInfo>();
+		List<ChannelInfo> changed = new ArrayList<ChannelInfo>();
+
+		List<ChannelInfo> snapshot = new ArrayList<ChannelInfo>(newChannels.size());
+		Map<String, Entry> newEntries = new HashMap<String, Entry>(newChannels.size() * 2);
+
+		for (int i = 0; i < newChannels.size(); i++) {
+			ChannelInfo channel = newChannels.get(i);
+			String key = keyFor(channel);
+			int fingerprint = fingerprints != null ? fingerprints[i] : fingerprintOf(channel);
+			Entry previous = entries.remove(key);
+
+			if (previous == null) {
+				added.add(channel);
+			} else if (previous.fingerprint != fingerprint) {
+				changed.add(channel);
+			} else {
+				channel = previous.channel;
+			}
+
+			snapshot.add(channel);
+			newEntries.put(key, new Entry(channel, fingerprint));
+		}
+
+		// whatever is left over was not in the new list
+		List<ChannelInfo> removed = new ArrayList<ChannelInfo>(entries.size());
+		for (Entry entry : entries.values()) {
+			removed.add(entry.channel);
+		}
+
+		channels = Collections.unmodifiableList(snapshot);
+		entries = newEntries;
+		this.payloadDigest = payloadDigest;
+
+		return new Diff(added, removed, changed, this);
+	}
+
+	/**
+	 * Returns an empty diff, for a refresh that is known to have returned the
+	 * same data as the previous one.
+	 */
+	public Diff unchanged() {
+		List<ChannelInfo> none = Collections.emptyList();
+
+		return new Diff(none, none, none, this);
+	}
+
+	/**
+	 * @return true if the current snapshot was built from a payload with this
+	 * digest
+	 */
+	public synchronized boolean hasPayload(byte[] digest) {
+		return digest != null && Arrays.equals(digest, payloadDigest);
+	}
+
+	/**
+	 * @return a digest to feed a channel list payload into, or null if the
+	 * platform has none
+	 */
+	public static MessageDigest createPayloadDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets all channels of the current snapshot, in the order the TV reported
+	 * them. The list is read-only and shared.
+	 */
+	public synchronized List<ChannelInfo> getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Gets a page of the current snapshot.
+	 *
+	 * @param offset index of the first channel
+	 * @param count maximum number of channels to return
+	 */
+	public synchronized List<ChannelInfo> getChannels(int offset, int count) {
+		if (offset < 0 || count < 0)
+			throw new IllegalArgumentException("offset and count must not be negative");
+
+		int from = Math.min(offset, channels.size());
+		int to = Math.min(channels.size(), from + count);
+
+		return channels.subList(from, to);
+	}
+
+	public synchronized ChannelInfo get(int index) {
+		return channels.get(index);
+	}
+
+	public synchronized int size() {
+		return channels.size();
+	}
+
+	/** Drops the current snapshot, so that the next update reports every channel as added */
+	public synchronized void clear() {
+		channels = Collections.emptyList();
+		entries = new HashMap<String, Entry>();
+		payloadDigest = null;
+	}
+
+	private static String keyFor(ChannelInfo channel) {
+		if (channel.getId() != null)
+			return channel.getId();
+
+		return channel.getNumber() + "|" + channel.getName();
+	}
+
+	private static int fingerprintOf(ChannelInfo channel) {
+		if (channel.getRawData() != null)
+			return channel.getRawData().toString().hashCode();
+
+		int hash = channel.getMajorNumber() * 31 + channel.getMinorNumber();
+		hash = hash * 31 + (channel.getNumber() != null ? channel.getNumber().hashCode() : 0);
+		hash = hash * 31 + (channel.getName() != null ? channel.getName().hashCode() : 0);
+
+		return hash;
+	}
+}
@@ -45,6 +45,8 @@ import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import com.connectsdk.core.ImageInfo;
+import com.connectsdk.core.ImageInfo.ImageType;
 import com.connectsdk.core.upnp.service.Service;
 import com.connectsdk.core.upnp.ssdp.SSDP;
 
@@ -103,6 +105,7 @@ public class Device {
     public String serviceURI;
 
     public String baseURL;
+    public String locationURL;
     public String ipAddress;
     public int port;
     public String UUID;
@@ -112,6 +115,8 @@ public class Device {
 	public Device(String url, String searchTarget) throws IOException {
     	URL urlObject = new URL(url);
 
+    	locationURL = url;
+
     	if (urlObject.getPort() == -1) {
     		baseURL = String.format("%s://%s", urlObject.getProtocol(), urlObject.getHost());
     	} else {
@@ -333,6 +338,42 @@ public class Device {
     	}
     }
     
+    /**
+     * Gets the icons from the device description, with URLs resolved against
+     * the description's location.
+     */
+    public List<ImageInfo> getIconList() {
+    	List<ImageInfo> icons = new ArrayList<ImageInfo>();
+
+    	for (Icon icon : iconList) {
+    		if (icon.url == null)
+    			continue;
+
+    		String url;
+
+    		try {
+    			url = new URL(new URL(locationURL), icon.url.trim()).toString();
+    		} catch (MalformedURLException e) {
+    			continue;
+    		}
+
+    		icons.add(new ImageInfo(url, ImageType.Unknown, parseInt(icon.width), parseInt(icon.height)));
+    	}
+
+    	return icons;
+    }
+
+    private static int parseInt(String value) {
+    	if (value == null)
+    		return 0;
+
+    	try {
+    		return Integer.parseInt(value.trim());
+    	} catch (NumberFormatException e) {
+    		return 0;
+    	}
+    }
+
     @Override
     public String toString() {
         return friendlyName;
@@ -31,6 +31,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.connectsdk.core.ImageInfo;
 import com.connectsdk.core.Util;
 import com.connectsdk.discovery.DiscoveryManager;
 import com.connectsdk.service.DeviceService;
@@ -854,6 +855,36 @@ public class ConnectableDevice implements DeviceServiceListener {
 	public String getModelNumber() {
 		return modelNumber;
 	}
+
+	/**
+	 * Gets the icons advertised in the UPnP device descriptions of the ConnectableDevice's services. Use IconCache to load them.
+	 */
+	public List<ImageInfo> getIconList() {
+		List<ImageInfo> icons = new ArrayList<ImageInfo>();
+
+		for (DeviceService service : getServices()) {
+			ServiceDescription description = service.getServiceDescription();
+
+			if (description == null || description.getIconList() == null)
+				continue;
+
+			for (ImageInfo icon : description.getIconList()) {
+				boolean found = false;
+
+				for (ImageInfo existing : icons) {
+					if (existing.getUrl().equals(icon.getUrl())) {
+						found = true;
+						break;
+					}
+				}
+
+				if (!found)
+					icons.add(icon);
+			}
+		}
+
+		return icons;
+	}
 	
 	/**
 	 * Sets the universally unique id of this particular ConnectableDevice object. This is used internally in the SDK and should not be used.
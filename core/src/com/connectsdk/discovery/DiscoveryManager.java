@@ -40,6 +40,7 @@ import com.connectsdk.service.DLNAService;
 import com.connectsdk.service.DeviceService;
 import com.connectsdk.service.DeviceService.PairingType;
 import com.connectsdk.service.NetcastTVService;
+import com.connectsdk.service.WebOSTVService;
 import com.connectsdk.service.command.ServiceCommandError;
 import com.connectsdk.service.config.ServiceConfig;
 import com.connectsdk.service.config.ServiceConfig.ServiceConfigListener;
@@ -123,6 +124,8 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
     
     PairingLevel pairingLevel;
     
+    boolean preconnectEnabled = false;
+    
     private boolean mSearching = false;
     
     // @endcond
@@ -667,6 +670,22 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
 		this.pairingLevel = pairingLevel;
 	}
 	
+	/**
+	 * @return true if discovered services are connected in the background; see setPreconnectEnabled()
+	 */
+	public boolean isPreconnectEnabled() {
+		return preconnectEnabled;
+	}
+	
+	/**
+	 * Whether services that support it should connect in the background as soon as they are discovered, so that connecting to the ConnectableDevice later on is faster.
+	 *
+	 * Only services that have been paired before are preconnected; no pairing prompts are shown and no listener callbacks are made until the ConnectableDevice is connected. This is off by default.
+	 */
+	public void setPreconnectEnabled(boolean preconnectEnabled) {
+		this.preconnectEnabled = preconnectEnabled;
+	}
+	
 	// @cond INTERNAL
 	public Context getContext() {
 		return context;
@@ -837,6 +856,9 @@ public class DiscoveryManager implements ConnectableDeviceListener, DiscoveryPro
         if (deviceService != null) {
             deviceService.setServiceDescription(desc);
 		    device.addService(deviceService);
+		    
+		    if (preconnectEnabled && deviceService instanceof WebOSTVService)
+		    	((WebOSTVService) deviceService).preconnect();
         }
 	}
 	// @endcond
@@ -407,6 +407,7 @@ public class SSDPDiscoveryProvider implements DiscoveryProvider {
 		            			service.setManufacturer(device.manufacturer);
 		            			service.setApplicationURL(device.applicationURL);
 		            			service.setServiceList(device.serviceList);
+		            			service.setIconList(device.getIconList());
 		            			service.setResponseHeaders(device.headers);
 		            			service.setLocationXML(device.locationXML);
 		            			service.setServiceURI(device.serviceURI);
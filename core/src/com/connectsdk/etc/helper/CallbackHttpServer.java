@@ -0,0 +1,601 @@
+/*
+ * CallbackHttpServer
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.etc.helper;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.connectsdk.core.Util;
+
+/**
+ * Embedded HTTP server that receives callbacks from devices, such as UPnP
+ * GENA event notifications and Netcast UDAP events.
+ *
+ * There is one server for the whole SDK. It is started when the first
+ * handler is added and stopped when the last one is removed. Requests are
+ * routed to handlers by path prefix. All connections are served by a single
+ * selector thread, and handlers are called on a single worker thread, in
+ * the order requests were received, so the number of threads does not grow
+ * with the number of connected devices.
+ *
+ * The server listens on DEFAULT_PORT, or on an ephemeral port if that one
+ * is taken; getPort() tells which. Protocols that call back on a fixed port
+ * can ask for it to be opened as well.
+ */
+public class CallbackHttpServer {
+	public static final int DEFAULT_PORT = 49291;
+
+	// connections that have not sent a complete request by then are dropped
+	static final long CONNECTION_TIMEOUT = 30 * 1000;
+
+	static final int READ_BUFFER_SIZE = 8 * 1024;
+
+	private static CallbackHttpServer instance;
+
+	/**
+	 * Handles requests for a path. Handlers are called on the server's worker
+	 * thread, and the request is answered once they are done: 200 OK if one
+	 * of them handled it, 404 Not Found if none did. Devices wait for that
+	 * answer, so handlers should return quickly.
+	 */
+	public interface RequestHandler {
+		/**
+		 * @param remoteAddress address of the device that sent the request
+		 * @return true if the request was handled, false to offer it to the
+		 * next handler for the same path
+		 */
+		public boolean onRequest(InetAddress remoteAddress, HttpRequestDecoder request);
+	}
+
+	private static class Route {
+		final String path;
+		final int port;
+		final RequestHandler handler;
+
+		Route(String path, int port, RequestHandler handler) {
+			this.path = path;
+			this.port = port;
+			this.handler = handler;
+		}
+	}
+
+	/** State of one client connection */
+	private static class Connection {
+		final HttpRequestDecoder decoder = new HttpRequestDecoder();
+		ByteBuffer response;
+		long lastActivity = SystemClock.elapsedRealtime();
+	}
+
+	private final List<Route> routes = new ArrayList<Route>();
+
+	private Loop loop;
+
+	public static synchronized CallbackHttpServer getInstance() {
+		if (instance == null)
+			instance = new CallbackHttpServer();
+
+		return instance;
+	}
+
+	private CallbackHttpServer() { }
+
+	/**
+	 * Routes requests whose path starts with path to handler, starting the
+	 * server if needed.
+	 *
+	 * @throws IOException if the server could not be started
+	 */
+	public void addHandler(String path, RequestHandler handler) throws IOException {
+		addHandler(path, 0, handler);
+	}
+
+	/**
+	 * Like addHandler(String, RequestHandler), and also listens on port for
+	 * as long as handler is registered.
+	 *
+	 * @throws IOException if the server could not be started or port could
+	 * not be opened
+	 */
+	public synchronized void addHandler(String path, int port, RequestHandler handler) throws IOException {
+		boolean started = false;
+
+		if (loop == null) {
+			loop = new Loop();
+			started = true;
+		}
+
+		try {
+			if (port > 0 && !loop.isListening(port))
+				loop.listen(port);
+		} catch (IOException ex) {
+			if (started) {
+				loop.shutdown();
+				loop = null;
+			}
+
+			throw ex;
+		}
+
+		routes.add(new Route(path, port, handler));
+
+		if (started)
+			loop.start();
+	}
+
+	/**
+	 * Removes all routes to handler. The server stops when no handlers are
+	 * left.
+	 */
+	public synchronized void removeHandler(RequestHandler handler) {
+		List<Integer> ports = new ArrayList<Integer>();
+
+		for (Iterator<Route> iterator = routes.iterator(); iterator.hasNext(); ) {
+			Route route = iterator.next();
+
+			if (route.handler == handler) {
+				iterator.remove();
+
+				if (route.port > 0)
+					ports.add(route.port);
+			}
+		}
+
+		if (loop == null)
+			return;
+
+		if (routes.isEmpty()) {
+			loop.shutdown();
+			loop = null;
+			return;
+		}
+
+		// close fixed ports nobody needs any more
+		for (Integer port : ports) {
+			if (!isPortUsed(port))
+				loop.unlisten(port);
+		}
+	}
+
+	/**
+	 * @return the port callbacks should be addressed to, or -1 if the server
+	 * is not running
+	 */
+	public synchronized int getPort() {
+		return loop != null ? loop.mainPort : -1;
+	}
+
+	public synchronized boolean isRunning() {
+		return loop != null;
+	}
+
+	private boolean isPortUsed(int port) {
+		for (Route route : routes) {
+			if (route.port == port)
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the handlers for path, longest prefix first
+	 */
+	private synchronized List<RequestHandler> findHandlers(String path) {
+		List<Route> matches = new ArrayList<Route>();
+
+		if (path == null)
+			return new ArrayList<RequestHandler>();
+
+		for (Route route : routes) {
+			if (path.startsWith(route.path)) {
+				int index = 0;
+
+				while (index < matches.size() && matches.get(index).path.length() >= route.path.length())
+					index++;
+
+				matches.add(index, route);
+			}
+		}
+
+		List<RequestHandler> handlers = new ArrayList<RequestHandler>(matches.size());
+
+		for (Route route : matches) {
+			handlers.add(route.handler);
+		}
+
+		return handlers;
+	}
+
+	/**
+	 * Offers request to handlers in order, until one of them handles it.
+	 *
+	 * @return the status to answer the request with
+	 */
+	private String dispatch(List<RequestHandler> handlers, InetAddress remoteAddress, HttpRequestDecoder request) {
+		for (RequestHandler handler : handlers) {
+			try {
+				if (handler.onRequest(remoteAddress, request))
+					return "200 OK";
+			} catch (RuntimeException ex) {
+				Log.w(Util.T, "callback handler failed", ex);
+				return "500 Internal Server Error";
+			}
+		}
+
+		return "404 Not Found";
+	}
+
+	/**
+	 * One run of the server, from start to shutdown. A new loop is created
+	 * each time the server starts, so a loop that is still closing down
+	 * cannot interfere with the next one.
+	 */
+	private class Loop implements Runnable {
+		final Selector selector;
+		final ServerSocketChannel mainChannel;
+		final int mainPort;
+
+		final Map<Integer, ServerSocketChannel> fixedChannels = new ConcurrentHashMap<Integer, ServerSocketChannel>();
+		final ConcurrentLinkedQueue<ServerSocketChannel> pendingChannels = new ConcurrentLinkedQueue<ServerSocketChannel>();
+
+		// connections whose response the worker has decided on
+		final ConcurrentLinkedQueue<SelectionKey> answeredKeys = new ConcurrentLinkedQueue<SelectionKey>();
+
+		final ExecutorService worker;
+
+		volatile boolean running = true;
+
+		Loop() throws IOException {
+			selector = Selector.open();
+
+			try {
+				mainChannel = bind(DEFAULT_PORT, true);
+			} catch (IOException ex) {
+				selector.close();
+				throw ex;
+			}
+
+			mainPort = mainChannel.socket().getLocalPort();
+			pendingChannels.add(mainChannel);
+
+			worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "CallbackHttpServer worker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		void start() {
+			Thread thread = new Thread(this, "CallbackHttpServer");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		boolean isListening(int port) {
+			return port == mainPort || fixedChannels.containsKey(port);
+		}
+
+		void listen(int port) throws IOException {
+			ServerSocketChannel channel = bind(port, false);
+
+			fixedChannels.put(port, channel);
+			pendingChannels.add(channel);
+			selector.wakeup();
+		}
+
+		void unlisten(int port) {
+			ServerSocketChannel channel = fixedChannels.remove(port);
+
+			if (channel == null)
+				return;
+
+			try {
+				channel.close();
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			}
+		}
+
+		void shutdown() {
+			running = false;
+
+			// release the ports right away, so a new loop can bind them
+			closeListeners();
+			selector.wakeup();
+		}
+
+		private void closeListeners() {
+			try {
+				mainChannel.close();
+
+				for (ServerSocketChannel channel : fixedChannels.values()) {
+					channel.close();
+				}
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			}
+		}
+
+		private ServerSocketChannel bind(int port, boolean fallBackToEphemeral) throws IOException {
+			ServerSocketChannel channel = ServerSocketChannel.open();
+
+			try {
+				channel.socket().setReuseAddress(true);
+
+				try {
+					channel.socket().bind(new InetSocketAddress(port));
+				} catch (IOException ex) {
+					if (!fallBackToEphemeral)
+						throw ex;
+
+					Log.w(Util.T, "port " + port + " is taken, using an ephemeral port for callbacks");
+					channel.socket().bind(new InetSocketAddress(0));
+				}
+
+				channel.configureBlocking(false);
+			} catch (IOException ex) {
+				channel.close();
+				throw ex;
+			}
+
+			return channel;
+		}
+
+		@Override
+		public void run() {
+			ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+			try {
+				while (running) {
+					ServerSocketChannel pending;
+
+					while ((pending = pendingChannels.poll()) != null) {
+						if (pending.isOpen())
+							pending.register(selector, SelectionKey.OP_ACCEPT);
+					}
+
+					SelectionKey answered;
+
+					while ((answered = answeredKeys.poll()) != null) {
+						if (answered.isValid())
+							answered.interestOps(SelectionKey.OP_WRITE);
+					}
+
+					selector.select(CONNECTION_TIMEOUT / 2);
+
+					if (!running)
+						break;
+
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+
+						if (!key.isValid())
+							continue;
+
+						try {
+							if (key.isAcceptable()) {
+								accept((ServerSocketChannel) key.channel());
+							} else if (key.isReadable()) {
+								read(key, readBuffer);
+							} else if (key.isWritable()) {
+								write(key);
+							}
+						} catch (IOException ex) {
+							closeConnection(key);
+						} catch (CancelledKeyException ex) {
+							closeConnection(key);
+						}
+					}
+
+					closeIdleConnections();
+				}
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			} catch (ClosedSelectorException ex) {
+				// closed from another thread
+			} finally {
+				close();
+			}
+		}
+
+		private void accept(ServerSocketChannel serverChannel) throws IOException {
+			SocketChannel channel = serverChannel.accept();
+
+			if (channel == null)
+				return;
+
+			channel.configureBlocking(false);
+			channel.register(selector, SelectionKey.OP_READ, new Connection());
+		}
+
+		private void read(SelectionKey key, ByteBuffer buffer) throws IOException {
+			SocketChannel channel = (SocketChannel) key.channel();
+			Connection connection = (Connection) key.attachment();
+
+			buffer.clear();
+
+			if (channel.read(buffer) < 0) {
+				closeConnection(key);
+				return;
+			}
+
+			buffer.flip();
+			connection.lastActivity = SystemClock.elapsedRealtime();
+
+			String status;
+
+			try {
+				if (!connection.decoder.decode(buffer))
+					return;
+
+				final List<RequestHandler> handlers = findHandlers(connection.decoder.getPath());
+
+				if (handlers.isEmpty()) {
+					status = "404 Not Found";
+				} else {
+					final SelectionKey answerKey = key;
+					final Connection answerConnection = connection;
+					final InetAddress remoteAddress = channel.socket().getInetAddress();
+
+					// nothing more is read while the handlers decide on the answer
+					key.interestOps(0);
+
+					worker.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							String status = dispatch(handlers, remoteAddress, answerConnection.decoder);
+
+							answer(answerKey, answerConnection, status);
+						}
+					});
+
+					return;
+				}
+			} catch (IOException ex) {
+				status = "400 Bad Request";
+			}
+
+			connection.response = createResponse(status);
+			key.interestOps(SelectionKey.OP_WRITE);
+		}
+
+		/**
+		 * Queues the response for a connection whose request was dispatched;
+		 * it is sent from the selector thread.
+		 */
+		private void answer(SelectionKey key, Connection connection, String status) {
+			connection.response = createResponse(status);
+			connection.lastActivity = SystemClock.elapsedRealtime();
+
+			answeredKeys.add(key);
+			selector.wakeup();
+		}
+
+		private void write(SelectionKey key) throws IOException {
+			SocketChannel channel = (SocketChannel) key.channel();
+			Connection connection = (Connection) key.attachment();
+
+			channel.write(connection.response);
+			connection.lastActivity = SystemClock.elapsedRealtime();
+
+			if (!connection.response.hasRemaining())
+				closeConnection(key);
+		}
+
+		private void closeIdleConnections() {
+			long now = SystemClock.elapsedRealtime();
+
+			for (SelectionKey key : selector.keys()) {
+				Object attachment = key.attachment();
+
+				if (attachment instanceof Connection && now - ((Connection) attachment).lastActivity > CONNECTION_TIMEOUT)
+					closeConnection(key);
+			}
+		}
+
+		private void closeConnection(SelectionKey key) {
+			key.cancel();
+
+			try {
+				key.channel().close();
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			}
+		}
+
+		/**
+		 * Closes the listening sockets, all client connections and the
+		 * worker. Requests that were already received are still handled.
+		 */
+		private void close() {
+			try {
+				for (SelectionKey key : selector.keys()) {
+					key.channel().close();
+				}
+			} catch (ClosedSelectorException ex) {
+				// already closed
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			}
+
+			closeListeners();
+
+			try {
+				selector.close();
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			}
+
+			worker.shutdown();
+		}
+	}
+
+	private static ByteBuffer createResponse(String status) {
+		SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+		dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+		String response = "HTTP/1.1 " + status + "\r\n"
+				+ "Server: Android/" + android.os.Build.VERSION.RELEASE + " UDAP/2.0 ConnectSDK/1.2.1\r\n"
+				+ "Cache-Control: no-store, no-cache, must-revalidate\r\n"
+				+ "Date: " + dateFormat.format(new Date()) + "\r\n"
+				+ "Connection: Close\r\n"
+				+ "Content-Length: 0\r\n"
+				+ "\r\n";
+
+		try {
+			return ByteBuffer.wrap(response.getBytes("ISO-8859-1"));
+		} catch (UnsupportedEncodingException ex) {
+			return ByteBuffer.wrap(response.getBytes());
+		}
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * HttpRequestDecoder
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.etc.helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Incremental decoder for a single HTTP/1.x request.
+ *
+ * Bytes are fed in as they arrive from a non-blocking channel; decode()
+ * returns true once the request line, the headers and the body are
+ * complete. The body is delimited by Content-Length or chunked transfer
+ * encoding; a request with neither has no body.
+ */
+public class HttpRequestDecoder {
+	public static final int MAX_HEADER_SIZE = 8 * 1024;
+	public static final int MAX_BODY_SIZE = 1024 * 1024;
+
+	private static final int STATE_HEADERS = 0;
+	private static final int STATE_BODY = 1;
+	private static final int STATE_CHUNK_SIZE = 2;
+	private static final int STATE_CHUNK_DATA = 3;
+	private static final int STATE_CHUNK_END = 4;
+	private static final int STATE_TRAILER = 5;
+	private static final int STATE_DONE = 6;
+
+	private int state = STATE_HEADERS;
+
+	private final ByteArrayOutputStream head = new ByteArrayOutputStream(512);
+	private final ByteArrayOutputStream line = new ByteArrayOutputStream(16);
+	private ByteArrayOutputStream body;
+
+	private long remaining;
+	private int headLineLength = 0;
+
+	private String method;
+	private String path;
+	private String version;
+	private final Map<String, String> headers = new HashMap<String, String>();
+
+	/**
+	 * Consumes bytes from buffer.
+	 *
+	 * @return true when the request is complete. Bytes after the end of the
+	 * request are left in buffer.
+	 * @throws IOException if the request is malformed or too large
+	 */
+	public boolean decode(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining() && state != STATE_DONE) {
+			switch (state) {
+			case STATE_HEADERS:
+				decodeHead(buffer);
+				break;
+
+			case STATE_BODY:
+			case STATE_CHUNK_DATA:
+				copyBody(buffer);
+				break;
+
+			case STATE_CHUNK_SIZE:
+				if (readLine(buffer))
+					chunkSizeDecoded();
+				break;
+
+			case STATE_CHUNK_END:
+				if (readLine(buffer)) {
+					if (line.size() != 0)
+						throw new IOException("malformed chunk");
+
+					state = STATE_CHUNK_SIZE;
+				}
+				break;
+
+			case STATE_TRAILER:
+				if (readLine(buffer)) {
+					// trailers are not used, so they are skipped up to the empty line
+					if (line.size() == 0)
+						state = STATE_DONE;
+
+					line.reset();
+				}
+				break;
+			}
+		}
+
+		return state == STATE_DONE;
+	}
+
+	public boolean isComplete() {
+		return state == STATE_DONE;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the request target without the query string
+	 */
+	public String getPath() {
+		if (path == null)
+			return null;
+
+		int query = path.indexOf('?');
+
+		return query >= 0 ? path.substring(0, query) : path;
+	}
+
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * @param name header name, in any case
+	 * @return the header value, or null if it was not sent
+	 */
+	public String getHeader(String name) {
+		return headers.get(name.toLowerCase(Locale.US));
+	}
+
+	public byte[] getBody() {
+		return body != null ? body.toByteArray() : new byte[0];
+	}
+
+	/**
+	 * Decodes the body with the charset from Content-Type, or UTF-8.
+	 */
+	public String getBodyAsString() {
+		String charset = "UTF-8";
+		String contentType = getHeader("Content-Type");
+
+		if (contentType != null) {
+			int index = contentType.toLowerCase(Locale.US).indexOf("charset=");
+
+			if (index >= 0) {
+				charset = contentType.substring(index + 8).trim();
+
+				if (charset.startsWith("\"") && charset.endsWith("\"") && charset.length() > 1)
+					charset = charset.substring(1, charset.length() - 1);
+			}
+		}
+
+		try {
+			return body != null ? body.toString(charset) : "";
+		} catch (UnsupportedEncodingException e) {
+			try {
+				return body.toString("UTF-8");
+			} catch (UnsupportedEncodingException ignored) {
+				return "";
+			}
+		}
+	}
+
+	private void decodeHead(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			byte b = buffer.get();
+			head.write(b);
+
+			if (head.size() > MAX_HEADER_SIZE)
+				throw new IOException("request header too large");
+
+			if (b == '\n') {
+				// an empty line ends the headers, unless it precedes the request line
+				if (headLineLength == 0 && head.size() > 2 && !isBlank()) {
+					parseHead();
+					return;
+				}
+
+				headLineLength = 0;
+			} else if (b != '\r') {
+				headLineLength++;
+			}
+		}
+	}
+
+	private boolean isBlank() {
+		String text;
+
+		try {
+			text = head.toString("ISO-8859-1");
+		} catch (UnsupportedEncodingException e) {
+			return false;
+		}
+
+		return text.trim().length() == 0;
+	}
+
+	private void parseHead() throws IOException {
+		String[] lines = head.toString("ISO-8859-1").split("\r?\n");
+		int first = 0;
+
+		// tolerate empty lines before the request line
+		while (first < lines.length && lines[first].length() == 0)
+			first++;
+
+		if (first == lines.length)
+			throw new IOException("missing request line");
+
+		String[] requestLine = lines[first].split(" ");
+
+		if (requestLine.length < 2)
+			throw new IOException("malformed request line");
+
+		method = requestLine[0].toUpperCase(Locale.US);
+		path = requestLine[1];
+		version = requestLine.length > 2 ? requestLine[2] : "HTTP/1.0";
+
+		for (int i = first + 1; i < lines.length; i++) {
+			int colon = lines[i].indexOf(':');
+
+			if (colon <= 0)
+				continue;
+
+			String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.US);
+			headers.put(name, lines[i].substring(colon + 1).trim());
+		}
+
+		head.reset();
+
+		String transferEncoding = getHeader("Transfer-Encoding");
+		String contentLength = getHeader("Content-Length");
+
+		if (transferEncoding != null && transferEncoding.toLowerCase(Locale.US).contains("chunked")) {
+			body = new ByteArrayOutputStream(1024);
+			state = STATE_CHUNK_SIZE;
+		} else if (contentLength != null) {
+			try {
+				remaining = Long.parseLong(contentLength);
+			} catch (NumberFormatException e) {
+				throw new IOException("malformed Content-Length");
+			}
+
+			if (remaining < 0 || remaining > MAX_BODY_SIZE)
+				throw new IOException("request body too large");
+
+			body = new ByteArrayOutputStream((int) remaining);
+			state = remaining > 0 ? STATE_BODY : STATE_DONE;
+		} else {
+			state = STATE_DONE;
+		}
+	}
+
+	private void copyBody(ByteBuffer buffer) {
+		int count = (int) Math.min(remaining, buffer.remaining());
+
+		if (buffer.hasArray()) {
+			body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), count);
+			buffer.position(buffer.position() + count);
+		} else {
+			for (int i = 0; i < count; i++)
+				body.write(buffer.get());
+		}
+
+		remaining -= count;
+
+		if (remaining == 0)
+			state = state == STATE_BODY ? STATE_DONE : STATE_CHUNK_END;
+	}
+
+	private void chunkSizeDecoded() throws IOException {
+		String sizeLine = line.toString("ISO-8859-1").trim();
+		line.reset();
+
+		int extension = sizeLine.indexOf(';');
+
+		if (extension >= 0)
+			sizeLine = sizeLine.substring(0, extension).trim();
+
+		try {
+			remaining = Long.parseLong(sizeLine, 16);
+		} catch (NumberFormatException e) {
+			throw new IOException("malformed chunk size");
+		}
+
+		if (remaining < 0 || body.size() + remaining > MAX_BODY_SIZE)
+			throw new IOException("request body too large");
+
+		state = remaining == 0 ? STATE_TRAILER : STATE_CHUNK_DATA;
+	}
+
+	/**
+	 * Reads up to the end of a line into line, without the line terminator.
+	 *
+	 * @return true if the line is complete
+	 */
+	private boolean readLine(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			byte b = buffer.get();
+
+			if (b == '\n')
+				return true;
+
+			if (b != '\r')
+				line.write(b);
+
+			if (line.size() > MAX_HEADER_SIZE)
+				throw new IOException("line too long");
+		}
+
+		return false;
+	}
+}
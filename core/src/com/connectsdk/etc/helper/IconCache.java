@@ -0,0 +1,503 @@
+/*
+ * IconCache
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.etc.helper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.connectsdk.core.AppInfo;
+import com.connectsdk.core.ChannelInfo;
+import com.connectsdk.core.ImageInfo;
+import com.connectsdk.core.Util;
+import com.connectsdk.service.capability.listeners.ResponseListener;
+import com.connectsdk.service.command.ServiceCommandError;
+
+/**
+ * Fetches device, app and channel icons once and keeps them in a bounded
+ * in-memory LRU cache of decoded bitmaps and a bounded disk cache of the
+ * downloaded files.
+ *
+ * Disk entries are keyed by URL and stored with the ETag the server sent. An
+ * entry younger than the revalidation interval is used without touching the
+ * network; an older one is revalidated with If-None-Match. Icons are decoded
+ * at the smallest power-of-two subsample that is still at least the requested
+ * size.
+ */
+public class IconCache {
+	public static final int DEFAULT_MEMORY_CACHE_SIZE = 4 * 1024 * 1024;
+	public static final long DEFAULT_DISK_CACHE_SIZE = 10 * 1024 * 1024;
+	public static final long DEFAULT_REVALIDATE_INTERVAL = 24 * 60 * 60 * 1000;
+
+	private static final String DIRECTORY = "connectsdk-icons";
+	private static final int CONNECT_TIMEOUT = 5000;
+	private static final int READ_TIMEOUT = 10000;
+
+	private static IconCache instance;
+
+	private final File directory;
+	private int memoryCacheSize = DEFAULT_MEMORY_CACHE_SIZE;
+	private long diskCacheSize = DEFAULT_DISK_CACHE_SIZE;
+	private long revalidateInterval = DEFAULT_REVALIDATE_INTERVAL;
+
+	// access ordered, so iteration starts at the least recently used entry
+	private final LinkedHashMap<String, Bitmap> memoryCache = new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+	private int memoryCacheBytes = 0;
+
+	private final Map<String, List<Request>> pendingRequests = new HashMap<String, List<Request>>();
+
+	/**
+	 * Success block that is called upon successfully loading an icon.
+	 *
+	 * Passes the decoded Bitmap
+	 */
+	public static interface IconListener extends ResponseListener<Bitmap> { }
+
+	private static class Request {
+		final int width;
+		final int height;
+		final IconListener listener;
+
+		Request(int width, int height, IconListener listener) {
+			this.width = width;
+			this.height = height;
+			this.listener = listener;
+		}
+	}
+
+	public static synchronized IconCache getInstance(Context context) {
+		if (instance == null)
+			instance = new IconCache(context.getApplicationContext());
+
+		return instance;
+	}
+
+	public IconCache(Context context) {
+		directory = new File(context.getCacheDir(), DIRECTORY);
+	}
+
+	public synchronized void setMemoryCacheSize(int bytes) {
+		memoryCacheSize = bytes;
+		trimMemoryCache();
+	}
+
+	public synchronized void setDiskCacheSize(long bytes) {
+		diskCacheSize = bytes;
+	}
+
+	/**
+	 * Sets how long a downloaded icon is used before checking with the server
+	 * whether it has changed.
+	 */
+	public synchronized void setRevalidateInterval(long millis) {
+		revalidateInterval = millis;
+	}
+
+	/**
+	 * Loads the icon at url, decoded to roughly width x height pixels. A width
+	 * or height of 0 or less decodes the icon at full size.
+	 */
+	public void getIcon(String url, int width, int height, IconListener listener) {
+		if (url == null || url.length() == 0) {
+			Util.postError(listener, new ServiceCommandError(0, "no icon URL", null));
+			return;
+		}
+
+		final String key = memoryKey(url, width, height);
+
+		synchronized (this) {
+			Bitmap bitmap = memoryCache.get(key);
+
+			if (bitmap != null) {
+				Util.postSuccess(listener, bitmap);
+				return;
+			}
+
+			// only one download per URL at a time
+			List<Request> requests = pendingRequests.get(url);
+			boolean fetching = requests != null;
+
+			if (!fetching) {
+				requests = new ArrayList<Request>();
+				pendingRequests.put(url, requests);
+			}
+
+			requests.add(new Request(width, height, listener));
+
+			if (fetching)
+				return;
+		}
+
+		final String iconURL = url;
+
+		Util.runInBackground(new Runnable() {
+
+			@Override
+			public void run() {
+				load(iconURL);
+			}
+		});
+	}
+
+	public void getIcon(ImageInfo image, int width, int height, IconListener listener) {
+		getIcon(image != null ? image.getUrl() : null, width, height, listener);
+	}
+
+	public void getIcon(AppInfo appInfo, int width, int height, IconListener listener) {
+		getIcon(appInfo != null ? appInfo.getIconURL() : null, width, height, listener);
+	}
+
+	public void getIcon(ChannelInfo channelInfo, int width, int height, IconListener listener) {
+		getIcon(channelInfo != null ? channelInfo.getIconURL() : null, width, height, listener);
+	}
+
+	/**
+	 * Picks the icon from a UPnP icon list whose size is closest to, but not
+	 * smaller than, the requested size.
+	 */
+	public static ImageInfo pickIcon(List<ImageInfo> icons, int width, int height) {
+		ImageInfo best = null;
+
+		if (icons == null)
+			return null;
+
+		for (ImageInfo icon : icons) {
+			if (best == null) {
+				best = icon;
+			} else if (best.getWidth() < width || best.getHeight() < height) {
+				if (icon.getWidth() > best.getWidth())
+					best = icon;
+			} else if (icon.getWidth() >= width && icon.getHeight() >= height && icon.getWidth() < best.getWidth()) {
+				best = icon;
+			}
+		}
+
+		return best;
+	}
+
+	public synchronized void clearMemoryCache() {
+		memoryCache.clear();
+		memoryCacheBytes = 0;
+	}
+
+	public void clearDiskCache() {
+		File[] files = directory.listFiles();
+
+		if (files == null)
+			return;
+
+		for (File file : files) {
+			file.delete();
+		}
+	}
+
+	private void load(String url) {
+		File file = new File(directory, diskKey(url));
+		File etagFile = new File(directory, diskKey(url) + ".etag");
+
+		try {
+			boolean fresh = file.exists() && System.currentTimeMillis() - file.lastModified() < revalidateInterval;
+
+			if (!fresh)
+				download(url, file, etagFile);
+		} catch (IOException e) {
+			// fall back to a stale copy, if there is one
+			if (!file.exists()) {
+				fail(url, new ServiceCommandError(0, "could not download icon", e));
+				return;
+			}
+		}
+
+		List<Request> requests;
+
+		synchronized (this) {
+			requests = pendingRequests.remove(url);
+		}
+
+		if (requests == null)
+			return;
+
+		for (Request request : requests) {
+			String key = memoryKey(url, request.width, request.height);
+			Bitmap bitmap;
+
+			synchronized (this) {
+				bitmap = memoryCache.get(key);
+			}
+
+			if (bitmap == null) {
+				bitmap = decode(file, request.width, request.height);
+
+				if (bitmap == null) {
+					Util.postError(request.listener, new ServiceCommandError(0, "could not decode icon", null));
+					continue;
+				}
+
+				putInMemoryCache(key, bitmap);
+			}
+
+			Util.postSuccess(request.listener, bitmap);
+		}
+	}
+
+	private void download(String url, File file, File etagFile) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT);
+		connection.setReadTimeout(READ_TIMEOUT);
+
+		String etag = file.exists() ? readETag(etagFile) : null;
+
+		if (etag != null)
+			connection.setRequestProperty("If-None-Match", etag);
+
+		try {
+			int code = connection.getResponseCode();
+
+			if (code == HttpURLConnection.HTTP_NOT_MODIFIED && file.exists()) {
+				file.setLastModified(System.currentTimeMillis());
+				return;
+			}
+
+			if (code != HttpURLConnection.HTTP_OK)
+				throw new IOException("HTTP " + code);
+
+			if (!directory.exists() && !directory.mkdirs())
+				throw new IOException("could not create " + directory);
+
+			File temp = new File(directory, file.getName() + ".tmp");
+			InputStream in = new BufferedInputStream(connection.getInputStream());
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+
+			try {
+				byte[] buffer = new byte[8192];
+				int read;
+
+				while ((read = in.read(buffer)) != -1) {
+					out.write(buffer, 0, read);
+				}
+			} finally {
+				in.close();
+				out.close();
+			}
+
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				throw new IOException("could not store " + file);
+			}
+
+			writeETag(etagFile, connection.getHeaderField("ETag"));
+		} finally {
+			connection.disconnect();
+		}
+
+		trimDiskCache();
+	}
+
+	private Bitmap decode(File file, int width, int height) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(file.getPath(), options);
+
+		if (options.outWidth <= 0 || options.outHeight <= 0)
+			return null;
+
+		int sampleSize = 1;
+
+		if (width > 0 && height > 0) {
+			while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height) {
+				sampleSize *= 2;
+			}
+		}
+
+		options = new BitmapFactory.Options();
+		options.inSampleSize = sampleSize;
+
+		return BitmapFactory.decodeFile(file.getPath(), options);
+	}
+
+	private synchronized void putInMemoryCache(String key, Bitmap bitmap) {
+		Bitmap previous = memoryCache.put(key, bitmap);
+
+		if (previous != null)
+			memoryCacheBytes -= sizeOf(previous);
+
+		memoryCacheBytes += sizeOf(bitmap);
+
+		trimMemoryCache();
+	}
+
+	private void trimMemoryCache() {
+		Iterator<Bitmap> iterator = memoryCache.values().iterator();
+
+		while (memoryCacheBytes > memoryCacheSize && iterator.hasNext()) {
+			memoryCacheBytes -= sizeOf(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	private void trimDiskCache() {
+		File[] files = directory.listFiles();
+
+		if (files == null)
+			return;
+
+		long total = 0;
+
+		for (File file : files) {
+			total += file.length();
+		}
+
+		if (total <= diskCacheSize)
+			return;
+
+		Arrays.sort(files, new Comparator<File>() {
+
+			@Override
+			public int compare(File lhs, File rhs) {
+				long l = lhs.lastModified();
+				long r = rhs.lastModified();
+
+				return l < r ? -1 : (l == r ? 0 : 1);
+			}
+		});
+
+		for (File file : files) {
+			if (total <= diskCacheSize)
+				break;
+
+			if (file.getName().endsWith(".etag"))
+				continue;
+
+			total -= file.length();
+			file.delete();
+
+			File etagFile = new File(directory, file.getName() + ".etag");
+			total -= etagFile.length();
+			etagFile.delete();
+		}
+	}
+
+	private void fail(String url, ServiceCommandError error) {
+		List<Request> requests;
+
+		synchronized (this) {
+			requests = pendingRequests.remove(url);
+		}
+
+		if (requests == null)
+			return;
+
+		for (Request request : requests) {
+			Util.postError(request.listener, error);
+		}
+	}
+
+	private static String readETag(File etagFile) {
+		if (!etagFile.exists())
+			return null;
+
+		try {
+			InputStream in = new FileInputStream(etagFile);
+			byte[] bytes = new byte[(int) etagFile.length()];
+
+			try {
+				int offset = 0;
+				int read;
+
+				while (offset < bytes.length && (read = in.read(bytes, offset, bytes.length - offset)) != -1) {
+					offset += read;
+				}
+			} finally {
+				in.close();
+			}
+
+			return new String(bytes, "UTF-8");
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static void writeETag(File etagFile, String etag) {
+		if (etag == null) {
+			etagFile.delete();
+			return;
+		}
+
+		try {
+			OutputStream out = new FileOutputStream(etagFile);
+
+			try {
+				out.write(etag.getBytes("UTF-8"));
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			Log.w(Util.T, "could not store icon ETag: " + e.getMessage());
+		}
+	}
+
+	private static int sizeOf(Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	private static String memoryKey(String url, int width, int height) {
+		return url + "@" + Math.max(0, width) + "x" + Math.max(0, height);
+	}
+
+	private static String diskKey(String url) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			byte[] hash = digest.digest(url.getBytes("UTF-8"));
+			StringBuilder sb = new StringBuilder(hash.length * 2);
+
+			for (byte b : hash) {
+				sb.append(String.format("%02x", b & 0xff));
+			}
+
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return String.valueOf(url.hashCode());
+		} catch (IOException e) {
+			return String.valueOf(url.hashCode());
+		}
+	}
+}
@@ -0,0 +1,251 @@
+/*
+ * PlaybackClock
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.etc.helper;
+
+import android.os.SystemClock;
+
+import com.connectsdk.service.capability.MediaControl.PlayStateStatus;
+
+/**
+ * Local estimate of a renderer's playback position.
+ *
+ * The clock is anchored on the last position reported by the renderer and
+ * advances at the current playback rate, so a position can be answered
+ * without a round trip. It asks for a fresh position (isSynchronized()
+ * returns false) once the resync interval has passed, after a play state
+ * change or seek, and as long as the rate is not known. If the renderer does
+ * not report its play state, the rate is inferred from two position samples
+ * taken far enough apart for the renderer's position resolution (whole
+ * seconds by default) not to hide the movement between them.
+ */
+public class PlaybackClock {
+	public static final long DEFAULT_RESYNC_INTERVAL = 5000;
+
+	public static final long DEFAULT_POSITION_RESOLUTION = 1000;
+
+	// samples closer together than this are too noisy to infer a rate from
+	private static final long MIN_INFERENCE_INTERVAL = 2000;
+
+	private long resyncInterval = DEFAULT_RESYNC_INTERVAL;
+	private long positionResolution = DEFAULT_POSITION_RESOLUTION;
+
+	private long anchorPosition = -1;
+	private long anchorTime;
+	private long syncTime;
+	private long duration = -1;
+
+	// first position sample of a rate inference, -1 if there is none
+	private long samplePosition = -1;
+	private long sampleTime;
+
+	private float rate = 0;
+	private boolean rateKnown = false;
+	private boolean needsSync = true;
+
+	/**
+	 * Sets how long extrapolated positions are trusted before the renderer
+	 * is asked again. 0 disables extrapolation.
+	 */
+	public synchronized void setResyncInterval(long resyncInterval) {
+		this.resyncInterval = resyncInterval;
+	}
+
+	public synchronized long getResyncInterval() {
+		return resyncInterval;
+	}
+
+	/**
+	 * Sets the granularity of the positions the renderer reports, e.g. 1000
+	 * for whole seconds.
+	 */
+	public synchronized void setPositionResolution(long positionResolution) {
+		this.positionResolution = Math.max(1, positionResolution);
+	}
+
+	public synchronized long getPositionResolution() {
+		return positionResolution;
+	}
+
+	/**
+	 * @return true if getPosition() can be used instead of asking the renderer
+	 */
+	public synchronized boolean isSynchronized() {
+		if (resyncInterval <= 0 || needsSync || !rateKnown || anchorPosition < 0)
+			return false;
+
+		return now() - syncTime < resyncInterval;
+	}
+
+	/**
+	 * @return the extrapolated position in milliseconds, or -1 if no position
+	 * is known
+	 */
+	public synchronized long getPosition() {
+		return extrapolate(now());
+	}
+
+	/**
+	 * @return the media duration in milliseconds, or -1 if it is not known
+	 */
+	public synchronized long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Re-anchors the clock on a position reported by the renderer.
+	 */
+	public synchronized void setPosition(long position) {
+		long time = now();
+
+		if (rateKnown) {
+			samplePosition = -1;
+		} else if (samplePosition < 0) {
+			samplePosition = position;
+			sampleTime = time;
+		} else {
+			inferRate(position, time);
+		}
+
+		anchorPosition = position;
+		anchorTime = time;
+		syncTime = time;
+		needsSync = false;
+	}
+
+	/**
+	 * Infers the rate from the movement since the first sample. Both
+	 * positions may be off by up to one unit of resolution, so the samples
+	 * have to be more than two units apart; until then the first sample is
+	 * kept, rather than concluding "paused" from a delta the renderer could
+	 * not report yet.
+	 */
+	private void inferRate(long position, long time) {
+		long elapsed = time - sampleTime;
+
+		if (elapsed < Math.max(MIN_INFERENCE_INTERVAL, 2 * positionResolution))
+			return;
+
+		long delta = position - samplePosition;
+
+		if (Math.abs(delta - elapsed) <= elapsed / 4 + positionResolution) {
+			rate = 1;
+			rateKnown = true;
+		} else if (Math.abs(delta) <= elapsed / 20) {
+			rate = 0;
+			rateKnown = true;
+		}
+
+		// inconclusive samples, e.g. after a skip, start over from here
+		samplePosition = rateKnown ? -1 : position;
+		sampleTime = time;
+	}
+
+	public synchronized void setDuration(long duration) {
+		this.duration = duration > 0 ? duration : -1;
+	}
+
+	/**
+	 * Updates the rate from a play state reported by the renderer or implied
+	 * by a successful command. Unknown states leave the rate to be inferred.
+	 */
+	public synchronized void setPlayState(PlayStateStatus playState) {
+		if (playState == null || playState == PlayStateStatus.Unknown) {
+			rateKnown = false;
+			samplePosition = -1;
+			return;
+		}
+
+		setRateLocked(playState == PlayStateStatus.Playing ? (rateKnown && rate > 0 ? rate : 1) : 0);
+
+		if (playState == PlayStateStatus.Idle || playState == PlayStateStatus.Finished) {
+			anchorPosition = -1;
+			needsSync = true;
+		}
+	}
+
+	/**
+	 * Sets the playback rate, e.g. 2 for fast forward or 0 for paused.
+	 */
+	public synchronized void setRate(float rate) {
+		setRateLocked(rate);
+	}
+
+	/**
+	 * Moves the clock to a seek target. The renderer is asked for the actual
+	 * position on the next query, since it rarely lands exactly on target.
+	 */
+	public synchronized void seek(long position) {
+		anchorPosition = position;
+		anchorTime = now();
+		samplePosition = -1;
+		needsSync = true;
+	}
+
+	/**
+	 * Forgets everything, for when new media is loaded or playback stops.
+	 */
+	public synchronized void reset() {
+		anchorPosition = -1;
+		samplePosition = -1;
+		duration = -1;
+		rate = 0;
+		rateKnown = false;
+		needsSync = true;
+	}
+
+	private void setRateLocked(float newRate) {
+		long time = now();
+
+		if (rateKnown && newRate == rate)
+			return;
+
+		// fold the time spent at the old rate into the anchor
+		if (anchorPosition >= 0 && rateKnown) {
+			anchorPosition = extrapolate(time);
+			anchorTime = time;
+		}
+
+		rate = newRate;
+		rateKnown = true;
+		needsSync = true;
+	}
+
+	private long extrapolate(long time) {
+		if (anchorPosition < 0)
+			return -1;
+
+		if (!rateKnown || rate == 0)
+			return anchorPosition;
+
+		long position = anchorPosition + (long) ((time - anchorTime) * rate);
+
+		if (position < 0)
+			position = 0;
+
+		if (duration > 0 && position > duration)
+			position = duration;
+
+		return position;
+	}
+
+	private static long now() {
+		return SystemClock.elapsedRealtime();
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * PointerEventCoalescer
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.etc.helper;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accumulates pointer move and scroll deltas and hands them to a sink at a
+ * fixed maximum rate, so that a touchpad producing hundreds of events per
+ * second results in at most one move and one scroll per interval.
+ *
+ * Deltas are accumulated without locking. When created with waitForAck, a
+ * new flush is held back until the sink calls acknowledge(), which suits
+ * transports where each flush is a request/response round trip. Sinks that
+ * can only move by whole units can have the fractional rest of each move
+ * kept for the next flush, so that slow drags still add up to a movement.
+ */
+public class PointerEventCoalescer {
+	public static final int DEFAULT_RATE = 60;
+
+	private final PointerEventSink sink;
+	private final long interval;
+	private final boolean waitForAck;
+	private final boolean wholeMoves;
+
+	private final AtomicLong moveX = new AtomicLong(Double.doubleToLongBits(0));
+	private final AtomicLong moveY = new AtomicLong(Double.doubleToLongBits(0));
+	private final AtomicLong scrollX = new AtomicLong(Double.doubleToLongBits(0));
+	private final AtomicLong scrollY = new AtomicLong(Double.doubleToLongBits(0));
+
+	private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+	private final AtomicBoolean inFlight = new AtomicBoolean(false);
+
+	private volatile long lastFlush;
+	private Timer timer;
+
+	public interface PointerEventSink {
+		public void onMove(double dx, double dy);
+		public void onScroll(double dx, double dy);
+	}
+
+	public PointerEventCoalescer(PointerEventSink sink) {
+		this(sink, DEFAULT_RATE, false);
+	}
+
+	/**
+	 * @param rate maximum number of flushes per second
+	 * @param waitForAck hold back further flushes until acknowledge() is called
+	 */
+	public PointerEventCoalescer(PointerEventSink sink, int rate, boolean waitForAck) {
+		this(sink, rate, waitForAck, false);
+	}
+
+	/**
+	 * @param rate maximum number of flushes per second
+	 * @param waitForAck hold back further flushes until acknowledge() is called
+	 * @param wholeMoves only deliver the integer part of moves and keep the
+	 * rest accumulated
+	 */
+	public PointerEventCoalescer(PointerEventSink sink, int rate, boolean waitForAck, boolean wholeMoves) {
+		if (rate <= 0)
+			throw new IllegalArgumentException("rate must be positive");
+
+		this.sink = sink;
+		this.interval = Math.max(1, 1000 / rate);
+		this.waitForAck = waitForAck;
+		this.wholeMoves = wholeMoves;
+	}
+
+	public void move(double dx, double dy) {
+		add(moveX, dx);
+		add(moveY, dy);
+
+		requestFlush();
+	}
+
+	public void scroll(double dx, double dy) {
+		add(scrollX, dx);
+		add(scrollY, dy);
+
+		requestFlush();
+	}
+
+	/**
+	 * Signals that the last flush has been delivered. Pending deltas are sent
+	 * as soon as the rate allows.
+	 */
+	public void acknowledge() {
+		inFlight.set(false);
+
+		if (hasPending())
+			requestFlush();
+	}
+
+	/**
+	 * Delivers pending deltas right away, regardless of rate and outstanding
+	 * acknowledgements. Used before discrete events such as clicks.
+	 */
+	public synchronized void flush() {
+		double dx = wholeMoves ? takeWhole(moveX) : take(moveX);
+		double dy = wholeMoves ? takeWhole(moveY) : take(moveY);
+		double sx = take(scrollX);
+		double sy = take(scrollY);
+
+		if (dx == 0 && dy == 0 && sx == 0 && sy == 0)
+			return;
+
+		lastFlush = System.currentTimeMillis();
+
+		if (waitForAck)
+			inFlight.set(true);
+
+		if (dx != 0 || dy != 0)
+			sink.onMove(dx, dy);
+
+		if (sx != 0 || sy != 0)
+			sink.onScroll(sx, sy);
+	}
+
+	/**
+	 * Drops pending deltas and cancels any scheduled flush.
+	 */
+	public synchronized void reset() {
+		take(moveX);
+		take(moveY);
+		take(scrollX);
+		take(scrollY);
+
+		inFlight.set(false);
+		flushScheduled.set(false);
+
+		if (timer != null) {
+			timer.cancel();
+			timer = null;
+		}
+	}
+
+	private void requestFlush() {
+		if (inFlight.get())
+			return;
+
+		if (!flushScheduled.compareAndSet(false, true))
+			return;
+
+		long delay = Math.max(0, lastFlush + interval - System.currentTimeMillis());
+
+		synchronized (this) {
+			if (timer == null)
+				timer = new Timer("Pointer events", true);
+
+			timer.schedule(new TimerTask() {
+
+				@Override
+				public void run() {
+					flushScheduled.set(false);
+
+					if (!inFlight.get())
+						flush();
+				}
+			}, delay);
+		}
+	}
+
+	private boolean hasPending() {
+		return hasPendingMove(moveX) || hasPendingMove(moveY) || scrollX.get() != 0 || scrollY.get() != 0;
+	}
+
+	private boolean hasPendingMove(AtomicLong accumulator) {
+		double value = Double.longBitsToDouble(accumulator.get());
+
+		return wholeMoves ? Math.abs(value) >= 1 : value != 0;
+	}
+
+	private static void add(AtomicLong accumulator, double delta) {
+		if (delta == 0)
+			return;
+
+		while (true) {
+			long current = accumulator.get();
+			long next = Double.doubleToLongBits(Double.longBitsToDouble(current) + delta);
+
+			if (accumulator.compareAndSet(current, next))
+				return;
+		}
+	}
+
+	private static double take(AtomicLong accumulator) {
+		return Double.longBitsToDouble(accumulator.getAndSet(Double.doubleToLongBits(0)));
+	}
+
+	/**
+	 * Takes the integer part of the accumulated value, rounded towards zero,
+	 * and leaves the fraction in the accumulator.
+	 */
+	private static double takeWhole(AtomicLong accumulator) {
+		while (true) {
+			long current = accumulator.get();
+			double value = Double.longBitsToDouble(current);
+			double whole = value < 0 ? Math.ceil(value) : Math.floor(value);
+
+			if (whole == 0)
+				return 0;
+
+			if (accumulator.compareAndSet(current, Double.doubleToLongBits(value - whole)))
+				return whole;
+		}
+	}
+}
@@ -51,6 +51,7 @@ import com.connectsdk.core.MediaInfo;
 import com.connectsdk.core.Util;
 import com.connectsdk.etc.helper.DeviceServiceReachability;
 import com.connectsdk.etc.helper.HttpMessage;
+import com.connectsdk.etc.helper.PlaybackClock;
 import com.connectsdk.service.airplay.PListBuilder;
 import com.connectsdk.service.airplay.PersistentHttpClient;
 import com.connectsdk.service.airplay.PersistentHttpClient.Response;
@@ -71,6 +72,8 @@ public class AirPlayService extends DeviceService implements MediaPlayer, MediaC
 	public static final String ID = "AirPlay";
 	
 	private PersistentHttpClient persistentHttpClient;
+	
+	private final PlaybackClock playbackClock = new PlaybackClock();
 
 	interface PlaybackPositionListener {
 		void onGetPlaybackPositionSuccess(long duration, long position);
@@ -112,7 +115,7 @@ public class AirPlayService extends DeviceService implements MediaPlayer, MediaC
 		
 		String uri = getRequestURL("rate", params);
 		
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, listener);
+		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, updateRateOnSuccess(1, listener));
 		request.send();
 	}
 
@@ -123,7 +126,7 @@ public class AirPlayService extends DeviceService implements MediaPlayer, MediaC
 		
 		String uri = getRequestURL("rate", params);
 		
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, listener);
+		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, updateRateOnSuccess(0, listener));
 		request.send();
 	}
 
@@ -131,6 +134,8 @@ public class AirPlayService extends DeviceService implements MediaPlayer, MediaC
 	public void stop(ResponseListener<Object> listener) {
 		String uri = getRequestURL("stop");
 		
+		playbackClock.reset();
+		
 		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, listener);
 		// TODO This is temp fix for issue https://github.com/ConnectSDK/Connect-SDK-Android/issues/66
 		request.send();
@@ -145,7 +150,7 @@ public class AirPlayService extends DeviceService implements MediaPlayer, MediaC
 		
 		String uri = getRequestURL("rate", params);
 		
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, listener);
+		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, updateRateOnSuccess(-2, listener));
 		request.send();
 	}
 
@@ -156,7 +161,7 @@ public class AirPlayService extends DeviceService implements MediaPlayer, MediaC
 		
 		String uri = getRequestURL("rate", params);
 		
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, listener);
+		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, updateRateOnSuccess(2, listener));
 		request.send();
 	}
 
@@ -179,12 +184,19 @@ public class AirPlayService extends DeviceService implements MediaPlayer, MediaC
 		
 		String uri = getRequestURL("scrub", params);
 		
+		playbackClock.seek(position);
+		
 		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, uri, null, listener);
 		request.send();
 	}
 	
 	@Override
 	public void getPosition(final PositionListener listener) {
+		if (playbackClock.isSynchronized()) {
+			Util.postSuccess(listener, playbackClock.getPosition());
+			return;
+		}
+		
 		getPlaybackPosition(new PlaybackPositionListener() {
 			
 			@Override
@@ -258,6 +270,9 @@ public class AirPlayService extends DeviceService implements MediaPlayer, MediaC
 	            	}
 	            }
 
+	            playbackClock.setDuration(duration);
+	            playbackClock.setPosition(position);
+
 	            if (listener != null) {
 	            	listener.onGetPlaybackPositionSuccess(duration, position);
 	            }
@@ -277,6 +292,31 @@ public class AirPlayService extends DeviceService implements MediaPlayer, MediaC
 		request.send();
 	}
 	
+	/**
+	 * Gets the clock that answers getPosition() between /scrub requests, e.g.
+	 * to change how often it resyncs.
+	 */
+	public PlaybackClock getPlaybackClock() {
+		return playbackClock;
+	}
+	
+	private ResponseListener<Object> updateRateOnSuccess(final float rate, final ResponseListener<Object> listener) {
+		return new ResponseListener<Object>() {
+			
+			@Override
+			public void onSuccess(Object response) {
+				playbackClock.setRate(rate);
+				
+				Util.postSuccess(listener, response);
+			}
+			
+			@Override
+			public void onError(ServiceCommandError error) {
+				Util.postError(listener, error);
+			}
+		};
+	}
+	
 	private void getPlaybackInfo(ResponseListener<Object> listener) {
 		String uri = getRequestURL("playback-info");
 		
@@ -400,6 +440,9 @@ public class AirPlayService extends DeviceService implements MediaPlayer, MediaC
 			
 			@Override
 			public void onSuccess(Object response) {
+				playbackClock.reset();
+				playbackClock.setRate(1);
+				
 				LaunchSession launchSession = new LaunchSession();
 				launchSession.setService(AirPlayService.this);
 				launchSession.setSessionType(LaunchSessionType.Media);
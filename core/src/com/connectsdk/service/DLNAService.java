@@ -24,7 +24,6 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -41,7 +40,6 @@ import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.message.BasicHttpRequest;
 import org.apache.http.params.HttpParams;
 import org.apache.http.util.EntityUtils;
 import org.json.JSONException;
@@ -55,6 +53,7 @@ import com.connectsdk.core.Util;
 import com.connectsdk.core.upnp.service.Service;
 import com.connectsdk.discovery.DiscoveryManager;
 import com.connectsdk.etc.helper.DeviceServiceReachability;
+import com.connectsdk.etc.helper.PlaybackClock;
 import com.connectsdk.service.capability.MediaControl;
 import com.connectsdk.service.capability.MediaPlayer;
 import com.connectsdk.service.capability.VolumeControl;
@@ -68,7 +67,10 @@ import com.connectsdk.service.config.ServiceDescription;
 import com.connectsdk.service.sessions.LaunchSession;
 import com.connectsdk.service.sessions.LaunchSession.LaunchSessionType;
 import com.connectsdk.service.upnp.DLNAHttpServer;
-import com.connectsdk.service.upnp.DLNAMediaInfoParser;
+import com.connectsdk.service.upnp.DLNAPositionInfo;
+import com.connectsdk.service.upnp.DLNASoapEnvelope;
+import com.connectsdk.service.upnp.DLNASoapResponse;
+import com.connectsdk.service.upnp.DLNASubscriptionManager;
 
 public class DLNAService extends DeviceService implements MediaControl, MediaPlayer, VolumeControl {
 	public static final String ID = "DLNA";
@@ -94,13 +96,24 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 	
 	DLNAHttpServer httpServer;
 	
-	Map<String, String> SIDList;
-	Timer resubscriptionTimer;
+	PlaybackClock playbackClock = new PlaybackClock();
 	
-	private static int TIMEOUT = 300;
+	DLNASubscriptionManager subscriptionManager;
+
+	// getPosition, getDuration and getMediaInfo share one GetPositionInfo
+	// request; listeners that ask while it is in flight get its result
+	private final List<PositionInfoListener> positionInfoListeners = new ArrayList<PositionInfoListener>();
+	private boolean positionInfoPending = false;
+	private Timer positionInfoTimer;
+	private TimerTask positionPollTask;
+	private final List<DurationRetry> durationRetries = new ArrayList<DurationRetry>();
+	
+	private static final long DURATION_RETRY_DELAY = 500;
+	private static final long DURATION_MAX_RETRY_DELAY = 4000;
+	private static final int DURATION_MAX_RETRIES = 6;
 
 	interface PositionInfoListener {
-		public void onGetPositionInfoSuccess(String positionInfoXml);
+		public void onGetPositionInfoSuccess(DLNAPositionInfo positionInfo);
 		public void onGetPositionInfoFailed(ServiceCommandError error);
 	}
 	
@@ -114,11 +127,12 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 		
 		context = DiscoveryManager.getInstance().getContext();
 
-		SIDList = new HashMap<String, String>();
-
 		updateControlURL();
 		
 		httpServer = new DLNAHttpServer();
+		httpServer.setPlaybackClock(playbackClock);
+		
+		subscriptionManager = new DLNASubscriptionManager(httpClient, httpServer);
 	}
 	
 	public static JSONObject discoveryParameters() {
@@ -174,14 +188,8 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 		getPositionInfo(new PositionInfoListener() {
 			
 			@Override
-			public void onGetPositionInfoSuccess(String positionInfoXml) {
-
-				String trackMetaData = parseData(positionInfoXml, "TrackMetaData");
-				
-				MediaInfo info = DLNAMediaInfoParser.getMediaInfo(trackMetaData);
-				
-				Util.postSuccess(listener, info);
-				
+			public void onGetPositionInfoSuccess(DLNAPositionInfo positionInfo) {
+				Util.postSuccess(listener, positionInfo.getMediaInfo());
 			}
 			
 			@Override
@@ -221,14 +229,14 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 			public void onSuccess(Object response) {
 				String method = "Play";
 				
-				Map<String, String> parameters = new HashMap<String, String>();
-				parameters.put("Speed", "1");
-				
-				String payload = getMessageXml(AV_TRANSPORT_URN, method, "0", parameters);
+				String payload = getMessageXml(AV_TRANSPORT_URN, method, "0", "Speed", "1");
 
 				ResponseListener<Object> playResponseListener = new ResponseListener<Object> () {
 					@Override
 					public void onSuccess(Object response) {
+						playbackClock.reset();
+						playbackClock.setPlayState(PlayStateStatus.Playing);
+						
 						LaunchSession launchSession = new LaunchSession();
 						launchSession.setService(DLNAService.this);
 						launchSession.setSessionType(LaunchSessionType.Media);
@@ -255,11 +263,7 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 		String method = "SetAVTransportURI";
 		String metadata = getMetadata(url, mMimeType, title, description, iconSrc);
 		
-    	Map<String, String> params = new HashMap<String, String>();
-    	params.put("CurrentURI", url);
-    	params.put("CurrentURIMetaData", metadata);
-    	
-    	String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, params);
+    	String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, "CurrentURI", url, "CurrentURIMetaData", metadata);
         
 		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(DLNAService.this, method, payload, responseListener);
 		request.send();
@@ -316,12 +320,9 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 	  	String method = "Play";
 		String instanceId = "0";
 
-		Map<String, String> parameters = new HashMap<String, String>();
-		parameters.put("Speed", "1");
-		
-		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, parameters);
+		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, "Speed", "1");
 
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, updatePlayStateOnSuccess(PlayStateStatus.Playing, listener));
 		request.send();
 	}
 
@@ -330,9 +331,9 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
     	String method = "Pause";
 		String instanceId = "0";
 
-		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, null);
+		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId);
 
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, updatePlayStateOnSuccess(PlayStateStatus.Paused, listener));
 		request.send();
 	}
 
@@ -341,9 +342,9 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
     	String method = "Stop";
 		String instanceId = "0";
 
-		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, null);
+		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId);
 
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
+		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, updatePlayStateOnSuccess(PlayStateStatus.Idle, listener));
 		request.send();
 	}
 
@@ -362,7 +363,7 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
         String method = "Previous";
         String instanceId = "0";
 
-		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, null);
+		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId);
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
         request.send();
@@ -373,7 +374,7 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
         String method = "Next";
         String instanceId = "0";
 
-		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, null);
+		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId);
 
         ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
         request.send();
@@ -390,33 +391,75 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 
 		String time = String.format(Locale.US, "%02d:%02d:%02d", hour, minute, second);
 		
-		Map<String, String> parameters = new HashMap<String, String>();
-		parameters.put("Unit", "REL_TIME");
-		parameters.put("Target", time);
+		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, "Unit", "REL_TIME", "Target", time);
 
-		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, parameters);
+		playbackClock.seek(position);
 
 		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
 		request.send();
 	}
 	
+	/**
+	 * Gets the clock that answers getPosition() between GetPositionInfo
+	 * requests, e.g. to change how often it resyncs.
+	 */
+	public PlaybackClock getPlaybackClock() {
+		return playbackClock;
+	}
+	
+	private ResponseListener<Object> updatePlayStateOnSuccess(final PlayStateStatus playState, final ResponseListener<Object> listener) {
+		return new ResponseListener<Object>() {
+			
+			@Override
+			public void onSuccess(Object response) {
+				playbackClock.setPlayState(playState);
+				
+				if (listener != null)
+					listener.onSuccess(response);
+			}
+			
+			@Override
+			public void onError(ServiceCommandError error) {
+				if (listener != null)
+					listener.onError(error);
+			}
+		};
+	}
+	
 	private void getPositionInfo(final PositionInfoListener listener) {
+		synchronized (positionInfoListeners) {
+			if (listener != null)
+				positionInfoListeners.add(listener);
+			
+			if (positionInfoPending)
+				return;
+			
+			positionInfoPending = true;
+		}
+		
     	String method = "GetPositionInfo";
 		String instanceId = "0";
 
-		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, null);
+		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId);
 		ResponseListener<Object> responseListener = new ResponseListener<Object>() {
 			
 			@Override
 			public void onSuccess(Object response) {
-				if (listener != null) {
-					listener.onGetPositionInfoSuccess((String)response);
+				DLNAPositionInfo positionInfo = DLNAPositionInfo.parse((String) response);
+				
+				playbackClock.setPosition(positionInfo.getPosition());
+				
+				if (positionInfo.getDuration() > 0)
+					playbackClock.setDuration(positionInfo.getDuration());
+				
+				for (PositionInfoListener listener : takePositionInfoListeners()) {
+					listener.onGetPositionInfoSuccess(positionInfo);
 				}
 			}
 			
 			@Override
 			public void onError(ServiceCommandError error) {
-				if (listener != null) {
+				for (PositionInfoListener listener : takePositionInfoListeners()) {
 					listener.onGetPositionInfoFailed(error);
 				}
 			}
@@ -426,30 +469,119 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 		request.send();
 	}
 	
+	private List<PositionInfoListener> takePositionInfoListeners() {
+		synchronized (positionInfoListeners) {
+			List<PositionInfoListener> listeners = new ArrayList<PositionInfoListener>(positionInfoListeners);
+			positionInfoListeners.clear();
+			positionInfoPending = false;
+			
+			return listeners;
+		}
+	}
+	
+	private synchronized Timer getPositionInfoTimer() {
+		if (positionInfoTimer == null)
+			positionInfoTimer = new Timer("DLNAService", true);
+		
+		return positionInfoTimer;
+	}
+	
+	/**
+	 * Stops polling, fails pending duration retries and stops the timer
+	 * thread.
+	 */
+	private void cancelPositionInfoTimer() {
+		List<DurationRetry> retries;
+		
+		synchronized (this) {
+			stopPositionPolling();
+			
+			retries = new ArrayList<DurationRetry>(durationRetries);
+			durationRetries.clear();
+			
+			if (positionInfoTimer != null) {
+				positionInfoTimer.cancel();
+				positionInfoTimer = null;
+			}
+		}
+		
+		for (DurationRetry retry : retries) {
+			retry.cancel();
+			Util.postError(retry.listener, new ServiceCommandError(0, "Service disconnected", null));
+		}
+	}
+	
+	/** A delayed GetPositionInfo for a duration that was not known yet */
+	private class DurationRetry extends TimerTask {
+		final DurationListener listener;
+		final int attempt;
+		
+		DurationRetry(DurationListener listener, int attempt) {
+			this.listener = listener;
+			this.attempt = attempt;
+		}
+		
+		@Override
+		public void run() {
+			synchronized (DLNAService.this) {
+				if (!durationRetries.remove(this))
+					return;
+			}
+			
+			getDuration(listener, attempt);
+		}
+	}
+	
+	/**
+	 * Polls GetPositionInfo every interval milliseconds, keeping the playback
+	 * clock, and with it getPosition(), up to date without a request per call.
+	 */
+	public synchronized void startPositionPolling(long interval) {
+		stopPositionPolling();
+		
+		positionPollTask = new TimerTask() {
+			
+			@Override
+			public void run() {
+				getPositionInfo(null);
+			}
+		};
+		
+		getPositionInfoTimer().schedule(positionPollTask, 0, interval);
+	}
+	
+	public synchronized void stopPositionPolling() {
+		if (positionPollTask != null) {
+			positionPollTask.cancel();
+			positionPollTask = null;
+		}
+	}
+	
 	@Override
 	public void getDuration(final DurationListener listener) {
+		getDuration(listener, 0);
+	}
+	
+	private void getDuration(final DurationListener listener, final int attempt) {
 		getPositionInfo(new PositionInfoListener() {
 			
 			@Override
-			public void onGetPositionInfoSuccess(String positionInfoXml) {
-				String strDuration = parseData(positionInfoXml, "TrackDuration");
-				
-				String trackMetaData = parseData(positionInfoXml, "TrackMetaData");
-				MediaInfo info = DLNAMediaInfoParser.getMediaInfo(trackMetaData);
-				// Check if duration we get not equals 0 or media is image, otherwise wait 1 second and try again
-				if ((!strDuration.equals("0:00:00")) || (info.getMimeType().contains("image"))) {
-				long milliTimes = convertStrTimeFormatToLong(strDuration) * 1000;
+			public void onGetPositionInfoSuccess(DLNAPositionInfo positionInfo) {
+				// the duration is often reported as 0 right after media is
+				// loaded, so ask again a few times with growing delays; images
+				// never have a duration
+				if (positionInfo.getDuration() > 0 || attempt >= DURATION_MAX_RETRIES || positionInfo.isImage()) {
+					Util.postSuccess(listener, positionInfo.getDuration());
+					return;
+				}
 				
-				Util.postSuccess(listener, milliTimes);}
-				else new Timer().schedule(new TimerTask() {
-					
-					@Override
-					public void run() {
-						getDuration(listener);
-						
-					}
-				}, 1000); 
+				long delay = Math.min(DURATION_RETRY_DELAY << attempt, DURATION_MAX_RETRY_DELAY);
+				DurationRetry retry = new DurationRetry(listener, attempt + 1);
 				
+				synchronized (DLNAService.this) {
+					durationRetries.add(retry);
+					getPositionInfoTimer().schedule(retry, delay);
+				}
 			}
 			
 			@Override
@@ -461,15 +593,16 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 	
 	@Override
 	public void getPosition(final PositionListener listener) {
+		if (playbackClock.isSynchronized()) {
+			Util.postSuccess(listener, playbackClock.getPosition());
+			return;
+		}
+		
 		getPositionInfo(new PositionInfoListener() {
 			
 			@Override
-			public void onGetPositionInfoSuccess(String positionInfoXml) {
-				String strDuration = parseData(positionInfoXml, "RelTime");
-				
-				long milliTimes = convertStrTimeFormatToLong(strDuration) * 1000;
-				
-				Util.postSuccess(listener, milliTimes);
+			public void onGetPositionInfoSuccess(DLNAPositionInfo positionInfo) {
+				Util.postSuccess(listener, positionInfo.getPosition());
 			}
 			
 			@Override
@@ -480,29 +613,16 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 	}
 	
 	protected String getMessageXml(String serviceURN, String method, String instanceId, Map<String, String> params) {
-		StringBuilder sb = new StringBuilder();
-        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-        sb.append("<s:Envelope s:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\" xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\">");
-
-        sb.append("<s:Body>");
-        sb.append("<u:" + method + " xmlns:u=\""+ serviceURN + "\">");
-        sb.append("<InstanceID>" + instanceId + "</InstanceID>");
-
-        if (params != null) {
-    		for (Map.Entry<String, String> entry : params.entrySet()) {
-    		    String key = entry.getKey();
-    		    String value = entry.getValue();
-
-    		    String str = String.format("<%s>%s</%s>", key, value, key);
-    		    sb.append(str);
-    		}
-        }
-        
-        sb.append("</u:" + method + ">");
-        sb.append("</s:Body>");
-        sb.append("</s:Envelope>");
+		return DLNASoapEnvelope.forAction(serviceURN, method).build(instanceId, params);
+	}
 
-        return sb.toString();
+	/**
+	 * Builds a SOAP request from a precompiled envelope.
+	 *
+	 * @param arguments argument names and values, alternating, in the order the action defines them
+	 */
+	protected String getMessageXml(String serviceURN, String method, String instanceId, String... arguments) {
+		return DLNASoapEnvelope.forAction(serviceURN, method).build(instanceId, arguments);
 	}
 
     protected String getMetadata(String mediaURL, String mime, String title, String description, String iconUrl) {
@@ -512,14 +632,14 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 		String objectClass = null;
 		StringBuilder sb = new StringBuilder();
 
-		sb.append("&lt;DIDL-Lite xmlns=&quot;urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/&quot; ");
-		sb.append("xmlns:upnp=&quot;urn:schemas-upnp-org:metadata-1-0/upnp/&quot; ");
-		sb.append("xmlns:dc=&quot;http://purl.org/dc/elements/1.1/&quot;&gt;");
+		sb.append("<DIDL-Lite xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\" ");
+		sb.append("xmlns:upnp=\"urn:schemas-upnp-org:metadata-1-0/upnp/\" ");
+		sb.append("xmlns:dc=\"http://purl.org/dc/elements/1.1/\">");
 
-		sb.append("&lt;item id=&quot;" + id + "&quot; parentID=&quot;" + parentID + "&quot; restricted=&quot;" + restricted + "&quot;&gt;");
-		sb.append("&lt;dc:title&gt;" + title + "&lt;/dc:title&gt;");
+		sb.append("<item id=\"" + id + "\" parentID=\"" + parentID + "\" restricted=\"" + restricted + "\">");
+		sb.append("<dc:title>" + DLNASoapEnvelope.escape(title) + "</dc:title>");
 		
-		sb.append("&lt;dc:description&gt;" + description + "&lt;/dc:description&gt;");
+		sb.append("<dc:description>" + DLNASoapEnvelope.escape(description) + "</dc:description>");
 		
 		if (mime.startsWith("image")) {
 			objectClass = "object.item.imageItem";
@@ -530,12 +650,12 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 		else if (mime.startsWith("audio")) {
 			objectClass = "object.item.audioItem";
 		}
-		sb.append("&lt;res protocolInfo=&quot;http-get:*:" + mime + ":DLNA.ORG_OP=01&quot;&gt;" + mediaURL + "&lt;/res&gt;");
-		sb.append("&lt;upnp:albumArtURI&gt;" + iconUrl + "&lt;/upnp:albumArtURI&gt;");
-		sb.append("&lt;upnp:class&gt;" + objectClass + "&lt;/upnp:class&gt;");
+		sb.append("<res protocolInfo=\"http-get:*:" + DLNASoapEnvelope.escape(mime) + ":DLNA.ORG_OP=01\">" + DLNASoapEnvelope.escape(mediaURL) + "</res>");
+		sb.append("<upnp:albumArtURI>" + DLNASoapEnvelope.escape(iconUrl) + "</upnp:albumArtURI>");
+		sb.append("<upnp:class>" + objectClass + "</upnp:class>");
 
-		sb.append("&lt;/item&gt;");
-		sb.append("&lt;/DIDL-Lite&gt;");
+		sb.append("</item>");
+		sb.append("</DIDL-Lite>");
 		
 		return sb.toString();
 	}
@@ -594,8 +714,10 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 					response.getEntity().consumeContent();
 				} catch (ClientProtocolException e) {
 					e.printStackTrace();
+					Util.postError(command.getResponseListener(), new ServiceCommandError(0, e.getMessage(), null));
 				} catch (IOException e) {
 					e.printStackTrace();
+					Util.postError(command.getResponseListener(), new ServiceCommandError(0, e.getMessage(), null));
 				}
 			}
 		});
@@ -646,44 +768,23 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 		return null;
 	}
 	
-	private String parseData(String response, String key) {
-		String startTag = "<" + key + ">";
-		String endTag = "</" + key + ">";
-		
-		int start = response.indexOf(startTag);
-		int end = response.indexOf(endTag);
-		
-		String data = response.substring(start + startTag.length(), end);
-		
-		return data;
-	}
-	
-	private long convertStrTimeFormatToLong(String strTime) {
-		String[] tokens = strTime.split(":");
-		long time = 0;
-		
-		for (int i = 0; i < tokens.length; i++) {
-			time *= 60;
-			time += Integer.parseInt(tokens[i]);
-		}
-		
-		return time;
-	}
 
 	@Override
 	public void getPlayState(final PlayStateListener listener) {
     	String method = "GetTransportInfo";
 		String instanceId = "0";
 
-		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId, null);
+		String payload = getMessageXml(AV_TRANSPORT_URN, method, instanceId);
 		
 		ResponseListener<Object> responseListener = new ResponseListener<Object>() {
 			
 			@Override
 			public void onSuccess(Object response) {
-				String transportState = parseData((String)response, "CurrentTransportState");
+				String transportState = DLNASoapResponse.parse((String) response, "CurrentTransportState").getString("CurrentTransportState");
 				PlayStateStatus status = PlayStateStatus.convertTransportStateToPlayStateStatus(transportState);
 				
+				playbackClock.setPlayState(status);
+				
 				Util.postSuccess(listener, status);
 			}
 			
@@ -707,22 +808,16 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 	
 	private void addSubscription(URLServiceSubscription<?> subscription) {
 		if (httpServer.isRunning() == false) {
-			Util.runInBackground(new Runnable() {
-				
-				@Override
-				public void run() {
-					httpServer.start();
-				}
-			});
+			httpServer.start();
 			subscribeServices();
 		}
 		
-		httpServer.getSubscriptions().add(subscription);
+		httpServer.addSubscription(subscription);
 	}
 	
 	@Override
 	public void unsubscribe(URLServiceSubscription<?> subscription) {
-		httpServer.getSubscriptions().remove(subscription);
+		httpServer.removeSubscription(subscription);
 
 		if (httpServer.getSubscriptions().isEmpty()) {
 			unsubscribeServices();
@@ -755,6 +850,8 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 	public void disconnect() {
 		connected = false;
 		
+		cancelPositionInfoTimer();
+		
 		if (mServiceReachability != null)
 			mServiceReachability.stop();
 		
@@ -790,126 +887,29 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 				}
 	            
 				HttpHost host = new HttpHost(serviceDescription.getIpAddress(), serviceDescription.getPort());
-				List<Service> serviceList = serviceDescription.getServiceList();
-
-				if (serviceList != null) {
-					for (int i = 0; i < serviceList.size(); i++) {
-						BasicHttpRequest request = new BasicHttpRequest(SUBSCRIBE, serviceList.get(i).eventSubURL);
-						
-						request.setHeader("CALLBACK", "<http://" + myIpAddress + ":" + httpServer.getPort() + serviceList.get(i).eventSubURL + ">");
-						request.setHeader("NT", "upnp:event");
-						request.setHeader("TIMEOUT", "Second-" + TIMEOUT);
-						request.setHeader("Connection", "close");
-						request.setHeader("Content-length", "0");
-						request.setHeader("USER-AGENT", "Android UPnp/1.1 ConnectSDK");
-						
-						HttpResponse response = null;
-						try {
-							response = httpClient.execute(host, request);
-							
-							int code = response.getStatusLine().getStatusCode();
-
-							if (code == 200) { 
-					            SIDList.put(serviceList.get(i).serviceType, response.getFirstHeader("SID").getValue());
-							}
-							response.getEntity().consumeContent();
-						} catch (ClientProtocolException e) {
-							e.printStackTrace();
-						} catch (IOException e) {
-							e.printStackTrace();
-						}
-					}
-				}
+				subscriptionManager.start(host, myIpAddress, serviceDescription.getServiceList());
 			}
 		});
-		
-		resubscribeServices();
 	}
 	
+	/**
+	 * Renews all event subscriptions now. They are otherwise renewed
+	 * shortly before they expire.
+	 */
 	public void resubscribeServices() {
-		resubscriptionTimer = new Timer();
-		resubscriptionTimer.scheduleAtFixedRate(new TimerTask() {
-			
-			@Override
-			public void run() {
-				Util.runInBackground(new Runnable() {
-
-					@Override
-					public void run() {
-						HttpHost host = new HttpHost(serviceDescription.getIpAddress(), serviceDescription.getPort());
-						List<Service> serviceList = serviceDescription.getServiceList();
-
-						if (serviceList != null) {
-							for (int i = 0; i < serviceList.size(); i++) {
-								String eventSubURL = serviceList.get(i).eventSubURL;
-								String SID = SIDList.get(serviceList.get(i).serviceType);
-								
-								BasicHttpRequest request = new BasicHttpRequest(SUBSCRIBE, eventSubURL);
-								
-								request.setHeader("TIMEOUT", "Second-" + TIMEOUT);
-								request.setHeader("SID", SID);
-								
-								HttpResponse response = null;
-								
-								try {
-									response = httpClient.execute(host, request);
-									
-									int code = response.getStatusLine().getStatusCode();
-
-									if (code == 200) { 
-									}
-									response.getEntity().consumeContent();
-								} catch (ClientProtocolException e) {
-									e.printStackTrace();
-								} catch (IOException e) {
-									e.printStackTrace();
-								}
-							}
-						}
-					}
-				});				
-			}
-		}, TIMEOUT/2*1000, TIMEOUT/2*1000);
+		subscriptionManager.renewAll();
 	}
 	
 	public void unsubscribeServices() {
-		if (resubscriptionTimer != null)
-			resubscriptionTimer.cancel();
-
-		Util.runInBackground(new Runnable() {
-
-			@Override
-			public void run() {
-				final List<Service> serviceList = serviceDescription.getServiceList();
-
-				if (serviceList != null) {
-					for (int i = 0; i < serviceList.size(); i++) {
-						BasicHttpRequest request = new BasicHttpRequest(UNSUBSCRIBE, serviceList.get(i).eventSubURL);
-						
-						String sid = SIDList.get(serviceList.get(i).serviceType);
-						request.setHeader("SID", sid);
-						HttpResponse response = null;
-
-						try {
-							HttpHost host = new HttpHost(serviceDescription.getIpAddress(), serviceDescription.getPort());
-							
-							response = httpClient.execute(host, request);
-							
-							int code = response.getStatusLine().getStatusCode();
-
-							if (code == 200) { 
-					            SIDList.remove(serviceList.get(i).serviceType);
-							}
-							response.getEntity().consumeContent();
-						} catch (ClientProtocolException e) {
-							e.printStackTrace();
-						} catch (IOException e) {
-							e.printStackTrace();
-						}
-					}
-				}
-			}
-		});
+		subscriptionManager.stop();
+	}
+	
+	/**
+	 * @return the manager of this service's event subscriptions, e.g. to
+	 * check their health
+	 */
+	public DLNASubscriptionManager getSubscriptionManager() {
+		return subscriptionManager;
 	}
 	
 	@Override
@@ -986,11 +986,7 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 		String channel = "Master";
 		String value = String.valueOf((int)(volume*100));
 		
-    	Map<String, String> params = new HashMap<String, String>();
-   		params.put("Channel", channel);
-    	params.put("DesiredVolume", value);
-    	
-		String payload = getMessageXml(RENDERING_CONTROL_URN, method, instanceId, params);
+		String payload = getMessageXml(RENDERING_CONTROL_URN, method, instanceId, "Channel", channel, "DesiredVolume", value);
 
 		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
 		request.send();
@@ -1002,17 +998,13 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 		String instanceId = "0";
 		String channel = "Master";
 
-    	Map<String, String> params = new HashMap<String, String>();
-   		params.put("Channel", channel);
-    	
-		String payload = getMessageXml(RENDERING_CONTROL_URN, method, instanceId, params);
+		String payload = getMessageXml(RENDERING_CONTROL_URN, method, instanceId, "Channel", channel);
 
 		ResponseListener<Object> responseListener = new ResponseListener<Object>() {
 
 			@Override
 			public void onSuccess(Object response) {
-				String currentVolume = parseData((String) response, "CurrentVolume");
-				int iVolume = Integer.parseInt(currentVolume);
+				int iVolume = DLNASoapResponse.parse((String) response, "CurrentVolume").getInt("CurrentVolume", 0);
 				float fVolume = (float) (iVolume / 100.0);
 
 				Util.postSuccess(listener, fVolume);
@@ -1035,11 +1027,7 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 		String channel = "Master";
 		int muteStatus = (isMute) ? 1 : 0;
 
-    	Map<String, String> params = new HashMap<String, String>();
-   		params.put("Channel", channel);
-   		params.put("DesiredMute", String.valueOf(muteStatus));
-    	
-		String payload = getMessageXml(RENDERING_CONTROL_URN, method, instanceId, params);
+		String payload = getMessageXml(RENDERING_CONTROL_URN, method, instanceId, "Channel", channel, "DesiredMute", String.valueOf(muteStatus));
 
 		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, method, payload, listener);
 		request.send();
@@ -1051,17 +1039,13 @@ public class DLNAService extends DeviceService implements MediaControl, MediaPla
 		String instanceId = "0";
 		String channel = "Master";
 		
-    	Map<String, String> params = new HashMap<String, String>();
-   		params.put("Channel", channel);
-    	
-		String payload = getMessageXml(RENDERING_CONTROL_URN, method, instanceId, params);
+		String payload = getMessageXml(RENDERING_CONTROL_URN, method, instanceId, "Channel", channel);
 
 		ResponseListener<Object> responseListener = new ResponseListener<Object>() {
 
 			@Override
 			public void onSuccess(Object response) {
-				String currentMute = parseData((String) response, "CurrentMute");
-				boolean isMute = Boolean.parseBoolean(currentMute);
+				boolean isMute = DLNASoapResponse.parse((String) response, "CurrentMute").getBoolean("CurrentMute");
 
 				Util.postSuccess(listener, isMute);
 			}
@@ -24,8 +24,10 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -56,6 +58,7 @@ import android.util.Log;
 
 import com.connectsdk.core.AppInfo;
 import com.connectsdk.core.ChannelInfo;
+import com.connectsdk.core.ChannelList;
 import com.connectsdk.core.ExternalInputInfo;
 import com.connectsdk.core.ImageInfo;
 import com.connectsdk.core.MediaInfo;
@@ -65,6 +68,8 @@ import com.connectsdk.discovery.DiscoveryManager;
 import com.connectsdk.discovery.DiscoveryManager.PairingLevel;
 import com.connectsdk.etc.helper.DeviceServiceReachability;
 import com.connectsdk.etc.helper.HttpMessage;
+import com.connectsdk.etc.helper.PointerEventCoalescer;
+import com.connectsdk.etc.helper.PointerEventCoalescer.PointerEventSink;
 import com.connectsdk.service.capability.ExternalInputControl;
 import com.connectsdk.service.capability.KeyControl;
 import com.connectsdk.service.capability.Launcher;
@@ -118,6 +123,9 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 	public final static String TARGET_3D_MODE = "3DMode";
 	public final static String TARGET_IS_3D = "is_3D";
 	
+	private final static long CURSOR_HIDE_DELAY = 150;
+	private final static int MOUSE_EVENT_RATE = 30;
+	
 	enum State {
     	NONE,
     	INITIAL,
@@ -141,8 +149,26 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 	
 	State state = State.INITIAL;
 	
-	PointF mMouseDistance;
-	Boolean mMouseIsMoving;
+	PointerEventCoalescer mouseEventCoalescer;
+
+	// null until the cursor state is known; treated as visible
+	Boolean mMouseCursorVisible;
+
+	private final LinkedList<KeyInput> keyInputQueue = new LinkedList<KeyInput>();
+	private boolean keyInputInProgress;
+	
+	ChannelList channelList = new ChannelList();
+	SAXParser saxParser;
+
+	private static class KeyInput {
+		final int keycode;
+		final ResponseListener<Object> listener;
+
+		KeyInput(int keycode, ResponseListener<Object> listener) {
+			this.keycode = keycode;
+			this.listener = listener;
+		}
+	}
     
 	public NetcastTVService(ServiceDescription serviceDescription, ServiceConfig serviceConfig) {
 		super(serviceDescription, serviceConfig);
@@ -155,6 +181,8 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 
 		keyboardString = new StringBuilder();
 		
+		mouseEventCoalescer = new PointerEventCoalescer(mouseEventSink, MOUSE_EVENT_RATE, true, true);
+		
 		httpClient = new DefaultHttpClient();
 		ClientConnectionManager mgr = httpClient.getConnectionManager();
 		HttpParams params = httpClient.getParams();
@@ -245,6 +273,12 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 			httpServer = null;
 		}
 		
+		synchronized (keyInputQueue) {
+			keyInputQueue.clear();
+			keyInputInProgress = false;
+		}
+		mMouseCursorVisible = null;
+		
 		state = State.INITIAL;
 	}
 	
@@ -973,6 +1007,26 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 	
 	@Override
 	public void getChannelList(final ChannelListListener listener) {
+		getChannelList(listener, null);
+	}
+	
+	/**
+	 * Refreshes the channel list and reports what changed since the previous
+	 * refresh. The first refresh reports every channel as added.
+	 */
+	public void getChannelListChanges(ChannelListDiffListener listener) {
+		getChannelList(null, listener);
+	}
+	
+	/**
+	 * Gets the channel list as of the last refresh, e.g. to page through it
+	 * with ChannelList.getChannels(offset, count).
+	 */
+	public ChannelList getChannelListSnapshot() {
+		return channelList;
+	}
+	
+	private void getChannelList(final ChannelListListener listener, final ChannelListDiffListener diffListener) {
 		String requestURL = getUDAPRequestURL(UDAP_PATH_DATA, TARGET_CHANNEL_LIST);
 
 		ResponseListener<Object> responseListener = new ResponseListener<Object>() {
@@ -982,29 +1036,14 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 				String strObj = (String)response;
 				
 				try {
-					SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-					InputStream stream = new ByteArrayInputStream(strObj.getBytes("UTF-8"));
-					SAXParser saxParser = saxParserFactory.newSAXParser();
-
-					NetcastChannelParser parser = new NetcastChannelParser();
-					saxParser.parse(stream, parser);
-					
-					JSONArray channelArray = parser.getJSONChannelArray();
-					ArrayList<ChannelInfo> channelList = new ArrayList<ChannelInfo>();
+					ChannelList.Diff diff = updateChannelList(strObj);
 					
-					for (int i = 0; i < channelArray.length(); i++) {
-						 JSONObject rawData;
-						 try {
-							 rawData = (JSONObject) channelArray.get(i);
-						 
-							 ChannelInfo channel = NetcastChannelParser.parseRawChannelData(rawData);
-							 channelList.add(channel);
-						 } catch (JSONException e) {
-							 e.printStackTrace();
-						 }
-					}
+					// listeners get their own list, which they may sort or filter
+					if (listener != null)
+						Util.postSuccess(listener, new ArrayList<ChannelInfo>(channelList.getChannels()));
 					
-					Util.postSuccess(listener, channelList);
+					if (diffListener != null)
+						Util.postSuccess(diffListener, diff);
 				} catch (ParserConfigurationException e) {
 					e.printStackTrace();
 				} catch (SAXException e) {
@@ -1016,7 +1055,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 			
 			@Override
 			public void onError(ServiceCommandError error) {
-				Util.postError(listener, error);
+				Util.postError(listener != null ? listener : diffListener, error);
 			}
 		};
 		
@@ -1025,6 +1064,54 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 		request.send();
 	}
 	
+	private ChannelList.Diff updateChannelList(String xml) throws ParserConfigurationException, SAXException, IOException {
+		synchronized (channelList) {
+			byte[] bytes = xml.getBytes("UTF-8");
+			
+			// the TV returns the same document as long as nothing changed, so
+			// there is no need to parse it again
+			MessageDigest digest = ChannelList.createPayloadDigest();
+			byte[] payloadDigest = digest != null ? digest.digest(bytes) : null;
+			
+			if (channelList.hasPayload(payloadDigest))
+				return channelList.unchanged();
+			
+			InputStream stream = new ByteArrayInputStream(bytes);
+			SAXParser saxParser = getSAXParser();
+
+			NetcastChannelParser parser = new NetcastChannelParser();
+			saxParser.parse(stream, parser);
+			
+			JSONArray channelArray = parser.getJSONChannelArray();
+			ArrayList<ChannelInfo> channels = new ArrayList<ChannelInfo>(channelArray.length());
+			
+			for (int i = 0; i < channelArray.length(); i++) {
+				 JSONObject rawData;
+				 try {
+					 rawData = (JSONObject) channelArray.get(i);
+				 
+					 ChannelInfo channel = NetcastChannelParser.parseRawChannelData(rawData);
+					 channels.add(channel);
+				 } catch (JSONException e) {
+					 e.printStackTrace();
+				 }
+			}
+			
+			ChannelList.Diff diff = channelList.update(channels, null, payloadDigest);
+			
+			return diff;
+		}
+	}
+	
+	private SAXParser getSAXParser() throws ParserConfigurationException, SAXException {
+		if (saxParser == null)
+			saxParser = SAXParserFactory.newInstance().newSAXParser();
+		else
+			saxParser.reset();
+		
+		return saxParser;
+	}
+	
 	@Override
 	public void channelUp(ResponseListener<Object> listener) {
 		sendKeyCode(VirtualKeycodes.CHANNEL_UP.getCode(), listener);
@@ -1681,7 +1768,24 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 		return CapabilityPriorityLevel.HIGH;
 	}
 	
-	private void setMouseCursorVisible(boolean visible, ResponseListener<Object> listener) {
+	private void setMouseCursorVisible(final boolean visible, final ResponseListener<Object> listener) {
+		ResponseListener<Object> responseListener = new ResponseListener<Object>() {
+			
+			@Override
+			public void onSuccess(Object response) {
+				mMouseCursorVisible = visible;
+				
+				Util.postSuccess(listener, response);
+			}
+			
+			@Override
+			public void onError(ServiceCommandError error) {
+				mMouseCursorVisible = null;
+				
+				Util.postError(listener, error);
+			}
+		};
+		
 		String requestURL = getUDAPRequestURL(UDAP_PATH_EVENT);
 		
 		Map <String,String> params = new HashMap<String,String>();
@@ -1691,7 +1795,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 		
 		String httpMessage = getUDAPMessageBody(UDAP_API_EVENT, params);
 
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, requestURL, httpMessage, listener);
+		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, requestURL, httpMessage, responseListener);
 		request.send();
 	}
 	
@@ -1703,8 +1807,7 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 			public void onSuccess(Object response) {
 				Log.d("Connect SDK", "Netcast TV's mouse has been connected");
 				
-				mMouseDistance = new PointF(0, 0);
-				mMouseIsMoving = false;
+				mouseEventCoalescer.reset();
 			}
 			
 			@Override
@@ -1718,11 +1821,14 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 	
 	@Override
 	public void disconnectMouse() {
+		mouseEventCoalescer.reset();
 		setMouseCursorVisible(false, null);
 	}
 	
 	@Override
 	public void click() {
+		mouseEventCoalescer.flush();
+		
 		ResponseListener<Object> responseListener = new ResponseListener<Object>() {
 			
 			@Override
@@ -1740,6 +1846,8 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 		Map <String,String> params = new HashMap<String,String>();
 		params.put("name", "HandleTouchClick");
 		
+		mMouseCursorVisible = true;
+		
 		String httpMessage = getUDAPMessageBody(UDAP_API_COMMAND, params);
 
 		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, requestURL, httpMessage, responseListener);
@@ -1748,46 +1856,45 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 
 	@Override
 	public void move(double dx, double dy) {
-		mMouseDistance.x += dx;
-		mMouseDistance.y += dy;
+		mouseEventCoalescer.move(dx, dy);
+	}
+	
+	private PointerEventSink mouseEventSink = new PointerEventSink() {
 		
-		if (!mMouseIsMoving)
-		{
-			mMouseIsMoving = true;
-			this.moveMouse();
+		@Override
+		public void onMove(double dx, double dy) {
+			// whole units only; the coalescer keeps the fractions
+			moveMouse((int) dx, (int) dy);
 		}
-	}
+		
+		@Override
+		public void onScroll(double dx, double dy) {
+			// wheel steps are discrete and sent directly from scroll()
+		}
+	};
 	
-	private void moveMouse() {
+	private void moveMouse(int x, int y) {
 		String requestURL = getUDAPRequestURL(UDAP_PATH_COMMAND);
 		
-		int x = (int)mMouseDistance.x;
-		int y = (int)mMouseDistance.y;
-
 		Map <String,String> params = new HashMap<String,String>();
 		params.put("name", "HandleTouchMove");
 		params.put("x", String.valueOf(x));
 		params.put("y", String.valueOf(y));
 		
-		mMouseDistance.x = mMouseDistance.y = 0;
-		
-		final NetcastTVService mouseService = this;
+		mMouseCursorVisible = true;
 		
 		ResponseListener<Object> responseListener = new ResponseListener<Object>() {
 			
 			@Override
 			public void onSuccess(Object response) {
-				if (mMouseDistance.x > 0 || mMouseDistance.y > 0)
-					mouseService.moveMouse();
-				else
-					mMouseIsMoving = false;
+				mouseEventCoalescer.acknowledge();
 			}
 			
 			@Override
 			public void onError(ServiceCommandError error) {
 				Log.w("Connect SDK", "Netcast TV's mouse move has failed");
 				
-				mMouseIsMoving = false;
+				mouseEventCoalescer.acknowledge();
 			}
 		};
 		
@@ -1826,6 +1933,8 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 		else 
 			params.put("value", "down");
 		
+		mMouseCursorVisible = true;
+		
 		String httpMessage = getUDAPMessageBody(UDAP_API_COMMAND, params);
 
 		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, requestURL, httpMessage, responseListener);
@@ -2096,32 +2205,96 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 		return getUDAPMessageBody(UDAP_API_COMMAND, params);
 	}
 	
+	/**
+	 * Key codes are queued and sent one after another as soon as the previous
+	 * one is answered. The mouse cursor only needs to be hidden (which costs a
+	 * round trip and a short settle delay) when it is known or assumed to be
+	 * visible.
+	 */
 	@Override
 	public void sendKeyCode(final int keycode, final ResponseListener<Object> listener) {
+		synchronized (keyInputQueue) {
+			keyInputQueue.add(new KeyInput(keycode, listener));
+			
+			if (keyInputInProgress)
+				return;
+			
+			keyInputInProgress = true;
+		}
+		
+		sendNextKeyInput();
+	}
+	
+	private void sendNextKeyInput() {
+		final KeyInput keyInput;
+		
+		synchronized (keyInputQueue) {
+			keyInput = keyInputQueue.poll();
+			
+			if (keyInput == null) {
+				keyInputInProgress = false;
+				return;
+			}
+		}
+		
+		if (mMouseCursorVisible == null || mMouseCursorVisible) {
+			ResponseListener<Object> cursorListener = new ResponseListener<Object>() {
+				
+				@Override
+				public void onSuccess(Object response) {
+					// give the TV a moment to hide the cursor before the key arrives
+					Util.runInBackground(new Runnable() {
+						
+						@Override
+						public void run() {
+							try {
+								Thread.sleep(CURSOR_HIDE_DELAY);
+							} catch (InterruptedException e) {
+								e.printStackTrace();
+							}
+							
+							sendKeyInput(keyInput);
+						}
+					}, true);
+				}
+				
+				@Override
+				public void onError(ServiceCommandError error) {
+					Util.postError(keyInput.listener, error);
+					
+					sendNextKeyInput();
+				}
+			};
+			
+			setMouseCursorVisible(false, cursorListener);
+		} else {
+			sendKeyInput(keyInput);
+		}
+	}
+	
+	private void sendKeyInput(final KeyInput keyInput) {
 		ResponseListener<Object> responseListener = new ResponseListener<Object>() {
 			
 			@Override
 			public void onSuccess(Object response) {
-				try {
-					Thread.sleep(150);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
+				Util.postSuccess(keyInput.listener, response);
 				
-				String requestURL = getUDAPRequestURL(UDAP_PATH_COMMAND);
-				String httpMessage = getHttpMessageForHandleKeyInput(keycode);
-
-				ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(NetcastTVService.this, requestURL, httpMessage, listener);
-				request.send();
+				sendNextKeyInput();
 			}
 			
 			@Override
 			public void onError(ServiceCommandError error) {
-				Util.postError(listener, error);
+				Util.postError(keyInput.listener, error);
+				
+				sendNextKeyInput();
 			}
 		};
 		
-		setMouseCursorVisible(false, responseListener);
+		String requestURL = getUDAPRequestURL(UDAP_PATH_COMMAND);
+		String httpMessage = getHttpMessageForHandleKeyInput(keyInput.keycode);
+
+		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(this, requestURL, httpMessage, responseListener);
+		request.send();
 	}
 	
 	private String getUDAPRequestURL(String path) {
@@ -2261,8 +2434,10 @@ public class NetcastTVService extends DeviceService implements Launcher, MediaCo
 					response.getEntity().consumeContent();
 				} catch (ClientProtocolException e) {
 					e.printStackTrace();
+					Util.postError(command.getResponseListener(), new ServiceCommandError(0, e.getMessage(), null));
 				} catch (IOException e) {
 					e.printStackTrace();
+					Util.postError(command.getResponseListener(), new ServiceCommandError(0, e.getMessage(), null));
 				}
 			}
 		});
@@ -75,6 +75,7 @@ import com.connectsdk.service.command.URLServiceSubscription;
 import com.connectsdk.service.config.ServiceConfig;
 import com.connectsdk.service.config.ServiceDescription;
 import com.connectsdk.service.roku.RokuApplicationListParser;
+import com.connectsdk.service.roku.RokuKeypressChannel;
 import com.connectsdk.service.sessions.LaunchSession;
 
 public class RokuService extends DeviceService implements Launcher,
@@ -98,6 +99,7 @@ public class RokuService extends DeviceService implements Launcher,
 	}
 
 	HttpClient httpClient;
+	RokuKeypressChannel keypressChannel;
 
 	public RokuService(ServiceDescription serviceDescription,
 			ServiceConfig serviceConfig) {
@@ -117,6 +119,8 @@ public class RokuService extends DeviceService implements Launcher,
 		if (this.serviceDescription != null)
 			this.serviceDescription.setPort(8060);
 
+		closeKeypressChannel();
+
 		probeForAppSupport();
 	}
 
@@ -479,86 +483,37 @@ public class RokuService extends DeviceService implements Launcher,
 
 	@Override
 	public void up(ResponseListener<Object> listener) {
-		String action = "keypress";
-		String param = "Up";
-
-		String uri = requestURL(action, param);
-
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress("Up", listener);
 	}
 
 	@Override
 	public void down(final ResponseListener<Object> listener) {
-		String action = "keypress";
-		String param = "Down";
-
-		String uri = requestURL(action, param);
-
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress("Down", listener);
 	}
 
 	@Override
 	public void left(ResponseListener<Object> listener) {
-		String action = "keypress";
-		String param = "Left";
-
-		String uri = requestURL(action, param);
-
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress("Left", listener);
 	}
 
 	@Override
 	public void right(ResponseListener<Object> listener) {
-		String action = "keypress";
-		String param = "Right";
-
-		String uri = requestURL(action, param);
-
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress("Right", listener);
 	}
 
 	@Override
 	public void ok(final ResponseListener<Object> listener) {
-		String action = "keypress";
-		String param = "Select";
-
-		String uri = requestURL(action, param);
-
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress("Select", listener);
 	}
 
 	@Override
 	public void back(ResponseListener<Object> listener) {
-		String action = "keypress";
-		String param = "Back";
-
-		String uri = requestURL(action, param);
-
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress("Back", listener);
 	}
 
 	@Override
 	public void home(ResponseListener<Object> listener) {
-		String action = "keypress";
-		String param = "Home";
-
-		String uri = requestURL(action, param);
-
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress("Home", listener);
 	}
 
 	@Override
@@ -573,26 +528,12 @@ public class RokuService extends DeviceService implements Launcher,
 
 	@Override
 	public void play(ResponseListener<Object> listener) {
-		String action = "keypress";
-		String param = "Play";
-
-		String uri = requestURL(action, param);
-
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress("Play", listener);
 	}
 
 	@Override
 	public void pause(ResponseListener<Object> listener) {
-		String action = "keypress";
-		String param = "Play";
-
-		String uri = requestURL(action, param);
-
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress("Play", listener);
 	}
 
 	@Override
@@ -609,26 +550,12 @@ public class RokuService extends DeviceService implements Launcher,
 
 	@Override
 	public void rewind(ResponseListener<Object> listener) {
-		String action = "keypress";
-		String param = "Rev";
-
-		String uri = requestURL(action, param);
-
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress("Rev", listener);
 	}
 
 	@Override
 	public void fastForward(ResponseListener<Object> listener) {
-		String action = "keypress";
-		String param = "Fwd";
-
-		String uri = requestURL(action, param);
-
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress("Fwd", listener);
 	}
 
     @Override
@@ -795,22 +722,6 @@ public class RokuService extends DeviceService implements Launcher,
 			return;
 		}
 
-		ResponseListener<Object> listener = new ResponseListener<Object>() {
-
-			@Override
-			public void onSuccess(Object response) {
-				// TODO Auto-generated method stub
-
-			}
-
-			@Override
-			public void onError(ServiceCommandError error) {
-				// TODO Auto-generated method stub
-
-			}
-		};
-
-		String action = "keypress";
 		String param = null;
 		try {
 			param = "Lit_" + URLEncoder.encode(input, "UTF-8");
@@ -819,13 +730,9 @@ public class RokuService extends DeviceService implements Launcher,
 			e.printStackTrace();
 		}
 
-		String uri = requestURL(action, param);
-
-		Log.d("Connect SDK", "RokuService::send() | uri = " + uri);
+		Log.d("Connect SDK", "RokuService::send() | param = " + param);
 
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress(param, null);
 	}
 
 	@Override
@@ -835,56 +742,53 @@ public class RokuService extends DeviceService implements Launcher,
 
 	@Override
 	public void sendEnter() {
-		ResponseListener<Object> listener = new ResponseListener<Object>() {
-
-			@Override
-			public void onSuccess(Object response) {
-				// TODO Auto-generated method stub
-
-			}
-
-			@Override
-			public void onError(ServiceCommandError error) {
-				// TODO Auto-generated method stub
-
-			}
-		};
-
-		String action = "keypress";
-		String param = "Enter";
-
-		String uri = requestURL(action, param);
-
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+		sendKeyPress("Enter", null);
 	}
 
 	@Override
 	public void sendDelete() {
-		ResponseListener<Object> listener = new ResponseListener<Object>() {
+		sendKeyPress("Backspace", null);
+	}
 
-			@Override
-			public void onSuccess(Object response) {
-				// TODO Auto-generated method stub
+	/**
+	 * Sends an ECP keypress over the persistent keypress channel. Key presses
+	 * are delivered to the device in the order they are sent.
+	 *
+	 * @param key ECP key name (e.g. "Home", "Select" or "Lit_a"), URL encoded
+	 */
+	public void sendKeyPress(String key, ResponseListener<Object> listener) {
+		getKeypressChannel().send(RokuKeypressChannel.KEYPRESS, key, listener);
+	}
 
-			}
+	public void keyDown(String key, ResponseListener<Object> listener) {
+		getKeypressChannel().send(RokuKeypressChannel.KEYDOWN, key, listener);
+	}
 
-			@Override
-			public void onError(ServiceCommandError error) {
-				// TODO Auto-generated method stub
+	public void keyUp(String key, ResponseListener<Object> listener) {
+		getKeypressChannel().send(RokuKeypressChannel.KEYUP, key, listener);
+	}
 
-			}
-		};
+	/**
+	 * Sends a list of ECP keypresses back-to-back. The listener is called once,
+	 * when the whole sequence has been accepted or on the first failure.
+	 */
+	public void sendKeySequence(List<String> keys, ResponseListener<Object> listener) {
+		getKeypressChannel().sendSequence(keys, listener);
+	}
 
-		String action = "keypress";
-		String param = "Backspace";
+	private synchronized RokuKeypressChannel getKeypressChannel() {
+		if (keypressChannel == null) {
+			keypressChannel = new RokuKeypressChannel(serviceDescription.getIpAddress(), serviceDescription.getPort());
+		}
 
-		String uri = requestURL(action, param);
+		return keypressChannel;
+	}
 
-		ServiceCommand<ResponseListener<Object>> request = new ServiceCommand<ResponseListener<Object>>(
-				this, uri, null, listener);
-		request.send();
+	private synchronized void closeKeypressChannel() {
+		if (keypressChannel != null) {
+			keypressChannel.disconnect();
+			keypressChannel = null;
+		}
 	}
 
 	@Override
@@ -1079,6 +983,8 @@ public class RokuService extends DeviceService implements Launcher,
 	public void disconnect() {
 		connected = false;
 
+		closeKeypressChannel();
+
 		if (mServiceReachability != null)
 			mServiceReachability.stop();
 
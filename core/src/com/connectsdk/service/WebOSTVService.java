@@ -21,10 +21,13 @@
 package com.connectsdk.service;
 
 import java.io.ByteArrayOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -45,6 +48,7 @@ import android.util.Log;
 
 import com.connectsdk.core.AppInfo;
 import com.connectsdk.core.ChannelInfo;
+import com.connectsdk.core.ChannelList;
 import com.connectsdk.core.ExternalInputInfo;
 import com.connectsdk.core.ImageInfo;
 import com.connectsdk.core.MediaInfo;
@@ -79,10 +83,14 @@ import com.connectsdk.service.sessions.LaunchSession;
 import com.connectsdk.service.sessions.LaunchSession.LaunchSessionType;
 import com.connectsdk.service.sessions.WebAppSession;
 import com.connectsdk.service.sessions.WebOSWebAppSession;
+import com.connectsdk.service.webos.WebOSTVCommandQueue;
+import com.connectsdk.service.webos.WebOSTVCommandQueue.OverflowPolicy;
 import com.connectsdk.service.webos.WebOSTVKeyboardInput;
 import com.connectsdk.service.webos.WebOSTVMouseSocketConnection;
+import com.connectsdk.service.webos.WebOSTVResponseCache;
 import com.connectsdk.service.webos.WebOSTVServiceSocketClient;
 import com.connectsdk.service.webos.WebOSTVServiceSocketClient.WebOSTVServiceSocketClientListener;
+import com.connectsdk.service.webos.WebOSTVSocketMessage;
 
 @SuppressLint("DefaultLocale")
 public class WebOSTVService extends DeviceService implements Launcher, MediaControl, MediaPlayer, VolumeControl, TVControl, ToastControl, ExternalInputControl, MouseControl, TextInputControl, PowerControl, KeyControl, WebAppLauncher {
@@ -207,6 +215,36 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 	WebOSTVServiceSocketClient socket;
 	PairingType pairingType;
 	
+	WebOSTVResponseCache responseCache = new WebOSTVResponseCache();
+	
+	ChannelList channelList = new ChannelList();
+	
+	// diff listeners of live channel list subscriptions; each new diff is
+	// posted to all of them once, whichever response delivered it
+	ConcurrentHashMap<URLServiceSubscription<?>, ChannelListDiffListener> channelListDiffListeners = new ConcurrentHashMap<URLServiceSubscription<?>, ChannelListDiffListener>();
+	
+	// true while a background connection made by preconnect() has not been
+	// claimed by connect(); preconnectRegistered is set once that connection
+	// has registered with the TV. Both are only changed under preconnectLock,
+	// so exactly one of connect() and onConnect() reports the connection.
+	volatile boolean preconnecting = false;
+	boolean preconnectRegistered = false;
+	final Object preconnectLock = new Object();
+	
+	static final int RECONNECT_MIN_DELAY = 1000;
+	static final int RECONNECT_MAX_DELAY = 30000;
+	static final int RECONNECT_MAX_ATTEMPTS = 8;
+	
+	boolean autoReconnect = true;
+	int reconnectAttempts = 0;
+	Timer reconnectTimer;
+	
+	// commands to send once reconnected; non-null while reconnecting
+	List<ServiceCommand<?>> reconnectCommands;
+	
+	int commandQueueCapacity = WebOSTVCommandQueue.DEFAULT_CAPACITY;
+	OverflowPolicy commandQueueOverflowPolicy = OverflowPolicy.DROP_LOWEST_PRIORITY;
+	
     List<String> permissions;
     
 	public WebOSTVService(ServiceDescription serviceDescription, ServiceConfig serviceConfig) {
@@ -266,6 +304,9 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 	
 	@Override
 	public boolean isConnected() {
+		if (preconnecting)
+			return false;
+		
 		if (DiscoveryManager.getInstance().getPairingLevel() == PairingLevel.ON) {
 			return this.socket != null && this.socket.isConnected() && (((WebOSTVServiceConfig)serviceConfig).getClientKey() != null);
 		} else {
@@ -275,6 +316,26 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 	
 	@Override
 	public void connect() {
+		boolean registered = false;
+		
+		synchronized (preconnectLock) {
+			if (preconnecting) {
+				preconnecting = false;
+				registered = preconnectRegistered;
+				preconnectRegistered = false;
+				
+				// it is still being opened; onConnect() reports it once registered
+				if (!registered && this.socket != null && this.socket.getState() != WebOSTVServiceSocketClient.State.NONE && this.socket.getState() != WebOSTVServiceSocketClient.State.DISCONNECTING)
+					return;
+			}
+		}
+		
+		// a background connection has already registered with the TV
+		if (registered) {
+			reportConnected(true);
+			return;
+		}
+		
 		if (this.socket == null) {
 			this.socket = new WebOSTVServiceSocketClient(this, WebOSTVServiceSocketClient.getURI(this));
 			this.socket.setListener(mSocketListener);
@@ -284,6 +345,187 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 			this.socket.connect();
 	}
 	
+	/**
+	 * Opens and registers the socket in the background, so that a later call
+	 * to connect() completes without waiting for the TLS handshake and the
+	 * hello/register exchange. Nothing is reported to the listener until
+	 * connect() is called.
+	 *
+	 * Only done for TVs that have been paired before, since registering
+	 * without a client key would prompt the user on the TV.
+	 */
+	public void preconnect() {
+		if (this.socket != null)
+			return;
+		
+		if (!(serviceConfig instanceof WebOSTVServiceConfig) || ((WebOSTVServiceConfig) serviceConfig).getClientKey() == null)
+			return;
+		
+		Log.d("Connect SDK", "preconnecting to " + serviceDescription.getIpAddress());
+		
+		synchronized (preconnectLock) {
+			preconnecting = true;
+			preconnectRegistered = false;
+		}
+		
+		this.socket = new WebOSTVServiceSocketClient(this, WebOSTVServiceSocketClient.getURI(this));
+		this.socket.setListener(mSocketListener);
+		this.socket.connect();
+	}
+	
+	/**
+	 * Whether a dropped connection is re-established automatically. While
+	 * reconnecting, live subscriptions and commands that were not yet sent are
+	 * kept and sent again once the TV has accepted the stored client key;
+	 * requests that were already in flight fail as before. The listener is only
+	 * told about the disconnect if reconnecting gives up. On by default.
+	 */
+	public void setAutoReconnectEnabled(boolean autoReconnect) {
+		this.autoReconnect = autoReconnect;
+		
+		if (!autoReconnect)
+			stopReconnecting(new ServiceCommandError(0, "connection lost", null));
+	}
+	
+	public boolean isAutoReconnectEnabled() {
+		return autoReconnect;
+	}
+	
+	public boolean isReconnecting() {
+		return reconnectCommands != null;
+	}
+	
+	private synchronized void scheduleReconnect(List<ServiceCommand<?>> commands) {
+		if (reconnectCommands == null)
+			reconnectCommands = new ArrayList<ServiceCommand<?>>();
+		
+		reconnectCommands.addAll(commands);
+		
+		if (reconnectAttempts >= RECONNECT_MAX_ATTEMPTS) {
+			final ServiceCommandError error = new ServiceCommandError(0, "could not reconnect", null);
+			stopReconnecting(error);
+			
+			Util.runOnUI(new Runnable() {
+				
+				@Override
+				public void run() {
+					if (listener != null)
+						listener.onDisconnect(WebOSTVService.this, error);
+				}
+			});
+			return;
+		}
+		
+		long delay = Math.min(RECONNECT_MAX_DELAY, (long) RECONNECT_MIN_DELAY << reconnectAttempts);
+		// spread out reconnects of several clients after a network outage
+		delay = delay / 2 + (long) (Math.random() * delay / 2);
+		
+		reconnectAttempts++;
+		
+		Log.d("Connect SDK", "reconnecting to " + serviceDescription.getIpAddress() + " in " + delay + "ms, attempt " + reconnectAttempts);
+		
+		if (reconnectTimer == null)
+			reconnectTimer = new Timer("webOS reconnect", true);
+		
+		reconnectTimer.schedule(new TimerTask() {
+			
+			@Override
+			public void run() {
+				reconnect();
+			}
+		}, delay);
+	}
+	
+	private synchronized void reconnect() {
+		if (reconnectCommands == null || socket != null)
+			return;
+		
+		socket = new WebOSTVServiceSocketClient(this, WebOSTVServiceSocketClient.getURI(this));
+		socket.setListener(mSocketListener);
+		
+		// connect first: commands sent to a socket that has not started
+		// connecting would start it themselves
+		socket.connect();
+		
+		for (ServiceCommand<?> command : reconnectCommands) {
+			socket.sendCommand(command);
+		}
+		
+		reconnectCommands.clear();
+	}
+	
+	private synchronized void handleReconnected() {
+		Log.d("Connect SDK", "reconnected to " + serviceDescription.getIpAddress());
+		
+		if (reconnectTimer != null) {
+			reconnectTimer.cancel();
+			reconnectTimer = null;
+		}
+		
+		reconnectCommands = null;
+		reconnectAttempts = 0;
+	}
+	
+	private synchronized void stopReconnecting(ServiceCommandError error) {
+		if (reconnectTimer != null) {
+			reconnectTimer.cancel();
+			reconnectTimer = null;
+		}
+		
+		reconnectAttempts = 0;
+		
+		if (reconnectCommands == null)
+			return;
+		
+		for (ServiceCommand<?> command : reconnectCommands) {
+			Util.postError(command.getResponseListener(), error);
+		}
+		
+		reconnectCommands = null;
+	}
+	
+	/**
+	 * @return whether the connection loss is handled by reconnecting
+	 */
+	private boolean handleConnectionLost(ServiceCommandError error) {
+		boolean wasRegistered = socket.getState() == WebOSTVServiceSocketClient.State.REGISTERED;
+		
+		boolean hasClientKey = serviceConfig instanceof WebOSTVServiceConfig && ((WebOSTVServiceConfig) serviceConfig).getClientKey() != null;
+		
+		if (error == null || !autoReconnect || !hasClientKey || !(wasRegistered || isReconnecting())) {
+			stopReconnecting(error != null ? error : new ServiceCommandError(0, "connection lost", null));
+			return false;
+		}
+		
+		List<ServiceCommand<?>> commands = socket.takePendingCommands();
+		
+		socket.setListener(null);
+		socket.disconnect();
+		socket = null;
+		
+		scheduleReconnect(commands);
+		
+		return true;
+	}
+	
+	private boolean abortPreconnect() {
+		synchronized (preconnectLock) {
+			if (!preconnecting)
+				return false;
+			
+			preconnecting = false;
+			preconnectRegistered = false;
+		}
+		
+		if (socket != null) {
+			socket.setListener(null);
+			socket.disconnect();
+			socket = null;
+		}
+		
+		return true;
+	}
+	
 	@Override
 	public void disconnect() {
 		Log.d("Connect SDK", "attempting to disconnect to " + serviceDescription.getIpAddress());
@@ -297,12 +539,21 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 			}
 		});
 		
+		synchronized (preconnectLock) {
+			preconnecting = false;
+			preconnectRegistered = false;
+		}
+		
 		if (socket != null) {
 			socket.setListener(null);
 			socket.disconnect();
 			socket = null;
 		}
 		
+		stopReconnecting(new ServiceCommandError(0, "disconnected", null));
+		
+		responseCache.clear();
+		
 		if (mAppToAppIdMappings != null)
 			mAppToAppIdMappings.clear();
 		
@@ -329,6 +580,11 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 		
 		@Override
 		public void onRegistrationFailed(final ServiceCommandError error) {
+			if (abortPreconnect())
+				return;
+			
+			// the stored client key was rejected, so there is no point in retrying
+			stopReconnecting(error);
 			disconnect();
 			
 			Util.runOnUI(new Runnable() {
@@ -342,10 +598,16 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 		}
 		
 		@Override
-		public Boolean onReceiveMessage(JSONObject message) { return true; }
+		public Boolean onReceiveMessage(WebOSTVSocketMessage message) { return true; }
 		
 		@Override
 		public void onFailWithError(final ServiceCommandError error) {
+			if (abortPreconnect())
+				return;
+			
+			if (isReconnecting() && handleConnectionLost(error))
+				return;
+			
 			socket.setListener(null);
 			socket.disconnect();
 			socket = null;
@@ -362,11 +624,30 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 		
 		@Override
 		public void onConnect() {
+			synchronized (preconnectLock) {
+				// connect() has not been called yet and will report it
+				if (preconnecting) {
+					preconnectRegistered = true;
+					return;
+				}
+			}
+			
+			if (isReconnecting()) {
+				handleReconnected();
+				return;
+			}
+			
 			reportConnected(true);
 		}
 		
 		@Override
 		public void onCloseWithError(final ServiceCommandError error) {
+			if (abortPreconnect())
+				return;
+			
+			if (handleConnectionLost(error))
+				return;
+			
 			socket.setListener(null);
 			socket.disconnect();
 			socket = null;
@@ -1503,7 +1784,7 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 		return (ServiceSubscription<ChannelListener>) getCurrentChannel(true, listener);
 	}
 	
-	private ServiceCommand<ResponseListener<Object>> getChannelList(boolean isSubscription, final ChannelListListener listener) {
+	private ServiceCommand<ResponseListener<Object>> getChannelList(final boolean isSubscription, final ChannelListListener listener, final ChannelListDiffListener diffListener) {
 		ServiceCommand<ResponseListener<Object>> request;
 		
 		ResponseListener<Object> responseListener = new ResponseListener<Object>() {
@@ -1511,18 +1792,15 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 			@Override
 			public void onSuccess(Object response) {
 				try {
-					JSONObject jsonObj = (JSONObject)response;
-					ArrayList<ChannelInfo> list = new ArrayList<ChannelInfo>();
+					ChannelList.Diff diff = updateChannelList(response);
 					
-					JSONArray array = (JSONArray) jsonObj.get("channelList");
-					for (int i = 0; i < array.length(); i++) {
-						JSONObject object = (JSONObject) array.get(i);
-						
-						ChannelInfo channel = parseRawChannelData(object);
-						list.add(channel);
-					}
+					// listeners get their own list, which they may sort or filter
+					if (listener != null)
+						Util.postSuccess(listener, new ArrayList<ChannelInfo>(channelList.getChannels()));
 					
-						Util.postSuccess(listener, list);
+					// subscribed diff listeners were already handed the diff
+					if (diffListener != null && !isSubscription)
+						Util.postSuccess(diffListener, diff);
 				} catch (JSONException e) {
 					e.printStackTrace();
 				}
@@ -1530,28 +1808,97 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 			
 			@Override
 			public void onError(ServiceCommandError error) {
-				Util.postError(listener, error);
+				Util.postError(listener != null ? listener : diffListener, error);
 			}
 		};
 		
-		if (isSubscription)
-			request = new URLServiceSubscription<ResponseListener<Object>>(this, CHANNEL_LIST, null, true, responseListener);
-		else
+		if (isSubscription) {
+			URLServiceSubscription<ResponseListener<Object>> subscription = new URLServiceSubscription<ResponseListener<Object>>(this, CHANNEL_LIST, null, true, responseListener);
+			
+			if (diffListener != null)
+				channelListDiffListeners.put(subscription, diffListener);
+			
+			request = subscription;
+		} else {
 			request = new ServiceCommand<ResponseListener<Object>>(this, CHANNEL_LIST, null, true, responseListener);
+		}
 	
 		request.send();
 
 		return request;
 	}
 	
+	private ChannelList.Diff updateChannelList(Object response) throws JSONException {
+		synchronized (channelList) {
+			JSONArray array = (JSONArray) ((JSONObject) response).get("channelList");
+			String[] rawChannels = new String[array.length()];
+			MessageDigest digest = ChannelList.createPayloadDigest();
+			
+			for (int i = 0; i < rawChannels.length; i++) {
+				rawChannels[i] = array.get(i).toString();
+				
+				if (digest != null)
+					digest.update(rawChannels[i].getBytes());
+			}
+			
+			// a shared subscription hands the same response to each of its
+			// listeners, and cache hits and replayed payloads repeat it; only
+			// a payload that differs from the last one is parsed
+			byte[] payloadDigest = digest != null ? digest.digest() : null;
+			
+			if (channelList.hasPayload(payloadDigest))
+				return channelList.unchanged();
+			
+			ArrayList<ChannelInfo> list = new ArrayList<ChannelInfo>(rawChannels.length);
+			int[] fingerprints = new int[rawChannels.length];
+			
+			for (int i = 0; i < rawChannels.length; i++) {
+				JSONObject object = (JSONObject) array.get(i);
+				
+				ChannelInfo channel = parseRawChannelData(object);
+				list.add(channel);
+				fingerprints[i] = rawChannels[i].hashCode();
+			}
+			
+			ChannelList.Diff diff = channelList.update(list, fingerprints, payloadDigest);
+			
+			for (ChannelListDiffListener diffListener : channelListDiffListeners.values()) {
+				Util.postSuccess(diffListener, diff);
+			}
+			
+			return diff;
+		}
+	}
+	
 	@Override
 	public void getChannelList(ChannelListListener listener) {
-		getChannelList(false, listener);
+		getChannelList(false, listener, null);
+	}
+	
+	/**
+	 * Refreshes the channel list and reports what changed since the previous
+	 * refresh. The first refresh reports every channel as added.
+	 */
+	public void getChannelListChanges(ChannelListDiffListener listener) {
+		getChannelList(false, null, listener);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public ServiceSubscription<ChannelListDiffListener> subscribeChannelListChanges(ChannelListDiffListener listener) {
+		return (ServiceSubscription<ChannelListDiffListener>) getChannelList(true, null, listener);
+	}
+	
+	/**
+	 * Gets the channel list as of the last refresh, e.g. to page through it
+	 * with ChannelList.getChannels(offset, count).
+	 */
+	public ChannelList getChannelListSnapshot() {
+		return channelList;
 	}
 	
 	@SuppressWarnings("unchecked")
 	public ServiceSubscription<ChannelListListener> subscribeChannelList(final ChannelListListener listener) {
-		return (ServiceSubscription<ChannelListListener>) getChannelList(true, listener);
+		return (ServiceSubscription<ChannelListListener>) getChannelList(true, listener, null);
 	}
 	
 	private ServiceCommand<ResponseListener<Object>> getProgramList(boolean isSubscription, final ProgramListListener listener) {
@@ -2584,14 +2931,30 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 	
 	@Override
 	public void sendCommand(ServiceCommand<?> command) {
-		if (socket != null)
+		if (socket != null) {
 			socket.sendCommand(command);
+			return;
+		}
+		
+		synchronized (this) {
+			if (reconnectCommands != null)
+				reconnectCommands.add(command);
+		}
 	}
 	
 	@Override
 	public void unsubscribe(URLServiceSubscription<?> subscription) {
-		if (socket != null)
+		channelListDiffListeners.remove(subscription);
+		
+		if (socket != null) {
 			socket.unsubscribe(subscription);
+			return;
+		}
+		
+		synchronized (this) {
+			if (reconnectCommands != null)
+				reconnectCommands.remove(subscription);
+		}
 	}
 	
 	@Override
@@ -2682,6 +3045,51 @@ public class WebOSTVService extends DeviceService implements Launcher, MediaCont
 	    return permissions;
 	}
 	
+	/**
+	 * Enables caching of app, input, channel, service and system info query
+	 * responses. Cached responses expire after a per-URI TTL and are dropped as
+	 * soon as a related subscription reports a change.
+	 */
+	public void setResponseCacheEnabled(boolean enabled) {
+		responseCache.setEnabled(enabled);
+	}
+	
+	public boolean isResponseCacheEnabled() {
+		return responseCache.isEnabled();
+	}
+	
+	/**
+	 * Returns the response cache, e.g. to change the TTL of a URI with
+	 * WebOSTVResponseCache.setTTL().
+	 */
+	public WebOSTVResponseCache getResponseCache() {
+		return responseCache;
+	}
+	
+	/**
+	 * Limits the number of commands kept while the socket is connecting or
+	 * registering. Takes effect on the next connection.
+	 */
+	public void setCommandQueueCapacity(int capacity) {
+		this.commandQueueCapacity = capacity;
+	}
+	
+	public int getCommandQueueCapacity() {
+		return commandQueueCapacity;
+	}
+	
+	/**
+	 * Decides which command is dropped when the command queue is full. Takes
+	 * effect on the next connection.
+	 */
+	public void setCommandQueueOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.commandQueueOverflowPolicy = overflowPolicy;
+	}
+	
+	public OverflowPolicy getCommandQueueOverflowPolicy() {
+		return commandQueueOverflowPolicy;
+	}
+	
 	public void setPermissions(List<String> permissions) {
 		this.permissions = permissions;
 
@@ -23,6 +23,7 @@ package com.connectsdk.service.capability;
 import java.util.List;
 
 import com.connectsdk.core.ChannelInfo;
+import com.connectsdk.core.ChannelList;
 import com.connectsdk.core.ProgramInfo;
 import com.connectsdk.core.ProgramList;
 import com.connectsdk.service.capability.listeners.ResponseListener;
@@ -105,6 +106,13 @@ public interface TVControl extends CapabilityMethods {
 	 */
 	public static interface ChannelListListener extends ResponseListener<List<ChannelInfo>>{ }
 
+	/**
+	 * Success block that is called upon successfully refreshing the channel list.
+	 *
+	 * Passes a ChannelList.Diff with the channels that were added, removed or changed since the previous refresh; the full list is available from ChannelList.Diff.getChannelList()
+	 */
+	public static interface ChannelListDiffListener extends ResponseListener<ChannelList.Diff>{ }
+
 	/**
 	 * Success block that is called upon successfully getting the current program's information.
 	 *
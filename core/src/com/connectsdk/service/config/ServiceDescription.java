@@ -26,6 +26,7 @@ import java.util.Map;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.connectsdk.core.ImageInfo;
 import com.connectsdk.core.upnp.service.Service;
 
 public class ServiceDescription implements Cloneable {
@@ -52,6 +53,7 @@ public class ServiceDescription implements Cloneable {
 	String applicationURL;
 	String version;
 	List<Service> serviceList; 
+	List<ImageInfo> iconList;
 	String locationXML;
 	
 	String serviceURI;
@@ -214,6 +216,15 @@ public class ServiceDescription implements Cloneable {
 		this.locationXML = locationXML;
 	}
 	
+	/** Gets the icons from the device description, if any */
+	public List<ImageInfo> getIconList() {
+		return iconList;
+	}
+	
+	public void setIconList(List<ImageInfo> iconList) {
+		this.iconList = iconList;
+	}
+	
 	public String getServiceURI() {
 		return serviceURI;
 	}
@@ -271,6 +282,7 @@ public class ServiceDescription implements Cloneable {
 		try { service.setLocationXML(new String(this.locationXML)); } catch (NullPointerException ex) { }
 		try { service.setResponseHeaders(this.responseHeaders); } catch (NullPointerException ex) { }
 		try { service.setServiceList(this.serviceList); } catch (NullPointerException ex) { }
+		try { service.setIconList(this.iconList); } catch (NullPointerException ex) { }
 		try { service.setServiceFilter(new String(this.serviceFilter)); } catch (NullPointerException ex) { }
 		
 		return service;
@@ -20,21 +20,12 @@
 
 package com.connectsdk.service.netcast;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.net.InetAddress;
 import java.util.List;
-import java.util.Locale;
-import java.util.TimeZone;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
@@ -49,15 +40,23 @@ import android.util.Log;
 import com.connectsdk.core.ChannelInfo;
 import com.connectsdk.core.TextInputStatusInfo;
 import com.connectsdk.core.Util;
+import com.connectsdk.etc.helper.CallbackHttpServer;
+import com.connectsdk.etc.helper.HttpRequestDecoder;
 import com.connectsdk.service.NetcastTVService;
 import com.connectsdk.service.capability.listeners.ResponseListener;
 import com.connectsdk.service.command.URLServiceSubscription;
 
-public class NetcastHttpServer {
+/**
+ * Receives UDAP events from a Netcast TV.
+ *
+ * The TV posts its events to UDAP_PATH_EVENT on a fixed port, which the
+ * shared CallbackHttpServer opens for as long as any Netcast TV is
+ * connected. Events are told apart by the address of the TV that sent them.
+ */
+public class NetcastHttpServer implements CallbackHttpServer.RequestHandler {
 	static final String UDAP_PATH_EVENT = "/udap/api/event";
 
 	NetcastTVService service;
-	ServerSocket welcomeSocket;
 	ResponseListener<String> textChangedListener;
 	
 	int port = -1;
@@ -72,213 +71,141 @@ public class NetcastHttpServer {
 		this.textChangedListener = textChangedListener;
 	}
 	
-	public void start() {
+	public synchronized void start() {
 		if (running)
 			return;
 		
-		running = true;
-		
 		try {
-			welcomeSocket = new ServerSocket(this.port);
+			CallbackHttpServer.getInstance().addHandler(UDAP_PATH_EVENT, port, this);
+			running = true;
 		} catch (IOException ex) {
 			ex.printStackTrace();
 		}
+	}
+	
+	@Override
+	public boolean onRequest(InetAddress remoteAddress, HttpRequestDecoder request) {
+		String ipAddress = service.getServiceDescription() != null ? service.getServiceDescription().getIpAddress() : null;
 		
-		while (running) {
-			if (welcomeSocket == null || welcomeSocket.isClosed()) {
-				stop();
-				break;
-			}
-			
-			Socket connectionSocket = null;
-			BufferedReader inFromClient = null;
-			DataOutputStream outToClient = null;
-			
-			try {
-				connectionSocket = welcomeSocket.accept();
-			} catch (IOException ex) {
-				ex.printStackTrace();
-				// this socket may have been closed, so we'll stop
-				stop();
-				return;
-			}
-			
-			String str = null;
-			int c;
-			StringBuilder sb = new StringBuilder();
+		// the event is from another TV
+		if (ipAddress != null && remoteAddress != null && !ipAddress.equals(remoteAddress.getHostAddress()))
+			return false;
+		
+		handleEvent(request.getBodyAsString());
+		
+		return true;
+	}
+	
+	private void handleEvent(String body) {
+		Log.d("Connect SDK", "got message body: " + body);
+		
+		SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+		InputStream stream = null;
+		
+		try {
+			stream = new ByteArrayInputStream(body.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException ex) {
+			ex.printStackTrace();
+		}
+		
+		NetcastPOSTRequestParser handler = new NetcastPOSTRequestParser();
+		
+		SAXParser saxParser;
+		try {
+			saxParser = saxParserFactory.newSAXParser();
+			saxParser.parse(stream, handler);
+		} catch (IOException ex) {
+			ex.printStackTrace();
+		} catch (ParserConfigurationException e) {
+			e.printStackTrace();
+		} catch (SAXException e) {
+			e.printStackTrace();
+		}
+
+		if ( body.contains("ChannelChanged") ) {
+			ChannelInfo channel = NetcastChannelParser.parseRawChannelData(handler.getJSONObject());
+
+			Log.d("Connect SDK", "Channel Changed: " + channel.getNumber());
 			
-			try {
-				inFromClient = new BufferedReader(new InputStreamReader(connectionSocket.getInputStream()));
-				
-				while ( (str = inFromClient.readLine()) != null ) {
-					if ( str.equals("") ) {
-						break;
+			for (URLServiceSubscription<?> sub: subscriptions) {
+				if ( sub.getTarget().equalsIgnoreCase("ChannelChanged") ) {
+					for (int i = 0; i < sub.getListeners().size(); i++) {
+						@SuppressWarnings("unchecked")
+						ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(i);
+						Util.postSuccess(listener, channel);
 					}
 				}
-				
-				while ( (c = inFromClient.read()) != -1 ) {
-					sb.append((char)c);
-					String temp = sb.toString();
-					
-					if ( temp.endsWith("</envelope>") )
-						break;
-				}
-			} catch (IOException ex) {
-				ex.printStackTrace();
 			}
+		}
+		else if ( body.contains("KeyboardVisible") ) {
+			boolean focused = false;
 			
-			String body = sb.toString();
-			
-			Log.d("Connect SDK", "got message body: " + body);
-			
-			Calendar calendar = Calendar.getInstance();
-		    SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
-		    dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-		    String date = dateFormat.format(calendar.getTime());
-		    String androidOSVersion = android.os.Build.VERSION.RELEASE;
-		    
-			PrintWriter out = null;
+			TextInputStatusInfo keyboard = new TextInputStatusInfo();
+			keyboard.setRawData(handler.getJSONObject());
 			
 			try {
-				outToClient = new DataOutputStream(connectionSocket.getOutputStream());
-				out = new PrintWriter(outToClient);
-				out.println("HTTP/1.1 200 OK");
-				out.println("Server: Android/" + androidOSVersion + " UDAP/2.0 ConnectSDK/1.2.1");
-				out.println("Cache-Control: no-store, no-cache, must-revalidate");
-				out.println("Date: " + date);
-				out.println("Connection: Close");
-				out.println("Content-Length: 0");
-				out.println();
-				out.flush();
-			} catch (IOException ex) {
-				ex.printStackTrace();
-			} finally {
-				try {
-					inFromClient.close();
-					out.close();
-					outToClient.close();
-					connectionSocket.close();
-				} catch (IOException ex) {
-					ex.printStackTrace();
+				JSONObject currentWidget = (JSONObject) handler.getJSONObject().get("currentWidget");
+				focused = (Boolean) currentWidget.get("focus");
+				keyboard.setFocused(focused);
+			} catch (JSONException e) {
+				e.printStackTrace();
+			}
+
+			Log.d("Connect SDK", "KeyboardFocused?: " + focused);
+			
+			for (URLServiceSubscription<?> sub: subscriptions) {
+				if ( sub.getTarget().equalsIgnoreCase("KeyboardVisible") ) {
+					for (int i = 0; i < sub.getListeners().size(); i++) {
+						@SuppressWarnings("unchecked")
+						ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(i);
+						Util.postSuccess(listener, keyboard);
+					}
 				}
 			}
+		}
+		else if ( body.contains("TextEdited") ) {
+			System.out.println("TextEdited");
 			
-			SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
-			InputStream stream = null;
+			String newValue = "";
 			
 			try {
-				stream = new ByteArrayInputStream(body.getBytes("UTF-8"));
-			} catch (UnsupportedEncodingException ex) {
+				newValue = handler.getJSONObject().getString("value");
+			} catch (JSONException ex) {
 				ex.printStackTrace();
 			}
 			
-			NetcastPOSTRequestParser handler = new NetcastPOSTRequestParser();
-			
-			SAXParser saxParser;
+			Util.postSuccess(textChangedListener, newValue);
+		}
+		else if ( body.contains("3DMode") ) {
 			try {
-				saxParser = saxParserFactory.newSAXParser();
-				saxParser.parse(stream, handler);
-			} catch (IOException ex) {
-				ex.printStackTrace();
-			} catch (ParserConfigurationException e) {
-				e.printStackTrace();
-			} catch (SAXException e) {
-				e.printStackTrace();
-			}
-
-			if ( body.contains("ChannelChanged") ) {
-				ChannelInfo channel = NetcastChannelParser.parseRawChannelData(handler.getJSONObject());
-
-				Log.d("Connect SDK", "Channel Changed: " + channel.getNumber());
+				String enabled = (String) handler.getJSONObject().get("value");
+				boolean bEnabled;
 				
-				for (URLServiceSubscription<?> sub: subscriptions) {
-					if ( sub.getTarget().equalsIgnoreCase("ChannelChanged") ) {
-						for (int i = 0; i < sub.getListeners().size(); i++) {
-							@SuppressWarnings("unchecked")
-							ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(i);
-							Util.postSuccess(listener, channel);
-						}
-					}
-				}
-			}
-			else if ( body.contains("KeyboardVisible") ) {
-				boolean focused = false;
-				
-				TextInputStatusInfo keyboard = new TextInputStatusInfo();
-				keyboard.setRawData(handler.getJSONObject());
-				
-				try {
-					JSONObject currentWidget = (JSONObject) handler.getJSONObject().get("currentWidget");
-					focused = (Boolean) currentWidget.get("focus");
-					keyboard.setFocused(focused);
-				} catch (JSONException e) {
-					e.printStackTrace();
-				}
-
-				Log.d("Connect SDK", "KeyboardFocused?: " + focused);
+				if ( enabled.equalsIgnoreCase("true") )
+					bEnabled = true;
+				else
+					bEnabled = false;
 				
 				for (URLServiceSubscription<?> sub: subscriptions) {
-					if ( sub.getTarget().equalsIgnoreCase("KeyboardVisible") ) {
+					if ( sub.getTarget().equalsIgnoreCase("3DMode") ) {
 						for (int i = 0; i < sub.getListeners().size(); i++) {
 							@SuppressWarnings("unchecked")
 							ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(i);
-							Util.postSuccess(listener, keyboard);
+							Util.postSuccess(listener, bEnabled);
 						}
 					}
 				}
-			}
-			else if ( body.contains("TextEdited") ) {
-				System.out.println("TextEdited");
-				
-				String newValue = "";
-				
-				try {
-					newValue = handler.getJSONObject().getString("value");
-				} catch (JSONException ex) {
-					ex.printStackTrace();
-				}
-				
-				Util.postSuccess(textChangedListener, newValue);
-			}
-			else if ( body.contains("3DMode") ) {
-				try {
-					String enabled = (String) handler.getJSONObject().get("value");
-					boolean bEnabled;
-					
-					if ( enabled.equalsIgnoreCase("true") )
-						bEnabled = true;
-					else
-						bEnabled = false;
-					
-					for (URLServiceSubscription<?> sub: subscriptions) {
-						if ( sub.getTarget().equalsIgnoreCase("3DMode") ) {
-							for (int i = 0; i < sub.getListeners().size(); i++) {
-								@SuppressWarnings("unchecked")
-								ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(i);
-								Util.postSuccess(listener, bEnabled);
-							}
-						}
-					}
-				} catch (JSONException e) {
-					e.printStackTrace();
-				}
+			} catch (JSONException e) {
+				e.printStackTrace();
 			}
 		}
 	}
 	
-	public void stop() {
+	public synchronized void stop() {
 		if (!running)
 			return;
 		
-		if (welcomeSocket != null && !welcomeSocket.isClosed()) {
-			try {
-				welcomeSocket.close();
-			} catch (IOException ex) {
-				ex.printStackTrace();
-			}
-		}
-		
-		welcomeSocket = null;
+		CallbackHttpServer.getInstance().removeHandler(this);
 		running = false;
 	}
 
@@ -0,0 +1,495 @@
+/*
+ * RokuKeypressChannel
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.roku;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import android.util.Log;
+
+import com.connectsdk.core.Util;
+import com.connectsdk.service.capability.listeners.ResponseListener;
+import com.connectsdk.service.command.ServiceCommandError;
+
+/**
+ * Persistent connection to the Roku ECP port used for key input.
+ *
+ * Requests are written back-to-back on a single keep-alive connection
+ * (HTTP/1.1 pipelining) and their responses are matched in order. If the
+ * device closes the connection while pipelined requests are outstanding, the
+ * channel falls back to sending one request at a time over keep-alive for the
+ * rest of its lifetime.
+ */
+public class RokuKeypressChannel {
+	public static final String KEYPRESS = "keypress";
+	public static final String KEYDOWN = "keydown";
+	public static final String KEYUP = "keyup";
+
+	private static final int MAX_PIPELINED_REQUESTS = 8;
+	private static final int CONNECT_TIMEOUT = 3000;
+	private static final int READ_TIMEOUT = 5000;
+	private static final String CHARSET = "UTF-8";
+
+	private final String host;
+	private final int port;
+	private final Request terminationRequest = new Request(null, null, null);
+
+	private volatile boolean pipelining = true;
+	private RequestWorker requestWorker;
+
+	private class Request {
+		final String action;
+		final String key;
+		final ResponseListener<Object> listener;
+
+		Request(String action, String key, ResponseListener<Object> listener) {
+			this.action = action;
+			this.key = key;
+			this.listener = listener;
+		}
+	}
+
+	private static class Response {
+		final int statusCode;
+		final String content;
+		final boolean close;
+
+		Response(int statusCode, String content, boolean close) {
+			this.statusCode = statusCode;
+			this.content = content;
+			this.close = close;
+		}
+	}
+
+	public RokuKeypressChannel(String host, int port) {
+		this.host = host;
+		this.port = port;
+	}
+
+	/**
+	 * Queues a single ECP key request. Requests are sent and answered in the
+	 * order they are queued.
+	 *
+	 * @param action one of KEYPRESS, KEYDOWN or KEYUP
+	 * @param key ECP key name, already URL encoded (e.g. "Up" or "Lit_a")
+	 */
+	public synchronized void send(String action, String key, ResponseListener<Object> listener) {
+		if (requestWorker == null) {
+			requestWorker = new RequestWorker();
+			requestWorker.start();
+		}
+
+		requestWorker.add(new Request(action, key, listener));
+	}
+
+	/**
+	 * Queues a sequence of keypress requests. The listener is notified once,
+	 * after the last key has been accepted or as soon as any key fails; keys
+	 * after a failed one are still sent.
+	 */
+	public void sendSequence(List<String> keys, final ResponseListener<Object> listener) {
+		if (keys == null || keys.size() == 0) {
+			Util.postSuccess(listener, null);
+			return;
+		}
+
+		final int count = keys.size();
+		ResponseListener<Object> sequenceListener = new ResponseListener<Object>() {
+			int completed = 0;
+			boolean failed = false;
+
+			@Override
+			public void onSuccess(Object response) {
+				if (++completed == count && !failed)
+					Util.postSuccess(listener, response);
+			}
+
+			@Override
+			public void onError(ServiceCommandError error) {
+				completed++;
+
+				if (!failed) {
+					failed = true;
+					Util.postError(listener, error);
+				}
+			}
+		};
+
+		synchronized (this) {
+			for (String key : keys) {
+				send(KEYPRESS, key, sequenceListener);
+			}
+		}
+	}
+
+	public boolean isPipelining() {
+		return pipelining;
+	}
+
+	public synchronized void disconnect() {
+		if (requestWorker != null) {
+			requestWorker.terminate();
+			requestWorker = null;
+		}
+	}
+
+	private class RequestWorker extends Thread {
+		private final BlockingQueue<Request> requestQueue = new LinkedBlockingQueue<Request>();
+
+		private Socket socket;
+		private InputStream is;
+		private OutputStream os;
+		private boolean socketReused;
+
+		// response bytes read since the last batch was sent; a request is only
+		// sent again if the device did not answer it at all
+		private long bytesRead;
+
+		// true if the last response asked for the connection to be closed,
+		// which means the device did not process the requests after it
+		private boolean closedByDevice;
+
+		public RequestWorker() {
+			setName("Roku ECP keypress");
+			setDaemon(true);
+		}
+
+		public void add(Request request) {
+			requestQueue.offer(request);
+		}
+
+		public void terminate() {
+			List<Request> dropped = new ArrayList<Request>();
+			requestQueue.drainTo(dropped);
+			dropped.remove(terminationRequest);
+			requestQueue.offer(terminationRequest);
+
+			fail(dropped, 0, new IOException("Roku keypress channel disconnected"));
+		}
+
+		private void connect() throws IOException {
+			if (socket == null || socket.isClosed()) {
+				socket = new Socket();
+				socket.setTcpNoDelay(true);
+				socket.setSoTimeout(READ_TIMEOUT);
+				socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+				is = new BufferedInputStream(socket.getInputStream());
+				os = new BufferedOutputStream(socket.getOutputStream());
+				socketReused = false;
+			}
+		}
+
+		private void close() {
+			if (socket != null) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// nothing to do, the socket is being discarded
+				}
+				socket = null;
+				is = null;
+				os = null;
+			}
+		}
+
+		private void writeRequest(Request request) throws IOException {
+			StringBuilder sb = new StringBuilder(96);
+			sb.append("POST /").append(request.action).append("/").append(request.key).append(" HTTP/1.1\r\n");
+			sb.append("Host: ").append(host).append(":").append(port).append("\r\n");
+			sb.append("Content-Length: 0\r\n");
+			sb.append("\r\n");
+
+			os.write(sb.toString().getBytes(CHARSET));
+		}
+
+		private Response readResponse() throws IOException {
+			String statusLine = readLine();
+
+			// tolerate a stray empty line left over from a previous response
+			if (statusLine.length() == 0)
+				statusLine = readLine();
+
+			String[] tokens = statusLine.split(" ");
+			if (tokens.length < 2 || !tokens[0].startsWith("HTTP/"))
+				throw new IOException("Invalid status line: " + statusLine);
+
+			int statusCode = parseNumber(tokens[1], 10);
+			int contentLength = 0;
+			boolean chunked = false;
+			boolean close = tokens[0].equals("HTTP/1.0");
+
+			String line;
+			while ((line = readLine()).length() > 0) {
+				int pos = line.indexOf(':');
+				if (pos <= 0)
+					continue;
+
+				String name = line.substring(0, pos).trim();
+				String value = line.substring(pos + 1).trim();
+
+				if (name.equalsIgnoreCase("Content-Length")) {
+					contentLength = parseNumber(value, 10);
+				} else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+					chunked = value.equalsIgnoreCase("chunked");
+				} else if (name.equalsIgnoreCase("Connection")) {
+					close = value.equalsIgnoreCase("close");
+				}
+			}
+
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+			if (chunked) {
+				int chunkLength;
+				while ((chunkLength = parseNumber(readLine().split(";")[0].trim(), 16)) > 0) {
+					readContent(content, chunkLength);
+					readLine();
+				}
+				while (readLine().length() > 0) {
+					// skip trailers
+				}
+			} else {
+				readContent(content, contentLength);
+			}
+
+			return new Response(statusCode, content.toString(CHARSET), close);
+		}
+
+		/**
+		 * Parses a number from a response, treating a malformed one like any
+		 * other broken response.
+		 */
+		private int parseNumber(String value, int radix) throws IOException {
+			try {
+				int number = Integer.parseInt(value, radix);
+
+				if (number < 0)
+					throw new IOException("Invalid number in response: " + value);
+
+				return number;
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid number in response: " + value);
+			}
+		}
+
+		private String readLine() throws IOException {
+			StringBuilder sb = new StringBuilder();
+			int c;
+
+			while ((c = is.read()) != '\n') {
+				if (c == -1)
+					throw new EOFException();
+				bytesRead++;
+				if (c != '\r')
+					sb.append((char) c);
+			}
+
+			return sb.toString();
+		}
+
+		private void readContent(ByteArrayOutputStream content, int length) throws IOException {
+			byte[] buffer = new byte[Math.min(length, 1024)];
+			int remaining = length;
+
+			while (remaining > 0) {
+				int read = is.read(buffer, 0, Math.min(buffer.length, remaining));
+				if (read == -1)
+					throw new EOFException();
+				content.write(buffer, 0, read);
+				remaining -= read;
+				bytesRead += read;
+			}
+		}
+
+		private void complete(Request request, Response response) {
+			if (response.statusCode == 200 || response.statusCode == 201) {
+				Util.postSuccess(request.listener, response.content);
+			} else {
+				Util.postError(request.listener, ServiceCommandError.getError(response.statusCode));
+			}
+		}
+
+		private void fail(List<Request> requests, int from, IOException e) {
+			for (int i = from; i < requests.size(); i++) {
+				Util.postError(requests.get(i).listener, new ServiceCommandError(0, e.getMessage(), null));
+			}
+		}
+
+		/**
+		 * Sends a batch of requests and reads their responses in order. Returns
+		 * the index of the first request that was not answered, which is
+		 * batch.size() when all of them completed.
+		 */
+		private int execute(List<Request> batch) throws IOException {
+			bytesRead = 0;
+			closedByDevice = false;
+
+			try {
+				connect();
+
+				for (Request request : batch) {
+					writeRequest(request);
+				}
+				os.flush();
+			} catch (IOException e) {
+				// a broken socket must not be reused by the next batch
+				close();
+				throw e;
+			}
+
+			int answered = 0;
+
+			try {
+				while (answered < batch.size()) {
+					Response response = readResponse();
+					complete(batch.get(answered++), response);
+
+					if (response.close) {
+						closedByDevice = true;
+						close();
+						break;
+					}
+				}
+			} catch (IOException e) {
+				close();
+
+				if (answered == 0)
+					throw e;
+			}
+
+			socketReused = socket != null;
+			return answered;
+		}
+
+		@Override
+		public void run() {
+			List<Request> batch = new ArrayList<Request>(MAX_PIPELINED_REQUESTS);
+
+			try {
+				while (true) {
+					Request request = requestQueue.take();
+
+					if (request == terminationRequest)
+						break;
+
+					batch.clear();
+					batch.add(request);
+
+					if (pipelining) {
+						while (batch.size() < MAX_PIPELINED_REQUESTS && requestQueue.peek() != null) {
+							Request next = requestQueue.poll();
+
+							if (next == terminationRequest) {
+								requestQueue.offer(next);
+								break;
+							}
+
+							batch.add(next);
+						}
+					}
+
+					try {
+						process(batch);
+					} catch (RuntimeException e) {
+						// keep the worker alive for the requests after this batch
+						Log.w(Util.T, "Roku keypress channel failed", e);
+						close();
+						fail(batch, 0, new IOException(e.getMessage()));
+					}
+				}
+			} catch (InterruptedException e) {
+				Log.w(Util.T, "Roku keypress channel interrupted");
+			} finally {
+				close();
+			}
+		}
+
+		private void process(List<Request> batch) {
+			int sent = 0;
+			boolean retried = false;
+
+			while (sent < batch.size()) {
+				List<Request> pending = batch.subList(sent, batch.size());
+				boolean wasReused = socketReused;
+
+				try {
+					int answered = execute(pending);
+
+					if (answered < pending.size() && closedByDevice) {
+						// the device closed the connection with pipelined
+						// requests still outstanding, without processing them,
+						// so send those one at a time
+						if (pipelining) {
+							Log.d(Util.T, "Roku keypress channel falling back to serialized requests");
+							pipelining = false;
+						}
+
+						List<Request> remaining = new ArrayList<Request>(pending.subList(answered, pending.size()));
+						sent = batch.size();
+
+						for (Request request : remaining) {
+							processSingle(request);
+						}
+					} else if (answered < pending.size()) {
+						// the connection broke mid-batch; the device may already
+						// have acted on the unanswered keys, so they are not replayed
+						fail(batch, sent + answered, new EOFException("connection lost before the device answered"));
+						sent = batch.size();
+					} else {
+						sent = batch.size();
+					}
+				} catch (IOException e) {
+					// an idle keep-alive connection may have been dropped by
+					// the device; retry once on a fresh connection, but only
+					// if nothing came back, so no keypress is sent twice
+					if (wasReused && !retried && bytesRead == 0) {
+						retried = true;
+						continue;
+					}
+
+					fail(batch, sent, e);
+					sent = batch.size();
+				}
+			}
+		}
+
+		private void processSingle(Request request) {
+			List<Request> single = new ArrayList<Request>(1);
+			single.add(request);
+
+			try {
+				if (execute(single) == 0)
+					fail(single, 0, new EOFException());
+			} catch (IOException e) {
+				fail(single, 0, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,352 @@
+/*
+ * WebAppMessageChunker
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.sessions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.connectsdk.core.Util;
+import com.connectsdk.service.capability.listeners.ResponseListener;
+import com.connectsdk.service.command.ServiceCommandError;
+import com.connectsdk.service.sessions.WebAppSession.BulkMessageListener;
+
+/**
+ * Splits large web app messages into chunks and sends them with windowed
+ * acknowledgement.
+ *
+ * Each chunk is sent as
+ * {"contentType":"connectsdk.chunk","chunk":{"transferId":..,"index":..,"count":..,"format":"json"|"string","data":..}}
+ * and the web app acknowledges with
+ * {"contentType":"connectsdk.chunkAck","chunkAck":{"transferId":..,"index":..}},
+ * meaning all chunks up to and including index have arrived. At most window
+ * chunks of a transfer are unacknowledged at a time, so the channel is never
+ * filled with a single transfer and small messages sent in between go out
+ * right away.
+ */
+public class WebAppMessageChunker {
+	public static final String CHUNK_CONTENT_TYPE = "connectsdk.chunk";
+	public static final String CHUNK_ACK_CONTENT_TYPE = "connectsdk.chunkAck";
+
+	public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+	public static final int DEFAULT_WINDOW = 4;
+	public static final long DEFAULT_ACK_TIMEOUT = 10 * 1000;
+
+	private static Timer timer;
+
+	/**
+	 * Sends a single frame over the session's channel.
+	 */
+	public interface Transport {
+		public void sendFrame(JSONObject frame, ResponseListener<Object> listener);
+	}
+
+	private final Transport transport;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private int window = DEFAULT_WINDOW;
+	private long ackTimeout = DEFAULT_ACK_TIMEOUT;
+
+	private final Map<String, Transfer> transfers = new HashMap<String, Transfer>();
+	private int nextTransferId = 1;
+
+	private class Transfer {
+		final String id;
+		final String data;
+		final String format;
+		final int chunkSize;
+		final int count;
+		final BulkMessageListener listener;
+
+		int sent = 0;
+		int acknowledged = 0;
+		TimerTask timeout;
+
+		Transfer(String id, String data, String format, BulkMessageListener listener) {
+			this.id = id;
+			this.data = data;
+			this.format = format;
+			this.chunkSize = WebAppMessageChunker.this.chunkSize;
+			this.count = Math.max(1, (data.length() + this.chunkSize - 1) / this.chunkSize);
+			this.listener = listener;
+		}
+	}
+
+	public WebAppMessageChunker(Transport transport) {
+		this.transport = transport;
+	}
+
+	/** Sets the maximum number of characters of message data per chunk */
+	public synchronized void setChunkSize(int chunkSize) {
+		if (chunkSize <= 0)
+			throw new IllegalArgumentException("chunk size must be positive");
+
+		this.chunkSize = chunkSize;
+	}
+
+	public synchronized int getChunkSize() {
+		return chunkSize;
+	}
+
+	/** Sets how many chunks of a transfer may be unacknowledged at a time */
+	public synchronized void setWindow(int window) {
+		if (window <= 0)
+			throw new IllegalArgumentException("window must be positive");
+
+		this.window = window;
+	}
+
+	public synchronized int getWindow() {
+		return window;
+	}
+
+	/** Sets how long to wait for an acknowledgement before failing a transfer */
+	public synchronized void setAckTimeout(long ackTimeout) {
+		this.ackTimeout = ackTimeout;
+	}
+
+	public void send(String message, BulkMessageListener listener) {
+		start(message, "string", listener);
+	}
+
+	public void send(JSONObject message, BulkMessageListener listener) {
+		start(message.toString(), "json", listener);
+	}
+
+	/**
+	 * Handles an acknowledgement from the web app.
+	 *
+	 * @return true if message was a chunk acknowledgement, and should not be
+	 * passed on to the app
+	 */
+	public boolean handleMessage(JSONObject message) {
+		if (message == null || !CHUNK_ACK_CONTENT_TYPE.equals(message.optString("contentType")))
+			return false;
+
+		JSONObject ack = message.optJSONObject("chunkAck");
+
+		if (ack == null)
+			return true;
+
+		String transferId = ack.optString("transferId");
+		String error = ack.optString("error");
+		int index = ack.optInt("index", -1);
+
+		Transfer transfer;
+
+		synchronized (this) {
+			transfer = transfers.get(transferId);
+
+			if (transfer == null)
+				return true;
+
+			if (error.length() == 0 && index + 1 > transfer.acknowledged) {
+				transfer.acknowledged = Math.min(index + 1, transfer.count);
+				rescheduleTimeout(transfer);
+			}
+		}
+
+		if (error.length() != 0) {
+			fail(transfer, new ServiceCommandError(0, error, null));
+			return true;
+		}
+
+		reportProgress(transfer);
+
+		if (transfer.acknowledged == transfer.count) {
+			finish(transfer);
+		} else {
+			pump(transfer);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Fails all transfers in progress, for when the channel closes.
+	 */
+	public void cancelAll() {
+		List<Transfer> cancelled;
+
+		synchronized (this) {
+			cancelled = new ArrayList<Transfer>(transfers.values());
+		}
+
+		for (Transfer transfer : cancelled) {
+			fail(transfer, new ServiceCommandError(0, "web app channel closed", null));
+		}
+	}
+
+	private void start(String data, String format, BulkMessageListener listener) {
+		Transfer transfer;
+
+		synchronized (this) {
+			transfer = new Transfer(String.valueOf(nextTransferId++), data, format, listener);
+			transfers.put(transfer.id, transfer);
+			rescheduleTimeout(transfer);
+		}
+
+		pump(transfer);
+	}
+
+	/**
+	 * Sends chunks of transfer until its window is full.
+	 */
+	private void pump(final Transfer transfer) {
+		List<JSONObject> frames = new ArrayList<JSONObject>();
+
+		synchronized (this) {
+			if (!transfers.containsKey(transfer.id))
+				return;
+
+			while (transfer.sent < transfer.count && transfer.sent - transfer.acknowledged < window) {
+				JSONObject frame = createFrame(transfer, transfer.sent);
+
+				if (frame == null) {
+					frames = null;
+					break;
+				}
+
+				frames.add(frame);
+				transfer.sent++;
+			}
+		}
+
+		if (frames == null) {
+			fail(transfer, new ServiceCommandError(0, "JSON Parse error", null));
+			return;
+		}
+
+		ResponseListener<Object> frameListener = new ResponseListener<Object>() {
+
+			@Override
+			public void onSuccess(Object object) { }
+
+			@Override
+			public void onError(ServiceCommandError error) {
+				fail(transfer, error);
+			}
+		};
+
+		for (JSONObject frame : frames) {
+			transport.sendFrame(frame, frameListener);
+		}
+	}
+
+	private JSONObject createFrame(Transfer transfer, int index) {
+		int start = index * transfer.chunkSize;
+		int end = Math.min(transfer.data.length(), start + transfer.chunkSize);
+
+		JSONObject chunk = new JSONObject();
+		JSONObject frame = new JSONObject();
+
+		try {
+			chunk.put("transferId", transfer.id);
+			chunk.put("index", index);
+			chunk.put("count", transfer.count);
+			chunk.put("format", transfer.format);
+			chunk.put("data", transfer.data.substring(start, end));
+
+			frame.put("contentType", CHUNK_CONTENT_TYPE);
+			frame.put("chunk", chunk);
+		} catch (JSONException e) {
+			return null;
+		}
+
+		return frame;
+	}
+
+	private void reportProgress(Transfer transfer) {
+		final BulkMessageListener listener = transfer.listener;
+
+		if (listener == null)
+			return;
+
+		final long total = transfer.data.length();
+		final long acknowledged = Math.min(total, (long) transfer.acknowledged * transfer.chunkSize);
+
+		Util.runOnUI(new Runnable() {
+
+			@Override
+			public void run() {
+				listener.onProgress(acknowledged, total);
+			}
+		});
+	}
+
+	private void finish(Transfer transfer) {
+		synchronized (this) {
+			if (transfers.remove(transfer.id) == null)
+				return;
+
+			cancelTimeout(transfer);
+		}
+
+		Util.postSuccess(transfer.listener, null);
+	}
+
+	private void fail(Transfer transfer, ServiceCommandError error) {
+		synchronized (this) {
+			if (transfers.remove(transfer.id) == null)
+				return;
+
+			cancelTimeout(transfer);
+		}
+
+		Util.postError(transfer.listener, error);
+	}
+
+	private void rescheduleTimeout(final Transfer transfer) {
+		cancelTimeout(transfer);
+
+		if (ackTimeout <= 0)
+			return;
+
+		transfer.timeout = new TimerTask() {
+
+			@Override
+			public void run() {
+				fail(transfer, new ServiceCommandError(0, "web app did not acknowledge message", null));
+			}
+		};
+
+		getTimer().schedule(transfer.timeout, ackTimeout);
+	}
+
+	private void cancelTimeout(Transfer transfer) {
+		if (transfer.timeout != null) {
+			transfer.timeout.cancel();
+			transfer.timeout = null;
+		}
+	}
+
+	private static synchronized Timer getTimer() {
+		if (timer == null)
+			timer = new Timer("WebAppMessageChunker", true);
+
+		return timer;
+	}
+}
@@ -74,6 +74,9 @@ public class WebAppSession implements MediaControl, MediaPlayer {
 	protected DeviceService service;
 	private WebAppSessionListener webAppListener;
 
+	/** Set by sessions that support sendBulkMessage */
+	protected WebAppMessageChunker messageChunker;
+
 	// @endcond
 
 	/**
@@ -172,6 +175,51 @@ public class WebAppSession implements MediaControl, MediaPlayer {
 		}
 	}
 
+	/**
+	 * Sends a large string to the web app in chunks, leaving room on the
+	 * channel for other messages in between. The web app has to acknowledge
+	 * the chunks and reassemble them, see WebAppMessageChunker.
+	 * 
+	 * @param listener
+	 *            (optional) BulkMessageListener to be told about progress and
+	 *            called on success
+	 */
+	public void sendBulkMessage(String message, BulkMessageListener listener) {
+		if (messageChunker == null) {
+			Util.postError(listener, ServiceCommandError.notSupported());
+		} else if (message == null || message.length() == 0) {
+			Util.postError(listener, new ServiceCommandError(0, "Cannot send an Empty Message", null));
+		} else {
+			messageChunker.send(message, listener);
+		}
+	}
+
+	/**
+	 * Sends a large JSON object to the web app in chunks. See
+	 * sendBulkMessage(String, BulkMessageListener).
+	 * 
+	 * @param listener
+	 *            (optional) BulkMessageListener to be told about progress and
+	 *            called on success
+	 */
+	public void sendBulkMessage(JSONObject message, BulkMessageListener listener) {
+		if (messageChunker == null) {
+			Util.postError(listener, ServiceCommandError.notSupported());
+		} else if (message == null || message.length() == 0) {
+			Util.postError(listener, new ServiceCommandError(0, "Cannot send an Empty Message", null));
+		} else {
+			messageChunker.send(message, listener);
+		}
+	}
+
+	/**
+	 * Gets the chunker used by sendBulkMessage, to tune its chunk size and
+	 * window, or null if the session does not support bulk messages.
+	 */
+	public WebAppMessageChunker getMessageChunker() {
+		return messageChunker;
+	}
+
 	// @cond INTERNAL
 	@Override
 	public MediaControl getMediaControl() {
@@ -441,6 +489,14 @@ public class WebAppSession implements MediaControl, MediaPlayer {
 			ResponseListener<WebAppStatus> {
 	}
 
+	/**
+	 * Listener for sendBulkMessage, told how many characters of the message
+	 * the web app has acknowledged so far.
+	 */
+	public static interface BulkMessageListener extends ResponseListener<Object> {
+		public void onProgress(long acknowledged, long total);
+	}
+
 	// @cond INTERNAL
 	public static interface MessageListener extends ResponseListener<Object> {
 		abstract public void onMessage(Object message);
@@ -29,6 +29,7 @@ import org.json.JSONObject;
 
 import com.connectsdk.core.MediaInfo;
 import com.connectsdk.core.Util;
+import com.connectsdk.etc.helper.PlaybackClock;
 import com.connectsdk.service.DeviceService;
 import com.connectsdk.service.WebOSTVService;
 import com.connectsdk.service.capability.MediaControl;
@@ -41,9 +42,14 @@ import com.connectsdk.service.command.URLServiceSubscription;
 import com.connectsdk.service.sessions.LaunchSession.LaunchSessionType;
 import com.connectsdk.service.webos.WebOSTVServiceSocketClient;
 import com.connectsdk.service.webos.WebOSTVServiceSocketClient.WebOSTVServiceSocketClientListener;
+import com.connectsdk.service.webos.WebOSTVSocketMessage;
 
 public class WebOSWebAppSession extends WebAppSession {
 	private static final String namespaceKey = "connectsdk.";
+	private static final String MEDIA_EVENT = "mediaEvent";
+	private static final String MEDIA_COMMAND_RESPONSE = "mediaCommandResponse";
+	private static final String MEDIA_EVENT_CONTENT_TYPE = namespaceKey + MEDIA_EVENT;
+	private static final String MEDIA_COMMAND_RESPONSE_CONTENT_TYPE = namespaceKey + MEDIA_COMMAND_RESPONSE;
 	protected WebOSTVService service;
 
 	ResponseListener<ServiceCommand<ResponseListener<Object>>> mConnectionListener;
@@ -54,8 +60,11 @@ public class WebOSWebAppSession extends WebAppSession {
 	private ServiceSubscription<PlayStateListener> mPlayStateSubscription;
 	private ServiceSubscription<MessageListener> mMessageSubscription;
 	private ConcurrentHashMap<String, ServiceCommand<?>> mActiveCommands;
+	private final PlaybackClock playbackClock = new PlaybackClock();
 
 	String mFullAppId;
+	// app id this session's p2p handler is registered under on the socket
+	private String mRoutedAppId;
 
 	private int UID;
 	private boolean connected;
@@ -69,6 +78,14 @@ public class WebOSWebAppSession extends WebAppSession {
 		connected = false;
 
 		this.service = (WebOSTVService) service;
+
+		messageChunker = new WebAppMessageChunker(new WebAppMessageChunker.Transport() {
+
+			@Override
+			public void sendFrame(JSONObject frame, ResponseListener<Object> listener) {
+				sendMessage(frame, listener);
+			}
+		});
 	}
 
 	private int getNextId() {
@@ -83,6 +100,14 @@ public class WebOSWebAppSession extends WebAppSession {
 		this.connected = connected;
 	}
 
+	/**
+	 * Gets the clock that answers getPosition() between round trips to the
+	 * web app, e.g. to change how often it resyncs.
+	 */
+	public PlaybackClock getPlaybackClock() {
+		return playbackClock;
+	}
+
 	public void handleMediaEvent(JSONObject payload) {
 		String type = "";
 
@@ -91,15 +116,17 @@ public class WebOSWebAppSession extends WebAppSession {
 			return;
 
 		if (type.equals("playState")) {
-			if (mPlayStateSubscription == null)
-				return;
-
 			String playStateString = payload.optString(type);
 			if (playStateString.length() == 0)
 				return;
 
 			final MediaControl.PlayStateStatus playState = parsePlayState(playStateString);
 
+			playbackClock.setPlayState(playState);
+
+			if (mPlayStateSubscription == null)
+				return;
+
 			for (PlayStateListener listener : mPlayStateSubscription
 					.getListeners()) {
 				Util.postSuccess(listener, playState);
@@ -136,61 +163,103 @@ public class WebOSWebAppSession extends WebAppSession {
 
 	public void setFullAppId(String fullAppId) {
 		mFullAppId = fullAppId;
+
+		if (socket != null)
+			routeMessages();
 	}
 
-	private WebOSTVServiceSocketClientListener mSocketListener = new WebOSTVServiceSocketClientListener() {
+	private void routeMessages() {
+		String appId = getFullAppId();
+
+		if (appId != null && appId.equalsIgnoreCase(mRoutedAppId))
+			return;
+
+		if (mRoutedAppId != null)
+			socket.removeP2PHandler(mRoutedAppId, mP2PHandler);
+
+		mRoutedAppId = appId;
+		socket.addP2PHandler(appId, mP2PHandler);
+	}
+
+	private WebOSTVServiceSocketClient.P2PMessageHandler mP2PHandler = new WebOSTVServiceSocketClient.P2PMessageHandler() {
 
 		@Override
-		public void onRegistrationFailed(ServiceCommandError error) {
+		public void onReceiveP2PMessage(WebOSTVSocketMessage message) {
+			handleP2PMessage(message.getPayload());
 		}
+	};
 
-		@Override
-		public Boolean onReceiveMessage(JSONObject payload) {
-			String type = payload.optString("type");
+	private void handleP2PMessage(Object message) {
+		if (message instanceof String) {
+			handleMessage(message);
+			return;
+		}
+
+		if (!(message instanceof JSONObject))
+			return;
+
+		JSONObject messageJSON = (JSONObject) message;
+		String contentType = messageJSON.optString("contentType");
+
+		// media traffic is by far the most common, so match it directly
+		if (MEDIA_EVENT_CONTENT_TYPE.equals(contentType)) {
+			JSONObject messagePayload = messageJSON.optJSONObject(MEDIA_EVENT);
+
+			if (messagePayload != null)
+				handleMediaEvent(messagePayload);
+
+			return;
+		}
 
-			if ("p2p".equals(type)) {
-				String fromAppId = null;
+		if (MEDIA_COMMAND_RESPONSE_CONTENT_TYPE.equals(contentType)) {
+			JSONObject messagePayload = messageJSON.optJSONObject(MEDIA_COMMAND_RESPONSE);
 
-				fromAppId = payload.optString("from");
+			if (messagePayload != null)
+				handleMediaCommandResponse(messagePayload);
 
-				if (!fromAppId.equalsIgnoreCase(getFullAppId()))
-					return false;
+			return;
+		}
 
-				Object message = payload.opt("payload");
+		if (messageChunker.handleMessage(messageJSON))
+			return;
 
-				if (message instanceof JSONObject) {
-					JSONObject messageJSON = (JSONObject) message;
+		int contentTypeIndex = contentType.indexOf(namespaceKey);
 
-					String contentType = messageJSON.optString("contentType");
-					Integer contentTypeIndex = contentType
-							.indexOf("connectsdk.");
+		if (contentTypeIndex < 0) {
+			handleMessage(messageJSON);
+			return;
+		}
 
-					if (contentType != null && contentTypeIndex >= 0) {
-						String payloadKey = contentType.split("connectsdk.")[1];
+		String payloadKey = contentType.substring(contentTypeIndex + namespaceKey.length());
 
-						if (payloadKey == null || payloadKey.length() == 0)
-							return false;
+		if (payloadKey.length() == 0)
+			return;
 
-						JSONObject messagePayload = messageJSON
-								.optJSONObject(payloadKey);
+		JSONObject messagePayload = messageJSON.optJSONObject(payloadKey);
 
-						if (messagePayload == null)
-							return false;
+		if (messagePayload == null)
+			return;
 
-						if (payloadKey.equalsIgnoreCase("mediaEvent"))
-							handleMediaEvent(messagePayload);
-						else if (payloadKey
-								.equalsIgnoreCase("mediaCommandResponse"))
-							handleMediaCommandResponse(messagePayload);
-					} else {
-						handleMessage(messageJSON);
-					}
-				} else if (message instanceof String) {
-					handleMessage(message);
-				}
+		if (payloadKey.equalsIgnoreCase(MEDIA_EVENT))
+			handleMediaEvent(messagePayload);
+		else if (payloadKey.equalsIgnoreCase(MEDIA_COMMAND_RESPONSE))
+			handleMediaCommandResponse(messagePayload);
+	}
+
+	private WebOSTVServiceSocketClientListener mSocketListener = new WebOSTVServiceSocketClientListener() {
 
+		@Override
+		public void onRegistrationFailed(ServiceCommandError error) {
+		}
+
+		@Override
+		public Boolean onReceiveMessage(WebOSTVSocketMessage payload) {
+			String type = payload.getType();
+
+			// p2p messages from this session's app are routed to mP2PHandler
+			// by the socket; any others are not meant for this session
+			if ("p2p".equals(type))
 				return false;
-			}
 
 			return true;
 		}
@@ -223,6 +292,7 @@ public class WebOSWebAppSession extends WebAppSession {
 		public void onCloseWithError(ServiceCommandError error) {
 			connected = false;
 			appToAppSubscription = null;
+			messageChunker.cancelAll();
 
 			if (mConnectionListener != null) {
 				if (error != null)
@@ -377,6 +447,7 @@ public class WebOSWebAppSession extends WebAppSession {
 			socket = new WebOSTVServiceSocketClient(service,
 					WebOSTVServiceSocketClient.getURI(service));
 			socket.setListener(mSocketListener);
+			routeMessages();
 			socket.connect();
 		}
 	}
@@ -384,6 +455,7 @@ public class WebOSWebAppSession extends WebAppSession {
 	public void disconnectFromWebApp() {
 		connected = false;
 		mConnectionListener = null;
+		messageChunker.cancelAll();
 
 		if (appToAppSubscription != null) {
 			appToAppSubscription.removeListeners();
@@ -391,6 +463,10 @@ public class WebOSWebAppSession extends WebAppSession {
 		}
 
 		if (socket != null) {
+			if (mRoutedAppId != null)
+				socket.removeP2PHandler(mRoutedAppId, mP2PHandler);
+
+			mRoutedAppId = null;
 			socket.setListener(null);
 			socket.disconnect();
 			socket = null;
@@ -465,6 +541,7 @@ public class WebOSWebAppSession extends WebAppSession {
 	@Override
 	public void close(ResponseListener<Object> listener) {
 		mActiveCommands.clear();
+		playbackClock.reset();
 
 		if (mPlayStateSubscription != null) {
 			mPlayStateSubscription.unsubscribe();
@@ -518,11 +595,18 @@ public class WebOSWebAppSession extends WebAppSession {
 
 		mActiveCommands.put(requestId, command);
 
+		playbackClock.seek(position);
+
 		sendMessage(message, listener);
 	}
 
 	@Override
 	public void getPosition(final PositionListener listener) {
+		if (playbackClock.isSynchronized()) {
+			Util.postSuccess(listener, playbackClock.getPosition());
+			return;
+		}
+
 		int requestIdNumber = getNextId();
 		final String requestId = String.format(Locale.US, "req%d",
 				requestIdNumber);
@@ -554,6 +638,8 @@ public class WebOSWebAppSession extends WebAppSession {
 							long position = ((JSONObject) response)
 									.getLong("position");
 
+							playbackClock.setPosition(position * 1000);
+
 							if (listener != null)
 								listener.onSuccess(position * 1000);
 						} catch (JSONException e) {
@@ -619,6 +705,8 @@ public class WebOSWebAppSession extends WebAppSession {
 							long position = ((JSONObject) response)
 									.getLong("duration");
 
+							playbackClock.setDuration(position * 1000);
+
 							if (listener != null)
 								listener.onSuccess(position * 1000);
 						} catch (JSONException e) {
@@ -685,6 +773,8 @@ public class WebOSWebAppSession extends WebAppSession {
 									.getString("playState");
 							PlayStateStatus playState = parsePlayState(playStateString);
 
+							playbackClock.setPlayState(playState);
+
 							if (listener != null)
 								listener.onSuccess(playState);
 						} catch (JSONException e) {
@@ -817,6 +907,8 @@ public class WebOSWebAppSession extends WebAppSession {
 		ServiceCommand<ResponseListener<Object>> command = new ServiceCommand<ResponseListener<Object>>(
 				socket, null, null, response);
 
+		playbackClock.reset();
+
 		mActiveCommands.put(requestId, command);
 
 		sendP2PMessage(message, new ResponseListener<Object>() {
@@ -880,6 +972,8 @@ public class WebOSWebAppSession extends WebAppSession {
 		ServiceCommand<ResponseListener<Object>> command = new ServiceCommand<ResponseListener<Object>>(
 				socket, null, null, response);
 
+		playbackClock.reset();
+
 		mActiveCommands.put(requestId, command);
 
 		sendP2PMessage(message, new ResponseListener<Object>() {
@@ -944,6 +1038,8 @@ public class WebOSWebAppSession extends WebAppSession {
 		ServiceCommand<ResponseListener<Object>> command = new ServiceCommand<ResponseListener<Object>>(
 				null, null, null, response);
 
+		playbackClock.reset();
+
 		mActiveCommands.put(requestId, command);
 
 		sendMessage(message, new ResponseListener<Object>() {
@@ -1010,6 +1106,8 @@ public class WebOSWebAppSession extends WebAppSession {
 		ServiceCommand<ResponseListener<Object>> command = new ServiceCommand<ResponseListener<Object>>(
 				null, null, null, response);
 
+		playbackClock.reset();
+
 		mActiveCommands.put(requestId, command);
 
 		sendMessage(message, new ResponseListener<Object>() {
@@ -11,6 +11,14 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import android.util.Xml;
 
+/**
+ * Parses a LastChange Event document into JSON.
+ *
+ * @deprecated DLNAHttpServer no longer uses this class. Use
+ * {@link DLNANotifyDecoder#decode(InputStream)}, which returns the state
+ * variables of each InstanceID as a DLNALastChange.
+ */
+@Deprecated
 public class DLNAEventParser {
 	private static final String ns = null;
 	
@@ -1,244 +1,250 @@
 package com.connectsdk.service.upnp;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.io.UnsupportedEncodingException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetAddress;
+import java.util.AbstractList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.xmlpull.v1.XmlPullParserException;
 
 import com.connectsdk.core.MediaInfo;
 import com.connectsdk.core.Util;
+import com.connectsdk.etc.helper.CallbackHttpServer;
+import com.connectsdk.etc.helper.HttpRequestDecoder;
+import com.connectsdk.etc.helper.PlaybackClock;
 import com.connectsdk.service.capability.MediaControl.PlayStateStatus;
 import com.connectsdk.service.capability.listeners.ResponseListener;
 import com.connectsdk.service.command.URLServiceSubscription;
 
-public class DLNAHttpServer {
-	ServerSocket welcomeSocket;
-	
-	int port = 49291;
+/**
+ * Receives GENA event notifications from a DLNA renderer.
+ *
+ * Notifications are received by the shared CallbackHttpServer. Each
+ * DLNAHttpServer has its own callback path, so events from several
+ * renderers never get mixed up.
+ */
+public class DLNAHttpServer implements CallbackHttpServer.RequestHandler {
+	static final String CALLBACK_PATH = "/dlna/";
+
+	private static final AtomicInteger nextId = new AtomicInteger(1);
 
-	boolean running = false;
+	final String path;
+
+	volatile boolean running = false;
 
 	CopyOnWriteArrayList<URLServiceSubscription<?>> subscriptions;
 	
-	public DLNAHttpServer() {
-	    subscriptions = new CopyOnWriteArrayList<URLServiceSubscription<?>>();
-	}
-
-	public void start() {
-		if (running)
-			return;
+	/** Events a subscription can be for, by subscription target */
+	enum EventType {
+		PLAY_STATE("playState"),
+		VOLUME("volume"),
+		MUTE("mute"),
+		INFO("info");
 		
-		running = true;
+		final String target;
 		
-		try {
-			welcomeSocket = new ServerSocket(this.port);
-		} catch (IOException ex) {
-			ex.printStackTrace();
+		EventType(String target) {
+			this.target = target;
 		}
 		
-		while (running) {
-			if (welcomeSocket == null || welcomeSocket.isClosed()) {
-				stop();
-				break;
+		static EventType fromTarget(String target) {
+			for (EventType type : values()) {
+				if (type.target.equalsIgnoreCase(target))
+					return type;
 			}
 			
-			Socket connectionSocket = null;
-			BufferedReader inFromClient = null;
-			DataOutputStream outToClient = null;
-			
-			try {
-				connectionSocket = welcomeSocket.accept();
-			} catch (IOException ex) {
-				ex.printStackTrace();
-				// this socket may have been closed, so we'll stop
-				stop();
-				return;
+			return null;
+		}
+	}
+	
+	// subscriptions by event type, so an event only looks at the ones that want it;
+	// all types are present from the start and the map itself never changes
+	final Map<EventType, List<URLServiceSubscription<?>>> subscriptionsByType = new EnumMap<EventType, List<URLServiceSubscription<?>>>(EventType.class);
+	
+	final List<URLServiceSubscription<?>> subscriptionsView = new SubscriptionList();
+	
+	PlaybackClock playbackClock;
+	
+	/**
+	 * The list returned by getSubscriptions(), which keeps subscriptionsByType
+	 * up to date when it is modified
+	 */
+	class SubscriptionList extends AbstractList<URLServiceSubscription<?>> {
+		@Override
+		public URLServiceSubscription<?> get(int index) {
+			return subscriptions.get(index);
+		}
+		
+		@Override
+		public int size() {
+			return subscriptions.size();
+		}
+		
+		@Override
+		public void add(int index, URLServiceSubscription<?> subscription) {
+			synchronized (DLNAHttpServer.this) {
+				subscriptions.add(index, subscription);
+				indexSubscription(subscription);
 			}
-			
-			int c = 0;
-			
-			String body = null;
-			
-			try {
-				inFromClient = new BufferedReader(new InputStreamReader(connectionSocket.getInputStream()));
-
-				StringBuilder sb = new StringBuilder();
-				
-				while ((c = inFromClient.read()) != -1) {
-					sb.append((char)c);
-
-					if (sb.toString().endsWith("\r\n\r\n"))
-						break;
-				}
-				sb = new StringBuilder();
+		}
+		
+		@Override
+		public URLServiceSubscription<?> set(int index, URLServiceSubscription<?> subscription) {
+			synchronized (DLNAHttpServer.this) {
+				URLServiceSubscription<?> previous = subscriptions.set(index, subscription);
+				unindexSubscription(previous);
+				indexSubscription(subscription);
 				
-				while ((c = inFromClient.read()) != -1) {
-					sb.append((char)c);
-					body = sb.toString();
-
-					if (body.endsWith("</e:propertyset>"))
-						break;
-				}
-			} catch (IOException ex) {
-				ex.printStackTrace();
+				return previous;
 			}
-			
-			PrintWriter out = null;
-			
-			try {
-				outToClient = new DataOutputStream(connectionSocket.getOutputStream());
-				out = new PrintWriter(outToClient);
-				out.println("HTTP/1.1 200 OK");
-				out.println("Connection: Close");
-				out.println("Content-Length: 0");
-				out.println();
-				out.flush();
-			} catch (IOException ex) {
-				ex.printStackTrace();
-			} finally {
-				try {
-					inFromClient.close();
-					out.close();
-					outToClient.close();
-					connectionSocket.close();
-				} catch (IOException ex) {
-					ex.printStackTrace();
-				}
-			}
-			
-			InputStream stream = null;
-			
-			try {
-				stream = new ByteArrayInputStream(body.getBytes("UTF-8"));
-			} catch (UnsupportedEncodingException ex) {
-				ex.printStackTrace();
+		}
+		
+		@Override
+		public URLServiceSubscription<?> remove(int index) {
+			synchronized (DLNAHttpServer.this) {
+				URLServiceSubscription<?> previous = subscriptions.remove(index);
+				unindexSubscription(previous);
+				
+				return previous;
 			}
+		}
+		
+		@Override
+		public boolean remove(Object subscription) {
+			if (!(subscription instanceof URLServiceSubscription))
+				return false;
 			
-			JSONArray propertySet;
-			DLNANotifyParser parser = new DLNANotifyParser();
-			
-			try {
-				propertySet = parser.parse(stream);
+			return removeSubscription((URLServiceSubscription<?>) subscription);
+		}
+		
+		@Override
+		public void clear() {
+			synchronized (DLNAHttpServer.this) {
+				subscriptions.clear();
 				
-				for (int i = 0; i < propertySet.length(); i++) {
-					JSONObject property = propertySet.getJSONObject(i);
-					
-					if (property.has("LastChange")) {
-						JSONObject lastChange = property.getJSONObject("LastChange");
-						handleLastChange(lastChange);
-					}
+				for (List<URLServiceSubscription<?>> list : subscriptionsByType.values()) {
+					list.clear();
 				}
-			} catch (XmlPullParserException e) {
-				e.printStackTrace();
-			} catch (IOException e) {
-				e.printStackTrace();
-			} catch (JSONException e) {
-				e.printStackTrace();
 			}
 		}
 	}
 	
-	private void handleLastChange(JSONObject lastChange) throws JSONException {
-		if (lastChange.has("InstanceID")) {
-			JSONArray instanceIDs = lastChange.getJSONArray("InstanceID");
+	public DLNAHttpServer() {
+	    subscriptions = new CopyOnWriteArrayList<URLServiceSubscription<?>>();
+	    path = CALLBACK_PATH + nextId.getAndIncrement();
+	    
+	    for (EventType type : EventType.values()) {
+	    	subscriptionsByType.put(type, new CopyOnWriteArrayList<URLServiceSubscription<?>>());
+	    }
+	}
+	
+	/** Sets a clock to be kept up to date with TransportState events */
+	public void setPlaybackClock(PlaybackClock playbackClock) {
+		this.playbackClock = playbackClock;
+	}
 
-			for (int i = 0; i < instanceIDs.length(); i++) {
-				JSONArray events = instanceIDs.getJSONArray(i);
-				
-				for (int j = 0; j < events.length(); j++) {
-					JSONObject entry = events.getJSONObject(j);
-					handleEntry(entry);
-				}
-			}
+	/**
+	 * Starts receiving notifications. The callback server is started if it is
+	 * not running yet, so getPort() is valid once this returns.
+	 */
+	public synchronized void start() {
+		if (running)
+			return;
+		
+		try {
+			CallbackHttpServer.getInstance().addHandler(path, this);
+			running = true;
+		} catch (IOException ex) {
+			ex.printStackTrace();
 		}
 	}
 	
-	private void handleEntry(JSONObject entry) throws JSONException {
-		if (entry.has("TransportState")) {
-			String transportState = entry.getString("TransportState");
-			PlayStateStatus status = PlayStateStatus.convertTransportStateToPlayStateStatus(transportState);
-			
-			for (URLServiceSubscription<?> sub: subscriptions) {
-				if (sub.getTarget().equalsIgnoreCase("playState")) {
-					for (int j = 0; j < sub.getListeners().size(); j++) {
-						@SuppressWarnings("unchecked")
-						ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(j);
-						Util.postSuccess(listener, status);
-					}
-				}
-			}
-		}
+	@Override
+	public boolean onRequest(InetAddress remoteAddress, HttpRequestDecoder request) {
+		if (!"NOTIFY".equals(request.getMethod()))
+			return false;
 		
-		if ((entry.has("Volume")&&!entry.has("channel"))||(entry.has("Volume")&&entry.getString("channel").equals("Master"))) {
-			int intVolume = entry.getInt("Volume");
-			float volume = (float) intVolume / 100;
-
-			for (URLServiceSubscription<?> sub : subscriptions) {
-				if (sub.getTarget().equalsIgnoreCase("volume")) {
-					for (int j = 0; j < sub.getListeners().size(); j++) {
-						@SuppressWarnings("unchecked")
-						ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(j);
-						Util.postSuccess(listener, volume);
-					}
-				}
-			}
-		}
+		handleNotify(request.getBody());
 		
-		if ((entry.has("Mute")&&!entry.has("channel"))||(entry.has("Mute")&&entry.getString("channel").equals("Master"))) {
-			String muteStatus = entry.getString("Mute");
-			boolean mute;
-			
-			try {
-				mute = (Integer.parseInt(muteStatus) == 1) ? true : false;
-		    } catch(NumberFormatException e) {
-		    	mute = Boolean.parseBoolean(muteStatus);
-		    }
-
-			for (URLServiceSubscription<?> sub : subscriptions) {
-				if (sub.getTarget().equalsIgnoreCase("mute")) {
-					for (int j = 0; j < sub.getListeners().size(); j++) {
-						@SuppressWarnings("unchecked")
-						ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(j);
-						Util.postSuccess(listener, mute);
-					}
-				}
+		return true;
+	}
+	
+	/**
+	 * @param eventSubURL event subscription URL of a service, from the
+	 * device description
+	 * @return the path a renderer should deliver that service's events to
+	 */
+	public String getCallbackPath(String eventSubURL) {
+		if (eventSubURL == null)
+			return path;
+		
+		return eventSubURL.startsWith("/") ? path + eventSubURL : path + "/" + eventSubURL;
+	}
+	
+	private void handleNotify(byte[] body) {
+		try {
+			for (DLNALastChange change : DLNANotifyDecoder.decode(new ByteArrayInputStream(body))) {
+				handleLastChange(change);
 			}
+		} catch (XmlPullParserException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
 		}
+	}
+	
+	private void handleLastChange(DLNALastChange change) {
+		String transportState = change.getTransportState();
 		
-		if (entry.has("CurrentTrackMetaData")) {
+		if (transportState != null && (playbackClock != null || hasSubscribers(EventType.PLAY_STATE))) {
+			PlayStateStatus status = PlayStateStatus.convertTransportStateToPlayStateStatus(transportState);
 			
-			String trackMetaData = entry.getString("CurrentTrackMetaData");
+			if (playbackClock != null)
+				playbackClock.setPlayState(status);
 			
+			notifySubscribers(EventType.PLAY_STATE, status);
+		}
+		
+		Integer volume = change.getVolume(DLNALastChange.MASTER_CHANNEL);
+		
+		if (volume != null && hasSubscribers(EventType.VOLUME))
+			notifySubscribers(EventType.VOLUME, (float) volume / 100);
+		
+		Boolean mute = change.getMute(DLNALastChange.MASTER_CHANNEL);
+		
+		if (mute != null && hasSubscribers(EventType.MUTE))
+			notifySubscribers(EventType.MUTE, mute);
+		
+		// the metadata is only decoded if someone is listening
+		String trackMetaData = change.getCurrentTrackMetaData();
+		
+		if (trackMetaData != null && hasSubscribers(EventType.INFO)) {
 			MediaInfo info = DLNAMediaInfoParser.getMediaInfo(trackMetaData);
 			
-			for (URLServiceSubscription<?> sub : subscriptions) {
-				if (sub.getTarget().equalsIgnoreCase("info")) {
-					for (int j = 0; j < sub.getListeners().size(); j++) {
-						@SuppressWarnings("unchecked")
-						ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(j);
-						Util.postSuccess(listener, info);
-					}
-				}
+			notifySubscribers(EventType.INFO, info);
+		}
+	}
+	
+	private boolean hasSubscribers(EventType type) {
+		return !subscriptionsByType.get(type).isEmpty();
+	}
+	
+	private void notifySubscribers(EventType type, Object value) {
+		for (URLServiceSubscription<?> sub : subscriptionsByType.get(type)) {
+			for (int j = 0; j < sub.getListeners().size(); j++) {
+				@SuppressWarnings("unchecked")
+				ResponseListener<Object> listener = (ResponseListener<Object>) sub.getListeners().get(j);
+				Util.postSuccess(listener, value);
 			}
-			
 		}
-		
 	}
 	
-	public void stop() {
+	public synchronized void stop() {
 		if (!running)
 			return;
 		
@@ -247,28 +253,70 @@ public class DLNAHttpServer {
 		}
 		subscriptions.clear();
 		
-		if (welcomeSocket != null && !welcomeSocket.isClosed()) {
-			try {
-				welcomeSocket.close();
-			} catch (IOException ex) {
-				ex.printStackTrace();
-			}
+		for (List<URLServiceSubscription<?>> list : subscriptionsByType.values()) {
+			list.clear();
 		}
 		
-		welcomeSocket = null;
+		CallbackHttpServer.getInstance().removeHandler(this);
 		running = false;
 	}
 	
+	/**
+	 * @return the port of the callback server, or -1 if it is not running
+	 */
 	public int getPort() {
-		return port;
+		return CallbackHttpServer.getInstance().getPort();
 	}
 	
+	/**
+	 * @return a live view of the current subscriptions. Changes made through
+	 * it go through addSubscription() and removeSubscription().
+	 */
 	public List<URLServiceSubscription<?>> getSubscriptions() {
-		return subscriptions;
+		return subscriptionsView;
 	}
 
-	public void setSubscriptions(List<URLServiceSubscription<?>> subscriptions) {
-		this.subscriptions = new CopyOnWriteArrayList<URLServiceSubscription<?>>(subscriptions);
+	public synchronized void setSubscriptions(List<URLServiceSubscription<?>> subscriptions) {
+		for (List<URLServiceSubscription<?>> list : subscriptionsByType.values()) {
+			list.clear();
+		}
+		
+		this.subscriptions = new CopyOnWriteArrayList<URLServiceSubscription<?>>();
+		
+		for (URLServiceSubscription<?> subscription : subscriptions) {
+			addSubscription(subscription);
+		}
+	}
+	
+	public synchronized void addSubscription(URLServiceSubscription<?> subscription) {
+		subscriptions.add(subscription);
+		indexSubscription(subscription);
+	}
+	
+	/**
+	 * @return true if the subscription was registered
+	 */
+	public synchronized boolean removeSubscription(URLServiceSubscription<?> subscription) {
+		if (!subscriptions.remove(subscription))
+			return false;
+		
+		unindexSubscription(subscription);
+		
+		return true;
+	}
+	
+	private void indexSubscription(URLServiceSubscription<?> subscription) {
+		EventType type = EventType.fromTarget(subscription.getTarget());
+		
+		if (type != null)
+			subscriptionsByType.get(type).add(subscription);
+	}
+	
+	private void unindexSubscription(URLServiceSubscription<?> subscription) {
+		EventType type = EventType.fromTarget(subscription.getTarget());
+		
+		if (type != null)
+			subscriptionsByType.get(type).remove(subscription);
 	}
 	
 	public boolean isRunning() {
@@ -0,0 +1,60 @@
+package com.connectsdk.service.upnp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * State variables reported for one InstanceID in a LastChange event.
+ *
+ * Only the variables DLNAService uses are kept. A variable that was not part
+ * of the event is null.
+ */
+public class DLNALastChange {
+	public static final String MASTER_CHANNEL = "Master";
+
+	private final String instanceId;
+
+	String transportState;
+	String currentTrackURI;
+	String currentTrackMetaData;
+
+	final Map<String, Integer> volumes = new HashMap<String, Integer>();
+	final Map<String, Boolean> mutes = new HashMap<String, Boolean>();
+
+	DLNALastChange(String instanceId) {
+		this.instanceId = instanceId;
+	}
+
+	public String getInstanceId() {
+		return instanceId;
+	}
+
+	public String getTransportState() {
+		return transportState;
+	}
+
+	public String getCurrentTrackURI() {
+		return currentTrackURI;
+	}
+
+	/**
+	 * @return the DIDL-Lite metadata of the current track, or null
+	 */
+	public String getCurrentTrackMetaData() {
+		return currentTrackMetaData;
+	}
+
+	/**
+	 * @return the volume of channel (0-100), or null if it did not change
+	 */
+	public Integer getVolume(String channel) {
+		return volumes.get(channel);
+	}
+
+	/**
+	 * @return the mute state of channel, or null if it did not change
+	 */
+	public Boolean getMute(String channel) {
+		return mutes.get(channel);
+	}
+}
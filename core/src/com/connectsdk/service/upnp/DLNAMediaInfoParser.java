@@ -3,6 +3,8 @@ package com.connectsdk.service.upnp;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
@@ -12,28 +14,141 @@ import com.connectsdk.core.MediaInfo;
 
 import android.util.Xml;
 
+/**
+ * Parses DIDL-Lite metadata, as found in GetPositionInfo responses and
+ * LastChange events.
+ *
+ * The document is read in a single pull parser pass into a Metadata, from
+ * which the MediaInfo is built. Metadata that is still XML escaped is
+ * unescaped first. Renderers often use prefixes such as r: or dlna: without
+ * declaring them, so namespaces are not processed and elements are matched
+ * on their local name.
+ */
 public class DLNAMediaInfoParser {
 
-	private static final String APOS = "&amp;apos;";
-	private static final String LT = "&lt;";
-	private static final String GT = "&gt;";
-	private static final String TITLE = "dc:title";
-	private static final String CREATOR = "dc:creator";
-	private static final String ARTIST = "r:albumArtist";
-	private static final String THUMBNAIL = "upnp:albumArtURI";
-	private static final String ALBUM = "upnp:album";
-	private static final String GENRE = "upnp:genre";
-	private static final String RADIOTITLE = "r:streamContent";
-
-	private static String getData(String str, String data) {
-		if (str.contains(toEndTag(data))) {
-			int startInd = str.indexOf(toStartTag(data))
-					+ toStartTag(data).length();
-			int endInd = str.indexOf(toEndTag(data));
-			return (toString(str.substring(startInd, endInd)));
-		}
-		
-		if (str.contains(LT)) return "";
+	/**
+	 * One res element: a URL the item can be fetched from
+	 */
+	public static class Resource {
+		private final String url;
+		private final String protocolInfo;
+		private final String duration;
+
+		Resource(String url, String protocolInfo, String duration) {
+			this.url = url;
+			this.protocolInfo = protocolInfo;
+			this.duration = duration;
+		}
+
+		public String getUrl() {
+			return url;
+		}
+
+		/**
+		 * @return the protocolInfo attribute, e.g.
+		 * "http-get:*:video/mp4:DLNA.ORG_OP=01", or null
+		 */
+		public String getProtocolInfo() {
+			return protocolInfo;
+		}
+
+		/**
+		 * @return the MIME type from the protocolInfo, or "" if there is none
+		 */
+		public String getMimeType() {
+			if (protocolInfo == null)
+				return "";
+
+			String[] fields = protocolInfo.split(":", 4);
+
+			return fields.length > 2 ? fields[2] : "";
+		}
+
+		/**
+		 * @return the duration attribute (H+:MM:SS[.F+]), or null
+		 */
+		public String getDuration() {
+			return duration;
+		}
+	}
+
+	/**
+	 * The metadata of the first item in a DIDL-Lite document. Missing
+	 * values are empty strings.
+	 */
+	public static class Metadata {
+		String title = "";
+		String streamContent = "";
+		String creator = "";
+		String albumArtist = "";
+		String album = "";
+		String genre = "";
+		String albumArtURI = "";
+		String upnpClass = "";
+
+		final List<Resource> resources = new ArrayList<Resource>();
+
+		/**
+		 * @return the title, preferring the stream content of a radio station
+		 */
+		public String getTitle() {
+			return streamContent.length() != 0 ? streamContent : title;
+		}
+
+		public String getCreator() {
+			return creator;
+		}
+
+		public String getAlbumArtist() {
+			return albumArtist;
+		}
+
+		public String getAlbum() {
+			return album;
+		}
+
+		public String getGenre() {
+			return genre;
+		}
+
+		@SuppressWarnings("deprecation")
+		public String getAlbumArtURI() {
+			return java.net.URLDecoder.decode(albumArtURI);
+		}
+
+		/** @return the upnp:class, e.g. "object.item.videoItem" */
+		public String getUpnpClass() {
+			return upnpClass;
+		}
+
+		/** @return all res elements, in document order */
+		public List<Resource> getResources() {
+			return Collections.unmodifiableList(resources);
+		}
+
+		public String getURL() {
+			return resources.isEmpty() ? "" : resources.get(0).getUrl();
+		}
+
+		public String getMimeType() {
+			return resources.isEmpty() ? "" : resources.get(0).getMimeType();
+		}
+	}
+
+	public static Metadata parse(String str) {
+		Metadata metadata = new Metadata();
+
+		if (str == null)
+			return metadata;
+
+		str = str.trim();
+
+		// metadata that is still escaped, as sent by some renderers
+		if (str.startsWith("&lt;"))
+			str = unescape(str);
+
+		if (!str.startsWith("<"))
+			return metadata;
 
 		XmlPullParser parser = Xml.newPullParser();
 
@@ -41,16 +156,24 @@ public class DLNAMediaInfoParser {
 			parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
 			parser.setInput(new StringReader(str));
 
-			int eventType = parser.nextTag();
+			int itemDepth = -1;
+			int eventType = parser.getEventType();
+
 			while (eventType != XmlPullParser.END_DOCUMENT) {
 				if (eventType == XmlPullParser.START_TAG) {
-					String name = parser.getName();
-					if (name.equals(data)) {
-						eventType = parser.next();
-						if (eventType == XmlPullParser.TEXT)
-							return parser.getText();
+					String name = localName(parser.getName());
+
+					if (itemDepth < 0) {
+						if ("item".equals(name) || "container".equals(name))
+							itemDepth = parser.getDepth();
+					} else if (parser.getDepth() == itemDepth + 1) {
+						readProperty(parser, name, metadata);
 					}
+				} else if (eventType == XmlPullParser.END_TAG && parser.getDepth() == itemDepth) {
+					// only the first item is used
+					break;
 				}
+
 				eventType = parser.next();
 			}
 		} catch (XmlPullParserException e) {
@@ -59,91 +182,97 @@ public class DLNAMediaInfoParser {
 			e.printStackTrace();
 		}
 
-		return "";
+		return metadata;
+	}
+
+	private static void readProperty(XmlPullParser parser, String name, Metadata metadata) throws XmlPullParserException, IOException {
+		if ("res".equals(name)) {
+			String protocolInfo = parser.getAttributeValue(null, "protocolInfo");
+			String duration = parser.getAttributeValue(null, "duration");
+
+			metadata.resources.add(new Resource(parser.nextText().trim(), protocolInfo, duration));
+		} else if ("title".equals(name)) {
+			metadata.title = parser.nextText();
+		} else if ("streamContent".equals(name)) {
+			metadata.streamContent = parser.nextText();
+		} else if ("creator".equals(name)) {
+			metadata.creator = parser.nextText();
+		} else if ("albumArtist".equals(name)) {
+			metadata.albumArtist = parser.nextText();
+		} else if ("album".equals(name)) {
+			metadata.album = parser.nextText();
+		} else if ("genre".equals(name)) {
+			metadata.genre = parser.nextText();
+		} else if ("albumArtURI".equals(name)) {
+			// the first one is the preferred one
+			if (metadata.albumArtURI.length() == 0)
+				metadata.albumArtURI = parser.nextText().trim();
+		} else if ("class".equals(name)) {
+			metadata.upnpClass = parser.nextText();
+		}
 	}
-	
+
+	/**
+	 * @return name without its namespace prefix
+	 */
+	static String localName(String name) {
+		int colon = name.indexOf(':');
+
+		return colon >= 0 ? name.substring(colon + 1) : name;
+	}
+
 	public static MediaInfo getMediaInfo(String str) {
+		Metadata metadata = parse(str);
+
+		String description = metadata.getCreator() + "\n" + metadata.getAlbum();
 
-		String url = DLNAMediaInfoParser.getURL(str);
-		String title = DLNAMediaInfoParser.getTitle(str);
-		String mimeType = DLNAMediaInfoParser.getMimeType(str);
-		String description =  DLNAMediaInfoParser.getArtist(str) + "\n" + 
-				DLNAMediaInfoParser.getAlbum(str);
-		String iconUrl = DLNAMediaInfoParser.getThumbnail(str);
-		
 		ArrayList<ImageInfo> list = new ArrayList<ImageInfo>();
-		list.add(new ImageInfo(iconUrl));
-		MediaInfo info = new MediaInfo(url, mimeType, title, description, list);
-		
+		list.add(new ImageInfo(metadata.getAlbumArtURI()));
+		MediaInfo info = new MediaInfo(metadata.getURL(), metadata.getMimeType(), metadata.getTitle(), description, list);
+
+		if (!metadata.resources.isEmpty()) {
+			long duration = DLNAPositionInfo.parseTime(metadata.resources.get(0).getDuration());
+
+			if (duration > 0)
+				info.setDuration(duration);
+		}
+
 		return info;
-		
 	}
 
 	public static String getTitle(String str) {
-		if (!getData(str, RADIOTITLE).equals("")) return getData(str, RADIOTITLE);
-		return getData(str, TITLE);
+		return parse(str).getTitle();
 	}
 
 	public static String getArtist(String str) {
-		return getData(str, CREATOR);
+		return parse(str).getCreator();
 	}
 
 	public static String getAlbum(String str) {
-		return getData(str, ALBUM);
+		return parse(str).getAlbum();
 	}
 
 	public static String getGenre(String str) {
-		return getData(str, GENRE);
+		return parse(str).getGenre();
 	}
 
-	@SuppressWarnings("deprecation")
 	public static String getThumbnail(String str) {
-		String res = getData(str, THUMBNAIL);
-		res = java.net.URLDecoder.decode(res);
-		return res;
+		return parse(str).getAlbumArtURI();
 	}
 
 	public static String getMimeType(String str) {
-		if (str.contains("protocolInfo")) {
-			int startInd = str.indexOf("*:") + 2;
-			int endInd = str.substring(startInd).indexOf(":") + startInd;
-			return str.substring(startInd, endInd);
-		}
-		return "";
+		return parse(str).getMimeType();
 	}
 
-	@SuppressWarnings("deprecation")
 	public static String getURL(String str) {
-		if (str.contains(LT)){
-			if (str.contains(toEndTag("res"))) {
-				int startInd = str.substring(str.indexOf(LT + "res")).indexOf(GT)
-						+ str.indexOf(LT + "res") + GT.length();
-				int endInd = str.indexOf(toEndTag("res"));
-				return java.net.URLDecoder.decode(str.substring(startInd, endInd));
-			}
-			return "";
-		}
-		else return getData(str, "res");
-	}
-
-	private static String toStartTag(String str) {
-		return (LT + str + GT);
+		return parse(str).getURL();
 	}
 
-	private static String toEndTag(String str) {
-		return toStartTag("/" + str);
+	private static String unescape(String str) {
+		return str.replace("&lt;", "<")
+				.replace("&gt;", ">")
+				.replace("&quot;", "\"")
+				.replace("&apos;", "'")
+				.replace("&amp;", "&");
 	}
-
-	private static String toString(String text) {
-		StringBuilder sb = new StringBuilder();
-		if (text.contains(APOS)) {
-			sb.append(text.substring(0, text.indexOf(APOS)));
-			sb.append("'");
-			sb.append(text.substring(text.indexOf(APOS) + APOS.length()));
-		} else
-			return text;
-
-		return sb.toString();
-	}
-
 }
@@ -0,0 +1,106 @@
+package com.connectsdk.service.upnp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.util.Xml;
+
+/**
+ * Decodes the body of a GENA NOTIFY into LastChange records.
+ *
+ * The propertyset is streamed with a pull parser; the LastChange document
+ * it carries as text is streamed the same way, and the state variables are
+ * stored directly in a DLNALastChange per InstanceID. Unknown properties
+ * and variables are skipped without being read into memory. Namespaces are
+ * not processed, since renderers do not always declare the prefixes they
+ * use; elements are matched on their local name.
+ */
+public class DLNANotifyDecoder {
+	private DLNANotifyDecoder() { }
+
+	public static List<DLNALastChange> decode(InputStream in) throws XmlPullParserException, IOException {
+		List<DLNALastChange> changes = new ArrayList<DLNALastChange>();
+
+		try {
+			XmlPullParser parser = Xml.newPullParser();
+			parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+			parser.setInput(in, null);
+
+			int eventType = parser.getEventType();
+
+			while (eventType != XmlPullParser.END_DOCUMENT) {
+				if (eventType == XmlPullParser.START_TAG && "LastChange".equals(DLNAMediaInfoParser.localName(parser.getName())))
+					decodeLastChange(parser.nextText(), changes);
+
+				eventType = parser.next();
+			}
+		} finally {
+			in.close();
+		}
+
+		return changes;
+	}
+
+	static void decodeLastChange(String lastChange, List<DLNALastChange> changes) throws XmlPullParserException, IOException {
+		if (lastChange == null || lastChange.length() == 0)
+			return;
+
+		XmlPullParser parser = Xml.newPullParser();
+		parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+		parser.setInput(new StringReader(lastChange));
+
+		DLNALastChange current = null;
+		int eventType = parser.getEventType();
+
+		while (eventType != XmlPullParser.END_DOCUMENT) {
+			if (eventType == XmlPullParser.START_TAG) {
+				String name = DLNAMediaInfoParser.localName(parser.getName());
+
+				if ("InstanceID".equals(name)) {
+					current = new DLNALastChange(parser.getAttributeValue(null, "val"));
+					changes.add(current);
+				} else if ("QueueID".equals(name)) {
+					// queue events are not used
+					current = null;
+				} else if (current != null && parser.getDepth() == 3) {
+					setVariable(current, name, parser.getAttributeValue(null, "val"), parser.getAttributeValue(null, "channel"));
+				}
+			} else if (eventType == XmlPullParser.END_TAG && parser.getDepth() == 2) {
+				current = null;
+			}
+
+			eventType = parser.next();
+		}
+	}
+
+	private static void setVariable(DLNALastChange change, String name, String value, String channel) {
+		if (value == null)
+			return;
+
+		if (channel == null)
+			channel = DLNALastChange.MASTER_CHANNEL;
+
+		if ("TransportState".equals(name)) {
+			change.transportState = value;
+		} else if ("CurrentTrackURI".equals(name)) {
+			change.currentTrackURI = value;
+		} else if ("CurrentTrackMetaData".equals(name)) {
+			change.currentTrackMetaData = value;
+		} else if ("Volume".equals(name)) {
+			try {
+				change.volumes.put(channel, Integer.parseInt(value.trim()));
+			} catch (NumberFormatException e) {
+				// not a volume, ignore it
+			}
+		} else if ("Mute".equals(name)) {
+			value = value.trim();
+			change.mutes.put(channel, "1".equals(value) || "true".equalsIgnoreCase(value));
+		}
+	}
+}
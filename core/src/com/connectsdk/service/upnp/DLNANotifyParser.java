@@ -13,6 +13,14 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import android.util.Xml;
 
+/**
+ * Parses the propertyset of a GENA NOTIFY into JSON.
+ *
+ * @deprecated DLNAHttpServer no longer uses this class. Use
+ * {@link DLNANotifyDecoder#decode(InputStream)}, which reads the LastChange
+ * state variables straight into DLNALastChange records.
+ */
+@Deprecated
 public class DLNANotifyParser {
 	private static final String ns = null;
 	
@@ -0,0 +1,135 @@
+package com.connectsdk.service.upnp;
+
+import com.connectsdk.core.MediaInfo;
+
+/**
+ * Decoded GetPositionInfo response.
+ *
+ * The response is decoded once and shared by everyone who asked for it; the
+ * track metadata is only turned into a MediaInfo on first use.
+ */
+public class DLNAPositionInfo {
+	private final long duration;
+	private final long position;
+	private final String trackURI;
+	private final String trackMetaData;
+
+	private MediaInfo mediaInfo;
+	private boolean mediaInfoParsed = false;
+
+	public DLNAPositionInfo(long duration, long position, String trackURI, String trackMetaData) {
+		this.duration = duration;
+		this.position = position;
+		this.trackURI = trackURI;
+		this.trackMetaData = trackMetaData;
+	}
+
+	public static DLNAPositionInfo parse(String response) {
+		DLNASoapResponse values = DLNASoapResponse.parse(response, "TrackDuration", "RelTime", "TrackURI", "TrackMetaData");
+
+		return new DLNAPositionInfo(
+				values.getTime("TrackDuration"),
+				values.getTime("RelTime"),
+				values.getString("TrackURI"),
+				values.getString("TrackMetaData"));
+	}
+
+	/**
+	 * @return the track duration in milliseconds, or 0 if the renderer does
+	 * not know it (yet)
+	 */
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return the position in the track in milliseconds
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	public String getTrackURI() {
+		return trackURI;
+	}
+
+	public String getTrackMetaData() {
+		return trackMetaData;
+	}
+
+	public synchronized MediaInfo getMediaInfo() {
+		if (!mediaInfoParsed) {
+			mediaInfoParsed = true;
+
+			if (trackMetaData != null)
+				mediaInfo = DLNAMediaInfoParser.getMediaInfo(trackMetaData);
+		}
+
+		return mediaInfo;
+	}
+
+	/**
+	 * @return true if the current track is an image, which has no duration
+	 */
+	public boolean isImage() {
+		MediaInfo info = getMediaInfo();
+
+		return info != null && info.getMimeType() != null && info.getMimeType().contains("image");
+	}
+
+	/**
+	 * Converts an H+:MM:SS[.F+] time to milliseconds. Anything else, such as
+	 * NOT_IMPLEMENTED, is 0.
+	 */
+	static long parseTime(String time) {
+		if (time == null)
+			return 0;
+
+		long seconds = 0;
+		long millis = 0;
+		int fields = 0;
+		int i = 0;
+		int length = time.length();
+
+		while (i < length) {
+			long value = 0;
+			int start = i;
+
+			while (i < length && Character.isDigit(time.charAt(i))) {
+				value = value * 10 + (time.charAt(i) - '0');
+				i++;
+			}
+
+			if (i == start)
+				return 0;
+
+			seconds = seconds * 60 + value;
+			fields++;
+
+			if (i == length)
+				break;
+
+			char c = time.charAt(i++);
+
+			if (c == '.') {
+				// fraction of a second
+				long scale = 100;
+
+				while (i < length && Character.isDigit(time.charAt(i))) {
+					millis += (time.charAt(i) - '0') * scale;
+					scale /= 10;
+					i++;
+				}
+
+				break;
+			} else if (c != ':') {
+				return 0;
+			}
+		}
+
+		if (fields == 0)
+			return 0;
+
+		return seconds * 1000 + millis;
+	}
+}
@@ -0,0 +1,141 @@
+package com.connectsdk.service.upnp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Precompiled SOAP request envelope for one UPnP action.
+ *
+ * Everything up to the InstanceID value and everything after the last
+ * argument is built once per action, so a request only appends the instance
+ * id and the argument elements. Argument values are XML escaped, which also
+ * makes nested documents such as DIDL-Lite metadata safe to pass as a value.
+ */
+public final class DLNASoapEnvelope {
+	private static final Map<String, DLNASoapEnvelope> envelopes = new HashMap<String, DLNASoapEnvelope>();
+
+	private final String prefix;
+	private final String suffix;
+
+	private DLNASoapEnvelope(String serviceURN, String action) {
+		prefix = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+				+ "<s:Envelope s:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\" xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+				+ "<s:Body>"
+				+ "<u:" + action + " xmlns:u=\"" + serviceURN + "\">"
+				+ "<InstanceID>";
+		suffix = "</u:" + action + ">"
+				+ "</s:Body>"
+				+ "</s:Envelope>";
+	}
+
+	public static DLNASoapEnvelope forAction(String serviceURN, String action) {
+		String key = serviceURN + "#" + action;
+
+		synchronized (envelopes) {
+			DLNASoapEnvelope envelope = envelopes.get(key);
+
+			if (envelope == null) {
+				envelope = new DLNASoapEnvelope(serviceURN, action);
+				envelopes.put(key, envelope);
+			}
+
+			return envelope;
+		}
+	}
+
+	/**
+	 * Builds the request.
+	 *
+	 * @param arguments argument names and values, alternating, in the order
+	 * the action defines them
+	 */
+	public String build(String instanceId, String... arguments) {
+		if (arguments.length % 2 != 0)
+			throw new IllegalArgumentException("arguments must be name/value pairs");
+
+		int length = prefix.length() + suffix.length() + 32;
+
+		for (String argument : arguments) {
+			length += argument != null ? argument.length() * 2 : 0;
+		}
+
+		StringBuilder sb = new StringBuilder(length);
+		sb.append(prefix);
+		appendEscaped(sb, instanceId);
+		sb.append("</InstanceID>");
+
+		for (int i = 0; i < arguments.length; i += 2) {
+			appendArgument(sb, arguments[i], arguments[i + 1]);
+		}
+
+		sb.append(suffix);
+
+		return sb.toString();
+	}
+
+	/**
+	 * Builds the request from a map of arguments, in the map's iteration
+	 * order.
+	 */
+	public String build(String instanceId, Map<String, String> arguments) {
+		StringBuilder sb = new StringBuilder(prefix.length() + suffix.length() + 256);
+		sb.append(prefix);
+		appendEscaped(sb, instanceId);
+		sb.append("</InstanceID>");
+
+		if (arguments != null) {
+			for (Map.Entry<String, String> entry : arguments.entrySet()) {
+				appendArgument(sb, entry.getKey(), entry.getValue());
+			}
+		}
+
+		sb.append(suffix);
+
+		return sb.toString();
+	}
+
+	private static void appendArgument(StringBuilder sb, String name, String value) {
+		sb.append('<').append(name).append('>');
+		appendEscaped(sb, value);
+		sb.append("</").append(name).append('>');
+	}
+
+	public static String escape(String value) {
+		if (value == null)
+			return "";
+
+		StringBuilder sb = new StringBuilder(value.length() + 16);
+		appendEscaped(sb, value);
+
+		return sb.toString();
+	}
+
+	public static void appendEscaped(StringBuilder sb, String value) {
+		if (value == null)
+			return;
+
+		int length = value.length();
+
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+
+			switch (c) {
+			case '&':
+				sb.append("&amp;");
+				break;
+			case '<':
+				sb.append("&lt;");
+				break;
+			case '>':
+				sb.append("&gt;");
+				break;
+			case '"':
+				sb.append("&quot;");
+				break;
+			default:
+				sb.append(c);
+				break;
+			}
+		}
+	}
+}
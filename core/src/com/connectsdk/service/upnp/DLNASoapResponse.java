@@ -0,0 +1,145 @@
+package com.connectsdk.service.upnp;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import android.util.Xml;
+
+/**
+ * Values of a SOAP action response, decoded in a single pass of a pull
+ * parser.
+ *
+ * Only the requested output arguments are kept; entities are resolved, so a
+ * value like TrackMetaData comes out as the DIDL-Lite document itself. A
+ * SOAP fault is decoded into its UPnP errorCode and errorDescription.
+ */
+public class DLNASoapResponse {
+	private final Map<String, String> values = new HashMap<String, String>();
+
+	private boolean fault = false;
+	private int errorCode = 0;
+	private String errorDescription;
+
+	private DLNASoapResponse() { }
+
+	/**
+	 * @param fields names of the output arguments to decode
+	 */
+	public static DLNASoapResponse parse(String response, String... fields) {
+		DLNASoapResponse result = new DLNASoapResponse();
+
+		if (response == null)
+			return result;
+
+		int remaining = fields.length;
+		XmlPullParser parser = Xml.newPullParser();
+
+		try {
+			parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+			parser.setInput(new StringReader(response));
+
+			int eventType = parser.getEventType();
+
+			while (eventType != XmlPullParser.END_DOCUMENT) {
+				if (eventType == XmlPullParser.START_TAG) {
+					String name = parser.getName();
+
+					if ("Fault".equals(name)) {
+						result.fault = true;
+					} else if (result.fault && "errorCode".equals(name)) {
+						try {
+							result.errorCode = Integer.parseInt(parser.nextText().trim());
+						} catch (NumberFormatException e) {
+							// leave it at 0
+						}
+					} else if (result.fault && "errorDescription".equals(name)) {
+						result.errorDescription = parser.nextText();
+					} else if (!result.fault && contains(fields, name) && !result.values.containsKey(name)) {
+						result.values.put(name, parser.nextText());
+
+						// everything asked for has been found
+						if (--remaining == 0)
+							break;
+					}
+				}
+
+				eventType = parser.next();
+			}
+		} catch (XmlPullParserException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return the value of field, or null if the response did not contain it
+	 */
+	public String getString(String field) {
+		return values.get(field);
+	}
+
+	public int getInt(String field, int defaultValue) {
+		String value = values.get(field);
+
+		if (value == null)
+			return defaultValue;
+
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Decodes UPnP booleans, which may be 0/1 as well as true/false.
+	 */
+	public boolean getBoolean(String field) {
+		String value = values.get(field);
+
+		if (value == null)
+			return false;
+
+		value = value.trim();
+
+		return "1".equals(value) || "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+	}
+
+	/**
+	 * Decodes an H+:MM:SS[.F+] time value.
+	 *
+	 * @return the time in milliseconds, or 0 if it is missing or not a time
+	 */
+	public long getTime(String field) {
+		return DLNAPositionInfo.parseTime(values.get(field));
+	}
+
+	public boolean isFault() {
+		return fault;
+	}
+
+	public int getErrorCode() {
+		return errorCode;
+	}
+
+	public String getErrorDescription() {
+		return errorDescription;
+	}
+
+	private static boolean contains(String[] fields, String name) {
+		for (String field : fields) {
+			if (field.equals(name))
+				return true;
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,509 @@
+package com.connectsdk.service.upnp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.message.BasicHttpRequest;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.connectsdk.core.Util;
+import com.connectsdk.core.upnp.service.Service;
+
+/**
+ * Keeps GENA event subscriptions to a renderer's services alive.
+ *
+ * The services are subscribed to in parallel. Each subscription is renewed
+ * shortly before the timeout the renderer actually granted runs out, rather
+ * than on a fixed schedule. A renewal the renderer rejects with 412
+ * Precondition Failed (it no longer knows the SID) is replaced by a new
+ * subscription; other failures are retried with backoff, and a subscription
+ * that has expired in the meantime is also started over.
+ */
+public class DLNASubscriptionManager {
+	public static final String SUBSCRIBE = "SUBSCRIBE";
+	public static final String UNSUBSCRIBE = "UNSUBSCRIBE";
+
+	/** Timeout asked for, in seconds; the renderer may grant less */
+	public static final int DEFAULT_TIMEOUT = 300;
+
+	// renew this long before expiry, but at most a quarter of the timeout early
+	static final long RENEWAL_MARGIN = 30 * 1000;
+	static final long MIN_RENEWAL_DELAY = 1000;
+
+	static final long RETRY_DELAY = 2000;
+	static final long MAX_RETRY_DELAY = 60 * 1000;
+
+	// services whose events DLNAService uses
+	private static final String[] EVENTED_SERVICES = { "AVTransport", "RenderingControl" };
+
+	private final HttpClient httpClient;
+	private final DLNAHttpServer httpServer;
+
+	private final Map<String, Subscription> subscriptions = new LinkedHashMap<String, Subscription>();
+
+	private HttpHost host;
+	private String localAddress;
+	private int timeout = DEFAULT_TIMEOUT;
+
+	private Timer timer;
+
+	// incremented on every start and stop, so late responses from an earlier
+	// run are ignored
+	private int generation = 0;
+
+	/** State of one service's subscription */
+	private class Subscription {
+		final Service service;
+		final int generation;
+
+		String sid;
+		long expiry;
+		int grantedTimeout;
+		int failures = 0;
+		TimerTask task;
+
+		Subscription(Service service, int generation) {
+			this.service = service;
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * Snapshot of a subscription, as returned by getStatus()
+	 */
+	public static class SubscriptionStatus {
+		private final String serviceType;
+		private final String sid;
+		private final long remaining;
+		private final int grantedTimeout;
+		private final int failures;
+
+		SubscriptionStatus(String serviceType, String sid, long remaining, int grantedTimeout, int failures) {
+			this.serviceType = serviceType;
+			this.sid = sid;
+			this.remaining = remaining;
+			this.grantedTimeout = grantedTimeout;
+			this.failures = failures;
+		}
+
+		public String getServiceType() {
+			return serviceType;
+		}
+
+		/** @return the SID, or null if the service is not subscribed to */
+		public String getSID() {
+			return sid;
+		}
+
+		/** @return true if there is a subscription that has not expired */
+		public boolean isActive() {
+			return sid != null && remaining > 0;
+		}
+
+		/** @return milliseconds until expiry, or Long.MAX_VALUE for an infinite subscription */
+		public long getRemainingTime() {
+			return remaining;
+		}
+
+		/** @return the timeout granted by the renderer in seconds, or -1 for infinite */
+		public int getGrantedTimeout() {
+			return grantedTimeout;
+		}
+
+		/** @return the number of failed attempts since the last success */
+		public int getFailureCount() {
+			return failures;
+		}
+	}
+
+	public DLNASubscriptionManager(HttpClient httpClient, DLNAHttpServer httpServer) {
+		this.httpClient = httpClient;
+		this.httpServer = httpServer;
+	}
+
+	/**
+	 * Sets the timeout to ask for, in seconds
+	 */
+	public synchronized void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Subscribes to the evented services in services, all at once. Any
+	 * previous subscriptions are dropped first.
+	 *
+	 * @param localAddress address of this device, for the callback URL
+	 */
+	public void start(HttpHost host, String localAddress, List<Service> services) {
+		List<Subscription> started = new ArrayList<Subscription>();
+
+		synchronized (this) {
+			cancelAll();
+			generation++;
+
+			this.host = host;
+			this.localAddress = localAddress;
+
+			if (services != null) {
+				for (Service service : selectServices(services)) {
+					Subscription subscription = new Subscription(service, generation);
+					subscriptions.put(service.serviceType, subscription);
+					started.add(subscription);
+				}
+			}
+		}
+
+		for (final Subscription subscription : started) {
+			Util.runInBackground(new Runnable() {
+
+				@Override
+				public void run() {
+					subscribe(subscription);
+				}
+			}, true);
+		}
+	}
+
+	/**
+	 * Renews all subscriptions now, instead of waiting for their renewal
+	 * time.
+	 */
+	public void renewAll() {
+		List<Subscription> current;
+
+		synchronized (this) {
+			current = new ArrayList<Subscription>(subscriptions.values());
+		}
+
+		for (Subscription subscription : current) {
+			schedule(subscription, 0);
+		}
+	}
+
+	/**
+	 * Cancels renewals and unsubscribes from all services.
+	 */
+	public void stop() {
+		final List<Subscription> stopped;
+		final HttpHost host;
+
+		synchronized (this) {
+			stopped = new ArrayList<Subscription>(subscriptions.values());
+			host = this.host;
+
+			cancelAll();
+			generation++;
+
+			if (timer != null) {
+				timer.cancel();
+				timer = null;
+			}
+		}
+
+		for (final Subscription subscription : stopped) {
+			if (subscription.sid == null)
+				continue;
+
+			Util.runInBackground(new Runnable() {
+
+				@Override
+				public void run() {
+					BasicHttpRequest request = new BasicHttpRequest(UNSUBSCRIBE, subscription.service.eventSubURL);
+					request.setHeader("SID", subscription.sid);
+
+					execute(host, request);
+				}
+			}, true);
+		}
+	}
+
+	/**
+	 * @return true if every service is subscribed to and no subscription has
+	 * expired
+	 */
+	public synchronized boolean isHealthy() {
+		if (subscriptions.isEmpty())
+			return false;
+
+		long now = SystemClock.elapsedRealtime();
+
+		for (Subscription subscription : subscriptions.values()) {
+			if (subscription.sid == null || subscription.expiry <= now)
+				return false;
+		}
+
+		return true;
+	}
+
+	public synchronized List<SubscriptionStatus> getStatus() {
+		List<SubscriptionStatus> status = new ArrayList<SubscriptionStatus>();
+		long now = SystemClock.elapsedRealtime();
+
+		for (Subscription subscription : subscriptions.values()) {
+			long remaining;
+
+			if (subscription.sid == null)
+				remaining = 0;
+			else if (subscription.grantedTimeout < 0)
+				remaining = Long.MAX_VALUE;
+			else
+				remaining = Math.max(0, subscription.expiry - now);
+
+			status.add(new SubscriptionStatus(subscription.service.serviceType, subscription.sid, remaining, subscription.grantedTimeout, subscription.failures));
+		}
+
+		return status;
+	}
+
+	/**
+	 * @return the SID of the subscription to serviceType, or null
+	 */
+	public synchronized String getSID(String serviceType) {
+		Subscription subscription = subscriptions.get(serviceType);
+
+		return subscription != null ? subscription.sid : null;
+	}
+
+	private void subscribe(Subscription subscription) {
+		HttpHost host;
+		String callback;
+		int timeout;
+
+		synchronized (this) {
+			if (!isCurrent(subscription))
+				return;
+
+			host = this.host;
+			timeout = this.timeout;
+			callback = "<http://" + localAddress + ":" + httpServer.getPort() + httpServer.getCallbackPath(subscription.service.eventSubURL) + ">";
+		}
+
+		BasicHttpRequest request = new BasicHttpRequest(SUBSCRIBE, subscription.service.eventSubURL);
+		request.setHeader("CALLBACK", callback);
+		request.setHeader("NT", "upnp:event");
+		request.setHeader("TIMEOUT", "Second-" + timeout);
+		request.setHeader("Connection", "close");
+		request.setHeader("Content-length", "0");
+		request.setHeader("USER-AGENT", "Android UPnp/1.1 ConnectSDK");
+
+		HttpResponse response = execute(host, request);
+		Header sid = response != null ? response.getFirstHeader("SID") : null;
+
+		if (response != null && response.getStatusLine().getStatusCode() == 200 && sid != null) {
+			subscribed(subscription, sid.getValue(), response);
+		} else {
+			failed(subscription);
+		}
+	}
+
+	private void renew(Subscription subscription) {
+		HttpHost host;
+		String sid;
+		int timeout;
+
+		synchronized (this) {
+			if (!isCurrent(subscription))
+				return;
+
+			host = this.host;
+			sid = subscription.sid;
+			timeout = this.timeout;
+		}
+
+		if (sid == null) {
+			subscribe(subscription);
+			return;
+		}
+
+		BasicHttpRequest request = new BasicHttpRequest(SUBSCRIBE, subscription.service.eventSubURL);
+		request.setHeader("SID", sid);
+		request.setHeader("TIMEOUT", "Second-" + timeout);
+
+		HttpResponse response = execute(host, request);
+		int code = response != null ? response.getStatusLine().getStatusCode() : 0;
+
+		if (code == 200) {
+			Header newSid = response.getFirstHeader("SID");
+			subscribed(subscription, newSid != null ? newSid.getValue() : sid, response);
+		} else if (code == 412) {
+			// the renderer dropped the subscription, so start over
+			Log.w(Util.T, "subscription to " + subscription.service.serviceType + " was lost, subscribing again");
+
+			synchronized (this) {
+				subscription.sid = null;
+			}
+
+			subscribe(subscription);
+		} else {
+			failed(subscription);
+		}
+	}
+
+	private void subscribed(Subscription subscription, String sid, HttpResponse response) {
+		synchronized (this) {
+			if (!isCurrent(subscription))
+				return;
+
+			int granted = parseTimeout(response.getFirstHeader("TIMEOUT"), timeout);
+
+			subscription.sid = sid;
+			subscription.grantedTimeout = granted;
+			subscription.failures = 0;
+
+			if (granted < 0) {
+				// infinite, nothing to renew
+				subscription.expiry = Long.MAX_VALUE;
+				return;
+			}
+
+			long timeoutMillis = granted * 1000L;
+			subscription.expiry = SystemClock.elapsedRealtime() + timeoutMillis;
+
+			long delay = timeoutMillis - Math.min(RENEWAL_MARGIN, timeoutMillis / 4);
+			schedule(subscription, Math.max(MIN_RENEWAL_DELAY, delay));
+		}
+	}
+
+	private void failed(Subscription subscription) {
+		synchronized (this) {
+			if (!isCurrent(subscription))
+				return;
+
+			subscription.failures++;
+
+			// an expired SID cannot be renewed any more
+			if (subscription.sid != null && subscription.expiry <= SystemClock.elapsedRealtime())
+				subscription.sid = null;
+
+			long delay = RETRY_DELAY << Math.min(subscription.failures - 1, 5);
+			schedule(subscription, Math.min(delay, MAX_RETRY_DELAY));
+		}
+	}
+
+	private synchronized void schedule(final Subscription subscription, long delay) {
+		if (!isCurrent(subscription))
+			return;
+
+		if (subscription.task != null)
+			subscription.task.cancel();
+
+		subscription.task = new TimerTask() {
+
+			@Override
+			public void run() {
+				Util.runInBackground(new Runnable() {
+
+					@Override
+					public void run() {
+						renew(subscription);
+					}
+				}, true);
+			}
+		};
+
+		if (timer == null)
+			timer = new Timer("DLNASubscriptionManager", true);
+
+		timer.schedule(subscription.task, delay);
+	}
+
+	private boolean isCurrent(Subscription subscription) {
+		return subscription.generation == generation && subscriptions.get(subscription.service.serviceType) == subscription;
+	}
+
+	private void cancelAll() {
+		for (Subscription subscription : subscriptions.values()) {
+			if (subscription.task != null)
+				subscription.task.cancel();
+		}
+
+		subscriptions.clear();
+	}
+
+	private HttpResponse execute(HttpHost host, BasicHttpRequest request) {
+		HttpResponse response = null;
+
+		try {
+			response = httpClient.execute(host, request);
+
+			if (response.getEntity() != null)
+				response.getEntity().consumeContent();
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+
+		return response;
+	}
+
+	/**
+	 * Picks the services whose events are used, or all of them if none of
+	 * those are found.
+	 */
+	private static List<Service> selectServices(List<Service> services) {
+		List<Service> selected = new ArrayList<Service>();
+
+		for (Service service : services) {
+			if (service.serviceType == null || service.eventSubURL == null)
+				continue;
+
+			for (String name : EVENTED_SERVICES) {
+				if (service.serviceType.contains(name)) {
+					selected.add(service);
+					break;
+				}
+			}
+		}
+
+		if (selected.isEmpty()) {
+			for (Service service : services) {
+				if (service.serviceType != null && service.eventSubURL != null)
+					selected.add(service);
+			}
+		}
+
+		return selected;
+	}
+
+	/**
+	 * Parses a "Second-N" or "Second-infinite" TIMEOUT header.
+	 *
+	 * @return the timeout in seconds, -1 for infinite, or requested if the
+	 * header is missing or malformed
+	 */
+	static int parseTimeout(Header header, int requested) {
+		if (header == null)
+			return requested;
+
+		String value = header.getValue().trim().toLowerCase(Locale.US);
+
+		if (!value.startsWith("second-"))
+			return requested;
+
+		value = value.substring("second-".length());
+
+		if ("infinite".equals(value))
+			return -1;
+
+		try {
+			int seconds = Integer.parseInt(value);
+
+			return seconds > 0 ? seconds : requested;
+		} catch (NumberFormatException e) {
+			return requested;
+		}
+	}
+}
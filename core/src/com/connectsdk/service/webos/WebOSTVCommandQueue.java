@@ -0,0 +1,268 @@
+/*
+ * WebOSTVCommandQueue
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.webos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.connectsdk.core.Util;
+import com.connectsdk.service.command.ServiceCommand;
+import com.connectsdk.service.command.ServiceCommandError;
+
+/**
+ * Bounded queue for commands issued before the socket has registered.
+ *
+ * Commands are taken out by priority (input and power first, bulk queries
+ * last) and in order within a priority. Queuing a request to a superseding URI
+ * such as setVolume replaces an earlier queued request to the same URI. When
+ * the queue is full, the overflow policy decides which command is dropped.
+ * Dropped commands are failed with an error.
+ */
+public class WebOSTVCommandQueue {
+	public static final int DEFAULT_CAPACITY = 64;
+
+	public enum Priority {
+		HIGH,
+		NORMAL,
+		LOW
+	};
+
+	public enum OverflowPolicy {
+		/** Fails the command being queued */
+		REJECT_NEW,
+		/** Drops the oldest command of the lowest priority, unless it ranks above the new one */
+		DROP_LOWEST_PRIORITY
+	};
+
+	static final String IME_PREFIX = "ssap://com.webos.service.ime/";
+
+	private int capacity = DEFAULT_CAPACITY;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_LOWEST_PRIORITY;
+
+	private final Map<String, Priority> priorities = new HashMap<String, Priority>();
+	private final Set<String> supersedingURIs = new HashSet<String>();
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private final LinkedList<ServiceCommand<?>>[] queues = new LinkedList[Priority.values().length];
+	private int size = 0;
+
+	public WebOSTVCommandQueue() {
+		for (int i = 0; i < queues.length; i++) {
+			queues[i] = new LinkedList<ServiceCommand<?>>();
+		}
+
+		setPriority("ssap://system/turnOff", Priority.HIGH);
+		setPriority("ssap://com.webos.service.networkinput/getPointerInputSocket", Priority.HIGH);
+		setPriority("ssap://audio/volumeUp", Priority.HIGH);
+		setPriority("ssap://audio/volumeDown", Priority.HIGH);
+		setPriority("ssap://audio/setVolume", Priority.HIGH);
+		setPriority("ssap://audio/setMute", Priority.HIGH);
+		setPriority("ssap://media.controls/play", Priority.HIGH);
+		setPriority("ssap://media.controls/pause", Priority.HIGH);
+		setPriority("ssap://media.controls/stop", Priority.HIGH);
+		setPriority("ssap://media.controls/rewind", Priority.HIGH);
+		setPriority("ssap://media.controls/fastForward", Priority.HIGH);
+		setPriority("ssap://tv/channelUp", Priority.HIGH);
+		setPriority("ssap://tv/channelDown", Priority.HIGH);
+
+		setPriority(WebOSTVResponseCache.APP_LIST, Priority.LOW);
+		setPriority(WebOSTVResponseCache.LAUNCH_POINTS, Priority.LOW);
+		setPriority(WebOSTVResponseCache.EXTERNAL_INPUT_LIST, Priority.LOW);
+		setPriority(WebOSTVResponseCache.CHANNEL_LIST, Priority.LOW);
+		setPriority(WebOSTVResponseCache.SERVICE_LIST, Priority.LOW);
+		setPriority(WebOSTVResponseCache.SYSTEM_INFO, Priority.LOW);
+
+		addSupersedingURI("ssap://audio/setVolume");
+		addSupersedingURI("ssap://audio/setMute");
+		addSupersedingURI("ssap://tv/openChannel");
+		addSupersedingURI("ssap://tv/switchInput");
+	}
+
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized void setCapacity(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be positive");
+
+		this.capacity = capacity;
+	}
+
+	public synchronized OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public synchronized void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public synchronized void setPriority(String uri, Priority priority) {
+		priorities.put(uri, priority);
+	}
+
+	/**
+	 * Only the latest queued request to uri is kept; earlier ones are failed
+	 * as superseded.
+	 */
+	public synchronized void addSupersedingURI(String uri) {
+		supersedingURIs.add(uri);
+	}
+
+	public synchronized Priority getPriority(ServiceCommand<?> command) {
+		String uri = command.getTarget();
+
+		if (uri == null)
+			return Priority.NORMAL;
+
+		Priority priority = priorities.get(uri);
+
+		if (priority != null)
+			return priority;
+
+		if (uri.startsWith(IME_PREFIX))
+			return Priority.HIGH;
+
+		return Priority.NORMAL;
+	}
+
+	/**
+	 * Queues a command, failing any command it supersedes or that has to make
+	 * room for it.
+	 *
+	 * @return the commands that were dropped, possibly including command
+	 * itself; the caller has to forget about them
+	 */
+	public synchronized List<ServiceCommand<?>> offer(ServiceCommand<?> command) {
+		List<ServiceCommand<?>> dropped = new ArrayList<ServiceCommand<?>>();
+
+		if (contains(command))
+			return dropped;
+
+		Priority priority = getPriority(command);
+
+		if (ServiceCommand.TYPE_REQ.equals(command.getHttpMethod()) && supersedingURIs.contains(command.getTarget())) {
+			Iterator<ServiceCommand<?>> iterator = queues[priority.ordinal()].iterator();
+
+			while (iterator.hasNext()) {
+				ServiceCommand<?> queued = iterator.next();
+
+				if (command.getTarget().equals(queued.getTarget()) && ServiceCommand.TYPE_REQ.equals(queued.getHttpMethod())) {
+					iterator.remove();
+					size--;
+					dropped.add(queued);
+					Util.postError(queued.getResponseListener(), new ServiceCommandError(0, "superseded by a later command", null));
+				}
+			}
+		}
+
+		if (size >= capacity) {
+			ServiceCommand<?> victim = null;
+
+			if (overflowPolicy == OverflowPolicy.DROP_LOWEST_PRIORITY) {
+				for (int i = queues.length - 1; i >= priority.ordinal(); i--) {
+					if (!queues[i].isEmpty()) {
+						victim = queues[i].removeFirst();
+						size--;
+						break;
+					}
+				}
+			}
+
+			if (victim == null)
+				victim = command;
+
+			dropped.add(victim);
+			Util.postError(victim.getResponseListener(), new ServiceCommandError(0, "command queue is full", null));
+
+			if (victim == command)
+				return dropped;
+		}
+
+		queues[priority.ordinal()].addLast(command);
+		size++;
+
+		return dropped;
+	}
+
+	/**
+	 * @return the next command by priority, or null if the queue is empty
+	 */
+	public synchronized ServiceCommand<?> poll() {
+		for (LinkedList<ServiceCommand<?>> queue : queues) {
+			if (!queue.isEmpty()) {
+				size--;
+				return queue.removeFirst();
+			}
+		}
+
+		return null;
+	}
+
+	public synchronized boolean remove(ServiceCommand<?> command) {
+		for (LinkedList<ServiceCommand<?>> queue : queues) {
+			if (queue.remove(command)) {
+				size--;
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	public synchronized boolean contains(ServiceCommand<?> command) {
+		for (LinkedList<ServiceCommand<?>> queue : queues) {
+			if (queue.contains(command))
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Removes and returns all queued commands, in the order poll() would.
+	 */
+	public synchronized List<ServiceCommand<?>> drain() {
+		List<ServiceCommand<?>> commands = new ArrayList<ServiceCommand<?>>(size);
+
+		for (LinkedList<ServiceCommand<?>> queue : queues) {
+			commands.addAll(queue);
+			queue.clear();
+		}
+
+		size = 0;
+
+		return commands;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	public synchronized boolean isEmpty() {
+		return size == 0;
+	}
+}
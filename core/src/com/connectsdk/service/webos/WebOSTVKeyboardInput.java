@@ -20,8 +20,7 @@
 
 package com.connectsdk.service.webos;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -39,89 +38,164 @@ public class WebOSTVKeyboardInput {
 	
 	WebOSTVService service;
 	boolean waiting;
-	List<String> toSend;
+	
+	// pending input, merged into insert/delete/enter runs; guarded by itself
+	final ArrayDeque<Input> toSend;
 	
 	static String KEYBOARD_INPUT = "ssap://com.webos.service.ime/registerRemoteKeyboard";
 	static String ENTER = "ENTER";
 	static String DELETE = "DELETE";
 	
+	// longest text sent in one insertText request; longer pastes are split
+	static int MAX_TEXT_LENGTH = 256;
+	
     boolean canReplaceText = false;
     
+    static class Input {
+    	final String type;
+    	final StringBuilder text;
+    	int count;
+    	
+    	Input(String type) {
+    		this.type = type;
+    		this.text = type == null ? new StringBuilder() : null;
+    	}
+    	
+    	boolean isText() {
+    		return type == null;
+    	}
+    }
+    
     public WebOSTVKeyboardInput(WebOSTVService service) {
 		this.service = service;
 		waiting = false;
 
-		toSend = new ArrayList<String>();
+		toSend = new ArrayDeque<Input>();
 	}
 	
 	public void addToQueue(String input) {
-		toSend.add(input);
-		if ( !waiting ) {
-			sendData();
+		if (input == null || input.length() == 0)
+			return;
+		
+		synchronized (toSend) {
+			Input last = toSend.peekLast();
+			
+			if (last == null || !last.isText()) {
+				last = new Input(null);
+				toSend.addLast(last);
+			}
+			
+			last.text.append(input);
 		}
+		
+		sendDataIfIdle();
 	}
 	
 	public void sendEnter() {
-		toSend.add(ENTER);
-		if ( !waiting ) {
-			sendData();
+		synchronized (toSend) {
+			toSend.addLast(new Input(ENTER));
 		}
+		
+		sendDataIfIdle();
 	}
 	
 	public void sendDel() {
-		if ( toSend.size() == 0 ) {
-			toSend.add(DELETE);
-			if (!waiting) {
-				sendData();
+		synchronized (toSend) {
+			Input last = toSend.peekLast();
+			
+			if (last != null && last.isText()) {
+				// the character has not been sent yet, so just drop it
+				int length = last.text.length();
+				int remove = 1;
+				
+				if (length > 1 && Character.isLowSurrogate(last.text.charAt(length - 1))
+						&& Character.isHighSurrogate(last.text.charAt(length - 2)))
+					remove = 2;
+				
+				last.text.setLength(length - remove);
+				
+				if (last.text.length() == 0)
+					toSend.removeLast();
+				
+				return;
+			}
+			
+			if (last != null && last.type.equals(DELETE)) {
+				last.count++;
+			}
+			else {
+				Input delete = new Input(DELETE);
+				delete.count = 1;
+				toSend.addLast(delete);
 			}
 		}
-		else {
-			toSend.remove(toSend.size()-1);
+		
+		sendDataIfIdle();
+	}
+	
+	private void sendDataIfIdle() {
+		synchronized (toSend) {
+			if (waiting || toSend.isEmpty())
+				return;
+			
+			waiting = true;
 		}
+		
+		sendData();
 	}
 	
 	private void sendData() {
-		waiting = true;
-		
 		String uri;
-		String typeTest = toSend.get(0);
-
 		JSONObject payload = new JSONObject();
-
-		if ( typeTest.equals(ENTER) ) {
-			toSend.remove(0);
-			uri = "ssap://com.webos.service.ime/sendEnterKey";
-		}
-		else if ( typeTest.equals(DELETE) ) {
-			uri = "ssap://com.webos.service.ime/deleteCharacters";
+		
+		synchronized (toSend) {
+			Input input = toSend.peekFirst();
 			
-			int count = 0;
-			while ( toSend.size() > 0 && toSend.get(0).equals(DELETE) ) {
-				toSend.remove(0);
-				count++;
+			if (input == null) {
+				waiting = false;
+				return;
 			}
 			
-			try {
-				payload.put("count", count);
-			} catch (JSONException e) {
-				e.printStackTrace();
+			if (input.isText()) {
+				uri = "ssap://com.webos.service.ime/insertText";
+				
+				String text;
+				int length = input.text.length();
+				
+				if (length > MAX_TEXT_LENGTH) {
+					int end = MAX_TEXT_LENGTH;
+					
+					if (Character.isHighSurrogate(input.text.charAt(end - 1)))
+						end--;
+					
+					text = input.text.substring(0, end);
+					input.text.delete(0, end);
+				}
+				else {
+					text = input.text.toString();
+					toSend.removeFirst();
+				}
+				
+				try {
+					payload.put("text", text);
+					payload.put("replace", 0);
+				} catch (JSONException e) {
+					e.printStackTrace();
+				}
 			}
-		}
-		else {
-			uri = "ssap://com.webos.service.ime/insertText";
-			StringBuilder sb = new StringBuilder();
-
-			while ( toSend.size() > 0 && !(toSend.get(0).equals(DELETE) || toSend.get(0).equals(ENTER)) ) {
-				String text = toSend.get(0);
-				sb.append(text);
-				toSend.remove(0);
+			else if (input.type.equals(DELETE)) {
+				uri = "ssap://com.webos.service.ime/deleteCharacters";
+				toSend.removeFirst();
+				
+				try {
+					payload.put("count", input.count);
+				} catch (JSONException e) {
+					e.printStackTrace();
+				}
 			}
-		
-			try {
-				payload.put("text", sb.toString());
-				payload.put("replace", 0);
-			} catch (JSONException e) {
-				e.printStackTrace();
+			else {
+				uri = "ssap://com.webos.service.ime/sendEnterKey";
+				toSend.removeFirst();
 			}
 		}
 		
@@ -129,16 +203,12 @@ public class WebOSTVKeyboardInput {
 
 			@Override
 			public void onSuccess(Object response) {
-				waiting = false;
-				if ( toSend.size() > 0 ) 
-					sendData();
+				sendNext();
 			}
 
 			@Override
 			public void onError(ServiceCommandError error) {
-				waiting = false;
-				if ( toSend.size() > 0 ) 
-					sendData();
+				sendNext();
 			}
 		};
 
@@ -146,6 +216,17 @@ public class WebOSTVKeyboardInput {
 		request.send();	
 	}
 	
+	private void sendNext() {
+		synchronized (toSend) {
+			if (toSend.isEmpty()) {
+				waiting = false;
+				return;
+			}
+		}
+		
+		sendData();
+	}
+	
 	public URLServiceSubscription<TextInputStatusListener> connect(final TextInputStatusListener listener) {
 		ResponseListener<Object> responseListener = new ResponseListener<Object>() {
 
@@ -0,0 +1,220 @@
+/*
+ * WebOSTVMessageEncoder
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.webos;
+
+import java.util.Iterator;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Writes outbound webOS socket messages straight into a reusable
+ * StringBuilder, instead of building an envelope JSONObject per command and
+ * serializing it with toString().
+ *
+ * The returned string is the only allocation proportional to the message
+ * size. An encoder must not be shared between threads without
+ * synchronization.
+ */
+final class WebOSTVMessageEncoder {
+	private static final String REQUEST_PREFIX = "{\"type\":\"request\",\"id\":\"";
+	private static final String SUBSCRIBE_PREFIX = "{\"type\":\"subscribe\",\"id\":\"";
+	private static final String UNSUBSCRIBE_PREFIX = "{\"type\":\"unsubscribe\",\"id\":\"";
+	private static final String TYPE_PREFIX = "{\"type\":\"";
+	private static final String ID_FIELD = "\",\"id\":\"";
+	private static final String URI_FIELD = "\",\"uri\":\"";
+	private static final String PAYLOAD_FIELD = ",\"payload\":";
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final StringBuilder sb = new StringBuilder(1024);
+
+	/**
+	 * Encodes a request envelope: {"type":..,"id":..,"uri":..,"payload":..}.
+	 * The uri and payload are omitted when null.
+	 */
+	public String encodeCommand(String type, int requestId, String uri, JSONObject payload) {
+		sb.setLength(0);
+
+		if ("request".equals(type)) {
+			sb.append(REQUEST_PREFIX);
+		} else if ("subscribe".equals(type)) {
+			sb.append(SUBSCRIBE_PREFIX);
+		} else if ("unsubscribe".equals(type)) {
+			sb.append(UNSUBSCRIBE_PREFIX);
+		} else {
+			sb.append(TYPE_PREFIX);
+			appendEscaped(type);
+			sb.append(ID_FIELD);
+		}
+
+		sb.append(requestId);
+
+		if (uri != null) {
+			sb.append(URI_FIELD);
+			appendEscaped(uri);
+		}
+
+		sb.append('"');
+
+		if (payload != null) {
+			sb.append(PAYLOAD_FIELD);
+			appendObject(payload);
+		}
+
+		sb.append('}');
+
+		return sb.toString();
+	}
+
+	/**
+	 * Encodes the fields of packet at the top level, followed by payload if it
+	 * is not null. Used for p2p messages, whose fields form the envelope.
+	 */
+	public String encodeMessage(JSONObject packet, JSONObject payload) {
+		sb.setLength(0);
+		sb.append('{');
+
+		boolean first = appendMembers(packet, true);
+
+		if (payload != null) {
+			if (!first)
+				sb.append(',');
+
+			sb.append("\"payload\":");
+			appendObject(payload);
+		}
+
+		sb.append('}');
+
+		return sb.toString();
+	}
+
+	private void appendObject(JSONObject object) {
+		sb.append('{');
+		appendMembers(object, true);
+		sb.append('}');
+	}
+
+	/**
+	 * @return whether no member has been written yet
+	 */
+	private boolean appendMembers(JSONObject object, boolean first) {
+		Iterator<?> keys = object.keys();
+
+		while (keys.hasNext()) {
+			String key = (String) keys.next();
+
+			if (!first)
+				sb.append(',');
+			first = false;
+
+			sb.append('"');
+			appendEscaped(key);
+			sb.append("\":");
+			appendValue(object.opt(key));
+		}
+
+		return first;
+	}
+
+	private void appendArray(JSONArray array) {
+		sb.append('[');
+
+		for (int i = 0; i < array.length(); i++) {
+			if (i > 0)
+				sb.append(',');
+
+			appendValue(array.opt(i));
+		}
+
+		sb.append(']');
+	}
+
+	private void appendValue(Object value) {
+		if (value == null || value == JSONObject.NULL) {
+			sb.append("null");
+		} else if (value instanceof JSONObject) {
+			appendObject((JSONObject) value);
+		} else if (value instanceof JSONArray) {
+			appendArray((JSONArray) value);
+		} else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+			sb.append(((Number) value).longValue());
+		} else if (value instanceof Number) {
+			try {
+				sb.append(JSONObject.numberToString((Number) value));
+			} catch (JSONException e) {
+				// non-finite numbers are not valid JSON
+				sb.append("null");
+			}
+		} else if (value instanceof Boolean) {
+			sb.append(((Boolean) value).booleanValue());
+		} else {
+			sb.append('"');
+			appendEscaped(value.toString());
+			sb.append('"');
+		}
+	}
+
+	private void appendEscaped(String value) {
+		int length = value.length();
+
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\t':
+				sb.append("\\t");
+				break;
+			case '\b':
+				sb.append("\\b");
+				break;
+			case '\f':
+				sb.append("\\f");
+				break;
+			default:
+				// control characters, and line separators that break JavaScript
+				if (c < ' ' || c == '\u2028' || c == '\u2029') {
+					sb.append("\\u");
+					sb.append(HEX[(c >> 12) & 0xF]);
+					sb.append(HEX[(c >> 8) & 0xF]);
+					sb.append(HEX[(c >> 4) & 0xF]);
+					sb.append(HEX[c & 0xF]);
+				} else {
+					sb.append(c);
+				}
+				break;
+			}
+		}
+	}
+}
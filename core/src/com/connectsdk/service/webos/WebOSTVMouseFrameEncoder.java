@@ -0,0 +1,138 @@
+/*
+ * WebOSTVMouseFrameEncoder
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.webos;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes pointer socket frames into a single reusable buffer. Numbers are
+ * written with a fixed number of fraction digits, without going through
+ * String conversion.
+ *
+ * The returned buffer is only valid until the next encode call, and an
+ * encoder must not be shared between threads without synchronization.
+ */
+final class WebOSTVMouseFrameEncoder {
+	private static final int FRACTION_DIGITS = 2;
+	private static final long FRACTION_SCALE = 100;
+
+	private static final byte[] TYPE_MOVE = ascii("type:move\n");
+	private static final byte[] TYPE_SCROLL = ascii("type:scroll\n");
+	private static final byte[] TYPE_BUTTON = ascii("type:button\n");
+	private static final byte[] TYPE_CLICK = ascii("type:click\n");
+	private static final byte[] DX = ascii("dx:");
+	private static final byte[] DY = ascii("dy:");
+	private static final byte[] DOWN_0 = ascii("down:0\n");
+	private static final byte[] DOWN_1 = ascii("down:1\n");
+	private static final byte[] NAME = ascii("name:");
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(128);
+	private final byte[] digits = new byte[20];
+
+	public ByteBuffer encodeMove(double dx, double dy, boolean down) {
+		buffer.clear();
+		buffer.put(TYPE_MOVE);
+		putNumberLine(DX, dx);
+		putNumberLine(DY, dy);
+		buffer.put(down ? DOWN_1 : DOWN_0);
+		buffer.put((byte) '\n');
+		buffer.flip();
+
+		return buffer;
+	}
+
+	public ByteBuffer encodeScroll(double dx, double dy) {
+		buffer.clear();
+		buffer.put(TYPE_SCROLL);
+		putNumberLine(DX, dx);
+		putNumberLine(DY, dy);
+		buffer.put((byte) '\n');
+		buffer.flip();
+
+		return buffer;
+	}
+
+	public ByteBuffer encodeClick() {
+		buffer.clear();
+		buffer.put(TYPE_CLICK);
+		buffer.put((byte) '\n');
+		buffer.flip();
+
+		return buffer;
+	}
+
+	/**
+	 * @param keyName an ASCII button name such as "HOME" or "3D_MODE"
+	 */
+	public ByteBuffer encodeButton(String keyName) {
+		buffer.clear();
+		buffer.put(TYPE_BUTTON);
+		buffer.put(NAME);
+		for (int i = 0; i < keyName.length(); i++) {
+			buffer.put((byte) keyName.charAt(i));
+		}
+		buffer.put((byte) '\n');
+		buffer.put((byte) '\n');
+		buffer.flip();
+
+		return buffer;
+	}
+
+	private void putNumberLine(byte[] name, double value) {
+		buffer.put(name);
+		putNumber(value);
+		buffer.put((byte) '\n');
+	}
+
+	private void putNumber(double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			value = 0;
+
+		long scaled = Math.round(Math.abs(value) * FRACTION_SCALE);
+
+		if (value < 0 && scaled != 0)
+			buffer.put((byte) '-');
+
+		putDigits(scaled / FRACTION_SCALE, 1);
+		buffer.put((byte) '.');
+		putDigits(scaled % FRACTION_SCALE, FRACTION_DIGITS);
+	}
+
+	private void putDigits(long value, int minDigits) {
+		int pos = digits.length;
+
+		do {
+			digits[--pos] = (byte) ('0' + (value % 10));
+			value /= 10;
+		} while (value > 0 || digits.length - pos < minDigits);
+
+		buffer.put(digits, pos, digits.length - pos);
+	}
+
+	private static byte[] ascii(String value) {
+		byte[] bytes = new byte[value.length()];
+
+		for (int i = 0; i < value.length(); i++) {
+			bytes[i] = (byte) value.charAt(i);
+		}
+
+		return bytes;
+	}
+}
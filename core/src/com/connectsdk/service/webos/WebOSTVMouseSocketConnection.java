@@ -22,16 +22,30 @@ package com.connectsdk.service.webos;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 
+import org.java_websocket.WebSocket;
 import org.java_websocket.WebSocket.READYSTATE;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.framing.Framedata.Opcode;
+import org.java_websocket.framing.FramedataImpl1;
 import org.java_websocket.handshake.ServerHandshake;
 
 import android.util.Log;
 
+import com.connectsdk.etc.helper.PointerEventCoalescer;
+import com.connectsdk.etc.helper.PointerEventCoalescer.PointerEventSink;
+
 public class WebOSTVMouseSocketConnection {
 	WebSocketClient ws;
 	String socketPath;
+	PointerEventCoalescer pointerEventCoalescer;
+
+	// frames are encoded into one reusable buffer and sent as a reusable text
+	// frame; the websocket draft copies the payload while framing it
+	private final WebOSTVMouseFrameEncoder encoder = new WebOSTVMouseFrameEncoder();
+	private final FramedataImpl1 frame = new FramedataImpl1(Opcode.TEXT);
 
 	public enum ButtonType {
 		HOME,
@@ -43,6 +57,10 @@ public class WebOSTVMouseSocketConnection {
 	}
 	
 	public WebOSTVMouseSocketConnection(String socketPath) {
+	    pointerEventCoalescer = new PointerEventCoalescer(pointerEventSink);
+	    frame.setFin(true);
+	    frame.setTransferemasked(true);
+	    
 	    Log.d("PointerAndKeyboardFragment", "got socketPath: " + socketPath);
 	    
 	    if (socketPath.startsWith("wss:")) {
@@ -90,6 +108,8 @@ public class WebOSTVMouseSocketConnection {
 	}
 	
 	public void disconnect() {
+		pointerEventCoalescer.reset();
+		
 		if ( ws != null ) {
 			ws.close();
 			ws = null;
@@ -97,22 +117,35 @@ public class WebOSTVMouseSocketConnection {
 	}
 	
 	public boolean isConnected() {
-		if ( ws == null ) 
-			System.out.println("ws is null");
-		else if (ws.getReadyState() != READYSTATE.OPEN) {
-			System.out.println("ws state is not ready");
-		}
 		return (ws != null) && (ws.getReadyState() == READYSTATE.OPEN);
 	}
+
+	/**
+	 * Returns true while earlier frames are still waiting to be written to the
+	 * socket, in which case pointer moves and scrolls are held back and merged.
+	 */
+	private boolean isCongested() {
+		WebSocket connection = ws.getConnection();
+
+		return connection != null && connection.hasBufferedData();
+	}
+
+	private void sendFrame(ByteBuffer payload) {
+		try {
+			frame.setPayload(payload);
+			ws.getConnection().sendFrame(frame);
+		} catch (InvalidDataException e) {
+			Log.w("Connect SDK", "Could not send pointer frame", e);
+		}
+	}
 	
 	public void click() {
+		pointerEventCoalescer.flush();
+		
 		if ( isConnected() ) {
-			StringBuilder sb = new StringBuilder();
-
-			sb.append("type:click\n");
-			sb.append("\n");
-
-			ws.send(sb.toString());
+			synchronized (this) {
+				sendFrame(encoder.encodeClick());
+			}
 		}
 	}
 	
@@ -163,54 +196,66 @@ public class WebOSTVMouseSocketConnection {
 	
 	private void sendSpecialKey(String keyName) {
 		if ( isConnected() ) {
-			StringBuilder sb = new StringBuilder();
-
-			sb.append("type:button\n");
-			sb.append("name:" + keyName + "\n");
-			sb.append("\n");
-
-			ws.send(sb.toString());
+			synchronized (this) {
+				sendFrame(encoder.encodeButton(keyName));
+			}
 		}
 	}
 
 	public void move(double dx, double dy) {
-		if ( isConnected() ) {
-			StringBuilder sb = new StringBuilder();
+		pointerEventCoalescer.move(dx, dy);
+	}
 
-			sb.append("type:move\n");
-			sb.append("dx:" + dx + "\n");
-			sb.append("dy:" + dy + "\n");
-			sb.append("down:0\n");
-			sb.append("\n");
+	private void sendMove(double dx, double dy) {
+		if ( isConnected() ) {
+			if (isCongested()) {
+				pointerEventCoalescer.move(dx, dy);
+				return;
+			}
 
-			ws.send(sb.toString());
+			synchronized (this) {
+				sendFrame(encoder.encodeMove(dx, dy, false));
+			}
 		}
 	}
 
 	public void move(double dx, double dy, boolean drag) {
+		pointerEventCoalescer.flush();
+		
 		if ( isConnected() ) {
-			StringBuilder sb = new StringBuilder();
-
-			sb.append("type:move\n");
-			sb.append("dx:" + dx + "\n");
-			sb.append("dy:" + dy + "\n");
-			sb.append("down:" + (drag ? 1 : 0) + "\n");
-			sb.append("\n");
-
-			ws.send(sb.toString());
+			synchronized (this) {
+				sendFrame(encoder.encodeMove(dx, dy, drag));
+			}
 		}
 	}
 	
 	public void scroll(double dx, double dy) {
-		if ( isConnected() ) {
-			StringBuilder sb = new StringBuilder();
+		pointerEventCoalescer.scroll(dx, dy);
+	}
 
-			sb.append("type:scroll\n");
-			sb.append("dx:" + dx + "\n");
-			sb.append("dy:" + dy + "\n");
-			sb.append("\n");
+	private void sendScroll(double dx, double dy) {
+		if ( isConnected() ) {
+			if (isCongested()) {
+				pointerEventCoalescer.scroll(dx, dy);
+				return;
+			}
 
-			ws.send(sb.toString());
+			synchronized (this) {
+				sendFrame(encoder.encodeScroll(dx, dy));
+			}
 		}
 	}
+
+	private PointerEventSink pointerEventSink = new PointerEventSink() {
+		
+		@Override
+		public void onMove(double dx, double dy) {
+			sendMove(dx, dy);
+		}
+		
+		@Override
+		public void onScroll(double dx, double dy) {
+			sendScroll(dx, dy);
+		}
+	};
 }
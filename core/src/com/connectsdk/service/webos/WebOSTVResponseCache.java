@@ -0,0 +1,233 @@
+/*
+ * WebOSTVResponseCache
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.webos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.os.SystemClock;
+
+import com.connectsdk.service.command.ServiceCommand;
+
+/**
+ * Time-limited cache of responses to idempotent ssap requests, keyed by URI
+ * and payload. Only URIs that have been given a TTL are cached. Entries for a
+ * URI are also dropped whenever a subscription update arrives for that URI or
+ * for one of the URIs registered as related to it.
+ *
+ * Every hit gets its own copy of the response, so a caller that modifies it
+ * does not change what others receive. Only the JSON containers are copied;
+ * strings and numbers are immutable and shared, so a hit costs a walk over
+ * the response rather than parsing it again.
+ *
+ * The cache is disabled until setEnabled(true) is called.
+ */
+public class WebOSTVResponseCache {
+	public static final String APP_LIST = "ssap://com.webos.applicationManager/listApps";
+	public static final String LAUNCH_POINTS = "ssap://com.webos.applicationManager/listLaunchPoints";
+	public static final String EXTERNAL_INPUT_LIST = "ssap://tv/getExternalInputList";
+	public static final String CHANNEL_LIST = "ssap://tv/getChannelList";
+	public static final String SERVICE_LIST = "ssap://api/getServiceList";
+	public static final String SYSTEM_INFO = "ssap://system/getSystemInfo";
+
+	private boolean enabled = false;
+
+	private final Map<String, Long> ttls = new HashMap<String, Long>();
+	private final Map<String, List<String>> invalidatedBy = new HashMap<String, List<String>>();
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	private static class Entry {
+		final String uri;
+		final Object response;
+		final long expires;
+
+		Entry(String uri, Object response, long expires) {
+			this.uri = uri;
+			this.response = response;
+			this.expires = expires;
+		}
+	}
+
+	public WebOSTVResponseCache() {
+		setTTL(APP_LIST, 5 * 60 * 1000);
+		setTTL(EXTERNAL_INPUT_LIST, 60 * 1000);
+		setTTL(CHANNEL_LIST, 5 * 60 * 1000);
+		setTTL(SERVICE_LIST, 30 * 60 * 1000);
+		setTTL(SYSTEM_INFO, 30 * 60 * 1000);
+
+		addInvalidation(APP_LIST, LAUNCH_POINTS);
+	}
+
+	public synchronized boolean isEnabled() {
+		return enabled;
+	}
+
+	public synchronized void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+
+		if (!enabled)
+			entries.clear();
+	}
+
+	/**
+	 * Sets how long responses for a URI stay valid. A TTL of 0 or less stops
+	 * caching the URI.
+	 */
+	public synchronized void setTTL(String uri, long ttl) {
+		if (ttl > 0) {
+			ttls.put(uri, ttl);
+		} else {
+			ttls.remove(uri);
+			invalidate(uri);
+		}
+	}
+
+	/**
+	 * Drops cached responses for uri whenever a subscription update for
+	 * subscriptionUri is received.
+	 */
+	public synchronized void addInvalidation(String uri, String subscriptionUri) {
+		List<String> uris = invalidatedBy.get(subscriptionUri);
+
+		if (uris == null) {
+			uris = new ArrayList<String>();
+			invalidatedBy.put(subscriptionUri, uris);
+		}
+
+		if (!uris.contains(uri))
+			uris.add(uri);
+	}
+
+	public synchronized boolean isCacheable(ServiceCommand<?> command) {
+		return enabled
+				&& command.getTarget() != null
+				&& ServiceCommand.TYPE_REQ.equals(command.getHttpMethod())
+				&& ttls.containsKey(command.getTarget());
+	}
+
+	/**
+	 * Returns the cached response for the command, or null.
+	 */
+	public synchronized Object get(ServiceCommand<?> command) {
+		if (!isCacheable(command))
+			return null;
+
+		String key = keyFor(command);
+		Entry entry = entries.get(key);
+
+		if (entry == null)
+			return null;
+
+		if (entry.expires <= SystemClock.elapsedRealtime()) {
+			entries.remove(key);
+			return null;
+		}
+
+		return copy(entry.response);
+	}
+
+	public synchronized void put(ServiceCommand<?> command, Object response) {
+		if (!isCacheable(command) || !(response instanceof JSONObject || response instanceof JSONArray))
+			return;
+
+		String uri = command.getTarget();
+		long expires = SystemClock.elapsedRealtime() + ttls.get(uri);
+
+		// the caller that received the response may still modify it
+		entries.put(keyFor(command), new Entry(uri, copy(response), expires));
+	}
+
+	/**
+	 * Called for every subscription update received for uri.
+	 */
+	public synchronized void onSubscriptionUpdate(String uri) {
+		if (uri == null || entries.isEmpty())
+			return;
+
+		invalidate(uri);
+
+		List<String> uris = invalidatedBy.get(uri);
+
+		if (uris != null) {
+			for (String related : uris) {
+				invalidate(related);
+			}
+		}
+	}
+
+	public synchronized void invalidate(String uri) {
+		Iterator<Entry> iterator = entries.values().iterator();
+
+		while (iterator.hasNext()) {
+			if (iterator.next().uri.equals(uri))
+				iterator.remove();
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	private static String keyFor(ServiceCommand<?> command) {
+		Object payload = command.getPayload();
+
+		return command.getTarget() + "|" + (payload == null ? "" : payload.toString());
+	}
+
+	/**
+	 * Copies the JSONObjects and JSONArrays of value; anything else is
+	 * returned as it is.
+	 */
+	static Object copy(Object value) {
+		try {
+			if (value instanceof JSONObject) {
+				JSONObject source = (JSONObject) value;
+				JSONObject copy = new JSONObject();
+
+				for (Iterator<?> keys = source.keys(); keys.hasNext(); ) {
+					String key = (String) keys.next();
+					copy.put(key, copy(source.get(key)));
+				}
+
+				return copy;
+			} else if (value instanceof JSONArray) {
+				JSONArray source = (JSONArray) value;
+				JSONArray copy = new JSONArray();
+
+				for (int i = 0; i < source.length(); i++) {
+					copy.put(copy(source.get(i)));
+				}
+
+				return copy;
+			}
+		} catch (JSONException e) {
+			// keys and indexes come from the source itself
+		}
+
+		return value;
+	}
+}
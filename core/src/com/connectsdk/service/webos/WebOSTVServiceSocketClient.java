@@ -10,11 +10,14 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.X509TrustManager;
@@ -22,6 +25,7 @@ import javax.net.ssl.X509TrustManager;
 import org.java_websocket.WebSocket;
 import org.java_websocket.client.DefaultSSLWebSocketClientFactory;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.handshake.ServerHandshake;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -70,6 +74,10 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 	int nextRequestId = 1;
 
 	TrustManager customTrustManager;
+	
+	// TLS contexts are kept per TV, so that reconnects can resume the previous
+	// TLS session instead of doing a full handshake
+	static final Map<String, SSLContextEntry> sslContexts = new HashMap<String, SSLContextEntry>();
     State state = State.INITIAL;
     
     JSONObject manifest;
@@ -77,9 +85,18 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
     static final int PORT = 3001;
     
     // Queue of commands that should be sent once register is complete
-    LinkedHashSet<ServiceCommand<ResponseListener<Object>>> commandQueue = new LinkedHashSet<ServiceCommand<ResponseListener<Object>>>();
+    WebOSTVCommandQueue commandQueue = new WebOSTVCommandQueue();
     
     public SparseArray<ServiceCommand<? extends Object>> requests = new SparseArray<ServiceCommand<? extends Object>>();
+    
+    // one upstream subscription per ssap URI, shared by all local subscribers
+    WebOSTVSubscriptionMultiplexer subscriptions = new WebOSTVSubscriptionMultiplexer(this);
+    
+    private final WebOSTVMessageEncoder encoder = new WebOSTVMessageEncoder();
+    
+    // p2p messages are routed by sending app id (lower case), so each message
+    // is matched with its web app session by a single lookup
+    private final Map<String, P2PMessageHandler> p2pHandlers = new ConcurrentHashMap<String, P2PMessageHandler>();
 	
 	boolean mConnectSucceeded = false;
 	Boolean mConnected;
@@ -90,6 +107,9 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 		this.mService = service;
 		state = State.INITIAL;
 		
+		commandQueue.setCapacity(service.getCommandQueueCapacity());
+		commandQueue.setOverflowPolicy(service.getCommandQueueOverflowPolicy());
+		
 		setDefaultManifest();
 	}
 	
@@ -118,6 +138,27 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 		return state;
 	}
 	
+	/**
+	 * Routes p2p messages from appId to handler instead of the listener.
+	 * App ids are matched case insensitively.
+	 */
+	public void addP2PHandler(String appId, P2PMessageHandler handler) {
+		if (appId == null || handler == null)
+			return;
+		
+		p2pHandlers.put(appId.toLowerCase(Locale.US), handler);
+	}
+	
+	public void removeP2PHandler(String appId, P2PMessageHandler handler) {
+		if (appId == null)
+			return;
+		
+		String key = appId.toLowerCase(Locale.US);
+		
+		if (p2pHandlers.get(key) == handler)
+			p2pHandlers.remove(key);
+	}
+	
 	public void connect() {
 		synchronized (this) {
 			if (state != State.INITIAL) {
@@ -180,7 +221,8 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 
 	@Override
 	public void onMessage(String data) {
-		Log.d(TAG, "webOS Socket [IN] : " + data);
+		if (Log.isLoggable(TAG, Log.VERBOSE))
+			Log.v(TAG, "webOS Socket [IN] : " + data);
 		
 		this.handleMessage(data);
 	}
@@ -188,7 +230,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 	@Override
 	public void onClose(int code, String reason, boolean remote) {
 		System.out.println("onClose: " + code + ": " + reason);
-		this.handleConnectionLost(true, null);
+		this.handleConnectionLost(code == CloseFrame.NORMAL, null);
 	}
 
 	@Override
@@ -215,16 +257,31 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 	
 	protected void handleMessage(String data) {
 		try {
-			JSONObject obj = new JSONObject(data);
-			
-			handleMessage(obj);
+			handleMessage(new WebOSTVSocketMessage(data));
 		} catch (JSONException e) {
 			e.printStackTrace();
 		}
 	}
+	
+	protected void handleMessage(JSONObject message) {
+		handleMessage(new WebOSTVSocketMessage(message));
+	}
 
     @SuppressWarnings("unchecked")
-	protected void handleMessage(JSONObject message) {
+	protected void handleMessage(WebOSTVSocketMessage message) {
+    	if (!p2pHandlers.isEmpty() && "p2p".equals(message.getType())) {
+    		String from = message.getFrom();
+    		P2PMessageHandler handler = p2pHandlers.get(from);
+    		
+    		if (handler == null)
+    			handler = p2pHandlers.get(from.toLowerCase(Locale.US));
+    		
+    		if (handler != null) {
+    			handler.onReceiveP2PMessage(message);
+    			return;
+    		}
+    	}
+    	
     	Boolean shouldProcess = true;
     	
     	if (mListener != null)
@@ -233,10 +290,9 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
     	if (!shouldProcess)
     		return;
     	
-		String type = message.optString("type");
-		Object payload = message.opt("payload");
+		String type = message.getType();
 		
-		String strId = message.optString("id");
+		String strId = message.getId();
 		Integer id = null;
 	    ServiceCommand<ResponseListener<Object>> request = null;
 	    
@@ -258,7 +314,16 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 		if ("response".equals(type)) {
 		    if (request != null) {
 //		        	Log.d("Connect SDK", "Found requests need to handle response");
+			    Object payload = message.getPayload();
+			    
 			    if (payload != null) {
+			    	WebOSTVResponseCache responseCache = mService.getResponseCache();
+			    	
+			    	if (request instanceof URLServiceSubscription)
+			    		responseCache.onSubscriptionUpdate(request.getTarget());
+			    	else
+			    		responseCache.put(request, payload);
+			    	
 			    	Util.postSuccess(request.getResponseListener(), payload);
 		        } 
 		        else {
@@ -269,28 +334,31 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 		        	requests.remove(id);
 		        }
 		    } else {
-		        System.err.println("no matching request id: " + strId + ", payload: " + payload.toString());
+		        System.err.println("no matching request id: " + strId + " (" + message.length() + " chars)");
 		    }
 		} else if ("registered".equals(type)) {
 			if ( !(mService.getServiceConfig() instanceof WebOSTVServiceConfig) ) {
 				mService.setServiceConfig(new WebOSTVServiceConfig(mService.getServiceConfig().getServiceUUID()));
 			}
 			
+			Object payload = message.getPayload();
+			
 			if (payload instanceof JSONObject) {
 				String clientKey = ((JSONObject) payload).optString("client-key");
 				((WebOSTVServiceConfig) mService.getServiceConfig()).setClientKey(clientKey);
 				
 				// Track SSL certificate
 				// Not the prettiest way to get it, but we don't have direct access to the SSLEngine
-				((WebOSTVServiceConfig) mService.getServiceConfig()).setServerCertificate(customTrustManager.getLastCheckedCertificate());
+				if (customTrustManager.getLastCheckedCertificate() != null)
+					((WebOSTVServiceConfig) mService.getServiceConfig()).setServerCertificate(customTrustManager.getLastCheckedCertificate());
 				
 				handleRegistered();
 				
 				if (id != null)
 					requests.remove(id);
 			}
-		} else if ("error".equals(type) && message instanceof JSONObject) {
-		    String error = ((JSONObject) message).optString("error");
+		} else if ("error".equals(type)) {
+		    String error = message.getError();
 		    if (error.length() == 0)
 		    	return;
 		    
@@ -305,11 +373,13 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 		    	e.printStackTrace();
 		    }
 		    
+	    	Object payload = message.getPayload();
+	    	
 	    	if (payload != null) {
 	    		Log.d("Connect SDK", "Error Payload: " + payload.toString());
 	    	}
 		    
-			if ( message.has("id") ) {
+			if ( strId != null ) {
 		    	Log.d("Connect SDK", "Error Desc: " + errorDesc);
 		    	
 		    	if (request != null) {
@@ -325,7 +395,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 		    	}
 			}
 		} else if ("hello".equals(type)) {
-			JSONObject jsonObj = (JSONObject)payload;
+			JSONObject jsonObj = (JSONObject) message.getPayload();
 				
 			if (mService.getServiceConfig().getServiceUUID() != null) {
 				if (!mService.getServiceConfig().getServiceUUID().equals(jsonObj.optString("deviceUUID"))) {
@@ -471,14 +541,12 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 	protected void handleRegistered() {
 		state = State.REGISTERED;
 
-		if (!commandQueue.isEmpty()) {
-			LinkedHashSet<ServiceCommand<ResponseListener<Object>>> tempHashSet = new LinkedHashSet<ServiceCommand<ResponseListener<Object>>>(commandQueue);
-			for (ServiceCommand<ResponseListener<Object>> command : tempHashSet) {
-				Log.d("Connect SDK", "executing queued command for " + command.getTarget());
-				
-				sendCommandImmediately(command);
-				commandQueue.remove(command);
-			}
+		ServiceCommand<?> command;
+		
+		while ((command = commandQueue.poll()) != null) {
+			Log.d("Connect SDK", "executing queued command for " + command.getTarget());
+			
+			sendCommandImmediately(command);
 		}
 		
 		if (mListener != null)
@@ -498,6 +566,20 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 	
 	@SuppressWarnings("unchecked")
 	public void sendCommand(ServiceCommand<?> command) {
+		Object cachedResponse = mService.getResponseCache().get(command);
+		
+		if (cachedResponse != null) {
+			Util.postSuccess(command.getResponseListener(), cachedResponse);
+			return;
+		}
+		
+		if (WebOSTVSubscriptionMultiplexer.isShareable(command)) {
+			command = subscriptions.subscribe((URLServiceSubscription<?>) command);
+			
+			if (command == null)
+				return;
+		}
+		
 		Integer requestId;
 		if (command.getRequestId() == -1) {
 			requestId = this.nextRequestId++;
@@ -511,32 +593,50 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 		
 		if (state == State.REGISTERED) {
 			this.sendCommandImmediately(command);
-		} else if (state == State.CONNECTING || state == State.DISCONNECTING){
+		} else if (state == State.CONNECTING || state == State.REGISTERING || state == State.DISCONNECTING){
 			Log.d("Connect SDK", "queuing command for " + command.getTarget());
-			commandQueue.add((ServiceCommand<ResponseListener<Object>>) command);
+			queueCommand(command);
 		} else {
 			Log.d("Connect SDK", "queuing command and restarting socket for " + command.getTarget());
-			commandQueue.add((ServiceCommand<ResponseListener<Object>>) command);
+			queueCommand(command);
 			connect();
 		}
 	}
 	
+	private void queueCommand(ServiceCommand<?> command) {
+		for (ServiceCommand<?> dropped : commandQueue.offer(command)) {
+			Log.w(TAG, "dropped queued command for " + dropped.getTarget());
+			
+			requests.remove(dropped.getRequestId());
+			
+			if (subscriptions.isUpstream(dropped))
+				subscriptions.discard(dropped);
+		}
+	}
+
+	
 	public void unsubscribe(URLServiceSubscription<?> subscription) {
+		subscription = subscriptions.unsubscribe(subscription);
+		
+		if (subscription == null)
+			return;
+		
 		int requestId = subscription.getRequestId();
 		
+		// never sent, so there is nothing to cancel on the TV
+		if (commandQueue.remove(subscription)) {
+			requests.remove(requestId);
+			return;
+		}
+		
 		if (requests.get(requestId) != null) {
-			JSONObject headers = new JSONObject();
+			String message;
 			
-			try{
-				headers.put("type", "unsubscribe");
-				headers.put("id", String.valueOf(requestId));				
-			} catch (JSONException e)
-			{
-				// Safe to ignore
-				e.printStackTrace();
+			synchronized (encoder) {
+				message = encoder.encodeCommand("unsubscribe", requestId, null, null);
 			}
 			
-			sendMessage(headers, null);
+			sendEncodedMessage(message);
 			requests.remove(requestId);
 		}
 	}
@@ -544,73 +644,68 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
     public void unsubscribe(ServiceSubscription<?> subscription) { }
 	
 	protected void sendCommandImmediately(ServiceCommand<?> command) {
-		JSONObject headers = new JSONObject();
 		JSONObject payload = (JSONObject) command.getPayload();
-		String payloadType = "";
+		String payloadType = payload != null ? payload.optString("type") : "";
 		
-		try
-		{
-			payloadType = payload.getString("type");
-		} catch (Exception ex)
+		if ("p2p".equals(payloadType))
 		{
-			// ignore
-		}
-		
-		if (payloadType == "p2p")
-		{
-			Iterator<?> iterator = payload.keys();
-			
-			while (iterator.hasNext())
-			{
-				String key = (String) iterator.next();
-				
-				try
-				{
-					headers.put(key, payload.get(key));
-				} catch (JSONException ex)
-				{
-					// ignore
-				}
-			}
-			
-			this.sendMessage(headers, null);
+			// the payload fields form the message envelope
+			sendMessage(payload, null);
 		} 
-		else if (payloadType == "hello") {
+		else if ("hello".equals(payloadType)) {
 			this.send(payload.toString());
 		}
 		else {
-			try
-			{
-				headers.put("type", command.getHttpMethod());
-				headers.put("id", String.valueOf(command.getRequestId()));
-				headers.put("uri", command.getTarget());
-			} catch (JSONException ex)
-			{
-				// TODO: handle this
-			}
+			String message;
 			
+			synchronized (encoder) {
+				message = encoder.encodeCommand(command.getHttpMethod(), command.getRequestId(), command.getTarget(), payload);
+			}
 			
-			this.sendMessage(headers, payload);
+			sendEncodedMessage(message);
 		}
 	}
 	
-	private void setSSLContext(SSLContext sslContext) {
-		setWebSocketFactory(new DefaultSSLWebSocketClientFactory(sslContext));
-	}
-	
 	protected void setupSSL() {
-		try {
-			SSLContext sslContext = SSLContext.getInstance("TLS");
-			customTrustManager = new TrustManager();
-			sslContext.init(null, new TrustManager [] {customTrustManager}, null);
-			setSSLContext(sslContext);
+		if ( !(mService.getServiceConfig() instanceof WebOSTVServiceConfig) ) {
+			mService.setServiceConfig(new WebOSTVServiceConfig(mService.getServiceConfig().getServiceUUID()));
+		}
+		
+		X509Certificate expectedCert = ((WebOSTVServiceConfig)mService.getServiceConfig()).getServerCertificate();
+		String key = uri.getHost() + ":" + uri.getPort();
+		
+		synchronized (sslContexts) {
+			SSLContextEntry entry = sslContexts.get(key);
 			
-			if ( !(mService.getServiceConfig() instanceof WebOSTVServiceConfig) ) {
-				mService.setServiceConfig(new WebOSTVServiceConfig(mService.getServiceConfig().getServiceUUID()));
+			if (entry == null || !entry.trusts(expectedCert)) {
+				try {
+					entry = new SSLContextEntry(expectedCert);
+				} catch (KeyException e) {
+					return;
+				} catch (NoSuchAlgorithmException e) {
+					return;
+				}
+				
+				sslContexts.put(key, entry);
 			}
-			customTrustManager.setExpectedCertificate(((WebOSTVServiceConfig)mService.getServiceConfig()).getServerCertificate());
-		} catch (KeyException e) {
-		} catch (NoSuchAlgorithmException e) {
+			
+			customTrustManager = entry.trustManager;
+			setWebSocketFactory(entry.factory);
+		}
+	}
+	
+	/**
+	 * Drops the cached TLS context for a TV, so that the next connection does
+	 * a full handshake.
+	 */
+	public static void clearSSLContext(WebOSTVService service) {
+		URI uri = getURI(service);
+		
+		if (uri == null)
+			return;
+		
+		synchronized (sslContexts) {
+			sslContexts.remove(uri.getHost() + ":" + uri.getPort());
 		}
 	}
 	
@@ -619,24 +714,19 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 	}
 	
 	public void sendMessage(JSONObject packet, JSONObject payload) {
-// 		JSONObject packet = new JSONObject();
+		String message;
 		
-		try {
-//			for (Map.Entry<String, String> entry : headers.entrySet()) {
-//				packet.put(entry.getKey(), entry.getValue());
-//			}
-			
-			if (payload != null) {
-				packet.put("payload", payload);
-			}
-		} catch (JSONException e) {
-			throw new Error(e);
+		synchronized (encoder) {
+			message = encoder.encodeMessage(packet, payload);
 		}
 		
+		sendEncodedMessage(message);
+	}
+	
+	private void sendEncodedMessage(String message) {
 		if ( isConnected() ) {
-			String message = packet.toString();
-			
-			Log.d(TAG, "webOS Socket [OUT] : " + message);
+			if (Log.isLoggable(TAG, Log.VERBOSE))
+				Log.v(TAG, "webOS Socket [OUT] : " + message);
 			
 			this.send(message);
 		}
@@ -646,6 +736,44 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 		}
 	}
 	
+	/**
+	 * Removes the commands that should survive this connection: live
+	 * subscriptions and commands that were queued but not yet sent. They are
+	 * not failed when the connection is lost, and can be sent again on a new
+	 * connection.
+	 */
+	public List<ServiceCommand<?>> takePendingCommands() {
+		LinkedHashSet<ServiceCommand<?>> commands = new LinkedHashSet<ServiceCommand<?>>();
+		
+		commands.addAll(subscriptions.getSubscriptions());
+		
+		for (int i = requests.size() - 1; i >= 0; i--) {
+			ServiceCommand<?> request = requests.valueAt(i);
+			
+			if (request instanceof URLServiceSubscription) {
+				// upstream subscriptions are recreated for their local members
+				if (!subscriptions.isUpstream(request))
+					commands.add(request);
+				
+				requests.removeAt(i);
+			}
+		}
+		
+		for (ServiceCommand<?> command : commandQueue.drain()) {
+			if (!subscriptions.isUpstream(command))
+				commands.add(command);
+			
+			requests.remove(command.getRequestId());
+		}
+		subscriptions.clear();
+		
+		for (ServiceCommand<?> command : commands) {
+			command.setRequestId(-1);
+		}
+		
+		return new ArrayList<ServiceCommand<?>>(commands);
+	}
+	
 	@SuppressWarnings("unchecked")
 	private void handleConnectionLost(boolean cleanDisconnect, Exception ex) {
 		ServiceCommandError error = null;
@@ -664,6 +792,7 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 		}
 		
 		requests.clear();
+		subscriptions.clear();
 	}
 	
 	public void setServerCertificate(X509Certificate cert) {
@@ -733,7 +862,49 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 	    return true;
 	}
 	
-	class TrustManager implements X509TrustManager {
+	static class SSLContextEntry {
+		final TrustManager trustManager = new TrustManager();
+		final DefaultSSLWebSocketClientFactory factory;
+		
+		SSLContextEntry(X509Certificate expectedCert) throws KeyException, NoSuchAlgorithmException {
+			SSLContext sslContext = SSLContext.getInstance("TLS");
+			sslContext.init(null, new TrustManager [] {trustManager}, null);
+			
+			trustManager.setExpectedCertificate(expectedCert);
+			factory = new DefaultSSLWebSocketClientFactory(sslContext);
+		}
+		
+		/**
+		 * Resumed sessions skip certificate checks, so a context may only be
+		 * reused if it has verified the certificate that is pinned now.
+		 */
+		boolean trusts(X509Certificate expectedCert) {
+			if (sameCertificate(expectedCert, trustManager.expectedCert))
+				return true;
+			
+			if (trustManager.expectedCert == null && expectedCert != null
+					&& sameCertificate(expectedCert, trustManager.lastCheckedCert)) {
+				// the certificate seen on first pairing has since been pinned
+				trustManager.setExpectedCertificate(expectedCert);
+				return true;
+			}
+			
+			return false;
+		}
+		
+		private static boolean sameCertificate(X509Certificate a, X509Certificate b) {
+			if (a == null || b == null)
+				return a == b;
+			
+			try {
+				return Arrays.equals(a.getEncoded(), b.getEncoded());
+			} catch (CertificateEncodingException e) {
+				return false;
+			}
+		}
+	}
+	
+	static class TrustManager implements X509TrustManager {
 		X509Certificate expectedCert;
 		X509Certificate lastCheckedCert;
 
@@ -789,7 +960,13 @@ public class WebOSTVServiceSocketClient extends WebSocketClient implements Servi
 		
 		public void onBeforeRegister();
 		public void onRegistrationFailed(ServiceCommandError error);
-		public Boolean onReceiveMessage(JSONObject message);
+		public Boolean onReceiveMessage(WebOSTVSocketMessage message);
+		
+	}
+	
+	public interface P2PMessageHandler {
+		
+		public void onReceiveP2PMessage(WebOSTVSocketMessage message);
 		
 	}
 
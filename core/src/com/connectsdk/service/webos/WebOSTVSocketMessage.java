@@ -0,0 +1,350 @@
+/*
+ * WebOSTVSocketMessage
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.webos;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Incoming message on the webOS socket.
+ *
+ * Only the top level "type", "id", "from" and "error" fields are decoded up
+ * front, by scanning the raw text; the payload is skipped and only parsed
+ * into a JSON tree the first time getPayload() or toJSONObject() is called.
+ * This keeps routing cheap for large responses such as channel and app lists,
+ * and for messages that end up being dropped.
+ */
+public class WebOSTVSocketMessage {
+	private final String raw;
+
+	private String type;
+	private String id;
+	private String from;
+	private String error;
+
+	private int payloadStart = -1;
+	private int payloadEnd = -1;
+
+	private boolean payloadParsed = false;
+	private Object payload;
+	private JSONObject json;
+
+	/**
+	 * @throws JSONException if data is not a JSON object
+	 */
+	public WebOSTVSocketMessage(String data) throws JSONException {
+		this.raw = data;
+
+		if (!scan()) {
+			// fall back to a full parse for anything the scanner does not handle
+			setJSONObject(new JSONObject(data));
+		}
+	}
+
+	public WebOSTVSocketMessage(JSONObject message) {
+		this.raw = null;
+
+		setJSONObject(message);
+	}
+
+	/**
+	 * @return the message type, or an empty string
+	 */
+	public String getType() {
+		return type == null ? "" : type;
+	}
+
+	/**
+	 * @return the request id, or null if the message has none
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return the sending app id of a p2p message, or an empty string
+	 */
+	public String getFrom() {
+		return from == null ? "" : from;
+	}
+
+	/**
+	 * @return the error string of an error message, or an empty string
+	 */
+	public String getError() {
+		return error == null ? "" : error;
+	}
+
+	public boolean hasPayload() {
+		return payloadStart >= 0 || (payloadParsed && payload != null);
+	}
+
+	/**
+	 * Parses the payload on first use.
+	 *
+	 * @return the payload (JSONObject, JSONArray, String, Number or Boolean),
+	 * or null if there is none or it cannot be parsed
+	 */
+	public synchronized Object getPayload() {
+		if (!payloadParsed) {
+			payloadParsed = true;
+
+			if (payloadStart >= 0) {
+				try {
+					payload = new JSONTokener(raw.substring(payloadStart, payloadEnd)).nextValue();
+				} catch (JSONException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		if (payload == JSONObject.NULL)
+			return null;
+
+		return payload;
+	}
+
+	/**
+	 * Parses the whole message on first use.
+	 */
+	public synchronized JSONObject toJSONObject() {
+		if (json == null) {
+			try {
+				json = new JSONObject(raw);
+			} catch (JSONException e) {
+				json = new JSONObject();
+			}
+		}
+
+		return json;
+	}
+
+	/**
+	 * @return the number of characters in the raw message, or -1 if it was
+	 * created from a JSONObject
+	 */
+	public int length() {
+		return raw == null ? -1 : raw.length();
+	}
+
+	@Override
+	public String toString() {
+		return raw != null ? raw : json.toString();
+	}
+
+	private void setJSONObject(JSONObject message) {
+		json = message;
+
+		type = message.optString("type");
+		id = message.has("id") ? message.optString("id") : null;
+		from = message.optString("from");
+		error = message.optString("error");
+
+		payload = message.opt("payload");
+		payloadParsed = true;
+	}
+
+	// Top level scanner. Returns false if the input is not a well formed
+	// object, in which case the caller falls back to a full parse.
+
+	private int pos;
+
+	private boolean scan() {
+		pos = 0;
+
+		try {
+			skipWhitespace();
+			if (next() != '{')
+				return false;
+
+			skipWhitespace();
+			if (peek() == '}')
+				return true;
+
+			while (true) {
+				skipWhitespace();
+				if (next() != '"')
+					return false;
+
+				String key = readString();
+
+				skipWhitespace();
+				if (next() != ':')
+					return false;
+
+				skipWhitespace();
+
+				if ("type".equals(key)) {
+					type = readScalar();
+				} else if ("id".equals(key)) {
+					id = readScalar();
+				} else if ("from".equals(key)) {
+					from = readScalar();
+				} else if ("error".equals(key)) {
+					error = readScalar();
+				} else if ("payload".equals(key)) {
+					payloadStart = pos;
+					skipValue();
+					payloadEnd = pos;
+				} else {
+					skipValue();
+				}
+
+				skipWhitespace();
+				char c = next();
+
+				if (c == '}')
+					return true;
+				if (c != ',')
+					return false;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			return false;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private char next() {
+		return raw.charAt(pos++);
+	}
+
+	private char peek() {
+		return raw.charAt(pos);
+	}
+
+	private void skipWhitespace() {
+		while (pos < raw.length() && raw.charAt(pos) <= ' ') {
+			pos++;
+		}
+	}
+
+	/**
+	 * Reads a string or a bare literal such as a number.
+	 */
+	private String readScalar() {
+		if (peek() == '"') {
+			pos++;
+			return readString();
+		}
+
+		int start = pos;
+		skipValue();
+
+		String value = raw.substring(start, pos).trim();
+
+		return "null".equals(value) ? null : value;
+	}
+
+	/**
+	 * Reads the rest of a string whose opening quote has been consumed.
+	 */
+	private String readString() {
+		int start = pos;
+
+		// fast path for strings without escapes
+		while (true) {
+			char c = next();
+
+			if (c == '"')
+				return raw.substring(start, pos - 1);
+			if (c == '\\')
+				break;
+		}
+
+		StringBuilder sb = new StringBuilder(raw.substring(start, pos - 1));
+		pos--;
+
+		while (true) {
+			char c = next();
+
+			if (c == '"')
+				return sb.toString();
+
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+
+			c = next();
+
+			switch (c) {
+			case 'b': sb.append('\b'); break;
+			case 'f': sb.append('\f'); break;
+			case 'n': sb.append('\n'); break;
+			case 'r': sb.append('\r'); break;
+			case 't': sb.append('\t'); break;
+			case 'u':
+				sb.append((char) Integer.parseInt(raw.substring(pos, pos + 4), 16));
+				pos += 4;
+				break;
+			default: sb.append(c); break;
+			}
+		}
+	}
+
+	private void skipValue() {
+		char c = peek();
+
+		if (c == '"') {
+			pos++;
+			skipString();
+			return;
+		}
+
+		if (c == '{' || c == '[') {
+			int depth = 0;
+
+			do {
+				c = next();
+
+				if (c == '"')
+					skipString();
+				else if (c == '{' || c == '[')
+					depth++;
+				else if (c == '}' || c == ']')
+					depth--;
+			} while (depth > 0);
+
+			return;
+		}
+
+		while (pos < raw.length()) {
+			c = peek();
+
+			if (c == ',' || c == '}' || c == ']')
+				break;
+
+			pos++;
+		}
+	}
+
+	private void skipString() {
+		while (true) {
+			char c = next();
+
+			if (c == '"')
+				return;
+			if (c == '\\')
+				pos++;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * WebOSTVSubscriptionMultiplexer
+ * Connect SDK
+ *
+ * Copyright (c) 2014 LG Electronics.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.connectsdk.service.webos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.json.JSONObject;
+
+import com.connectsdk.core.Util;
+import com.connectsdk.service.capability.listeners.ResponseListener;
+import com.connectsdk.service.command.ServiceCommand;
+import com.connectsdk.service.command.ServiceCommand.ServiceCommandProcessor;
+import com.connectsdk.service.command.ServiceCommandError;
+import com.connectsdk.service.command.URLServiceSubscription;
+
+/**
+ * Keeps a single upstream "subscribe" request per ssap URI and payload, and
+ * fans its updates out to every local subscription for the same URI. The
+ * latest payload is cached and replayed to subscriptions that join later. The
+ * upstream subscription is cancelled when its last local subscription
+ * unsubscribes.
+ */
+public class WebOSTVSubscriptionMultiplexer {
+	// app-to-app connections carry per-session state and are never shared
+	static final String CONNECT_TO_APP = "ssap://webapp/connectToApp";
+
+	private final ServiceCommandProcessor processor;
+	private final Map<String, SharedSubscription> sharedByKey = new HashMap<String, SharedSubscription>();
+	private final Map<URLServiceSubscription<?>, SharedSubscription> sharedByMember = new HashMap<URLServiceSubscription<?>, SharedSubscription>();
+
+	class SharedSubscription implements ResponseListener<Object> {
+		final String key;
+		final URLServiceSubscription<ResponseListener<Object>> upstream;
+		final List<URLServiceSubscription<?>> members = new CopyOnWriteArrayList<URLServiceSubscription<?>>();
+
+		// written and read under the multiplexer's lock
+		volatile Object lastPayload;
+
+		// set when the upstream failed; it will not deliver again
+		boolean dead = false;
+
+		SharedSubscription(String key, String uri, JSONObject payload) {
+			this.key = key;
+			this.upstream = new URLServiceSubscription<ResponseListener<Object>>(processor, uri, payload, true, this);
+		}
+
+		@Override
+		public void onSuccess(Object payload) {
+			synchronized (WebOSTVSubscriptionMultiplexer.this) {
+				if (dead)
+					return;
+
+				lastPayload = payload;
+			}
+
+			for (URLServiceSubscription<?> member : members) {
+				ResponseListener<Object> listener = member.getResponseListener();
+
+				if (listener != null)
+					listener.onSuccess(payload);
+			}
+		}
+
+		@Override
+		public void onError(ServiceCommandError error) {
+			synchronized (WebOSTVSubscriptionMultiplexer.this) {
+				lastPayload = null;
+				dead = true;
+
+				// later subscribers to the same URI open a new upstream
+				if (sharedByKey.get(key) == this)
+					sharedByKey.remove(key);
+			}
+
+			for (URLServiceSubscription<?> member : members) {
+				ResponseListener<Object> listener = member.getResponseListener();
+
+				if (listener != null)
+					listener.onError(error);
+			}
+		}
+	}
+
+	public WebOSTVSubscriptionMultiplexer(ServiceCommandProcessor processor) {
+		this.processor = processor;
+	}
+
+	public static boolean isShareable(ServiceCommand<?> command) {
+		return command instanceof URLServiceSubscription
+				&& ServiceCommand.TYPE_SUB.equals(command.getHttpMethod())
+				&& command.getTarget() != null
+				&& !CONNECT_TO_APP.equals(command.getTarget());
+	}
+
+	/**
+	 * Attaches a local subscription to the shared upstream subscription for its
+	 * URI and payload.
+	 *
+	 * @return the upstream subscription that has to be sent to the TV, or null
+	 * if one is already active
+	 */
+	public synchronized URLServiceSubscription<?> subscribe(URLServiceSubscription<?> subscription) {
+		if (isUpstream(subscription))
+			return subscription;
+
+		String key = keyFor(subscription);
+		SharedSubscription shared = sharedByKey.get(key);
+		boolean created = false;
+
+		if (shared == null) {
+			shared = new SharedSubscription(key, subscription.getTarget(), (JSONObject) subscription.getPayload());
+			sharedByKey.put(key, shared);
+			created = true;
+		}
+
+		if (!shared.members.contains(subscription)) {
+			shared.members.add(subscription);
+			sharedByMember.put(subscription, shared);
+		}
+
+		if (created)
+			return shared.upstream;
+
+		if (shared.lastPayload != null)
+			Util.postSuccess(subscription.getResponseListener(), shared.lastPayload);
+
+		return null;
+	}
+
+	/**
+	 * Detaches a local subscription.
+	 *
+	 * @return the subscription to cancel upstream: the shared one when the last
+	 * local subscription leaves, the given one if it is not shared, or null
+	 */
+	public synchronized URLServiceSubscription<?> unsubscribe(URLServiceSubscription<?> subscription) {
+		SharedSubscription shared = sharedByMember.remove(subscription);
+
+		if (shared == null)
+			return isUpstream(subscription) ? null : subscription;
+
+		shared.members.remove(subscription);
+
+		// a failed upstream is already gone from the TV and from sharedByKey
+		if (shared.dead || !shared.members.isEmpty())
+			return null;
+
+		sharedByKey.remove(shared.key);
+
+		return shared.upstream;
+	}
+
+	/**
+	 * Forgets an upstream subscription that will never be sent, along with its
+	 * local subscriptions.
+	 */
+	public synchronized void discard(ServiceCommand<?> upstream) {
+		Iterator<SharedSubscription> iterator = sharedByKey.values().iterator();
+
+		while (iterator.hasNext()) {
+			SharedSubscription shared = iterator.next();
+
+			if (shared.upstream == upstream) {
+				for (URLServiceSubscription<?> member : shared.members) {
+					sharedByMember.remove(member);
+				}
+
+				iterator.remove();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the upstream subscriptions currently in use.
+	 */
+	public synchronized List<URLServiceSubscription<?>> getUpstreamSubscriptions() {
+		List<URLServiceSubscription<?>> upstreams = new ArrayList<URLServiceSubscription<?>>();
+
+		for (SharedSubscription shared : sharedByKey.values()) {
+			upstreams.add(shared.upstream);
+		}
+
+		return upstreams;
+	}
+
+	/**
+	 * Returns the local subscriptions attached to shared upstream ones.
+	 */
+	public synchronized List<URLServiceSubscription<?>> getSubscriptions() {
+		return new ArrayList<URLServiceSubscription<?>>(sharedByMember.keySet());
+	}
+
+	public synchronized void clear() {
+		sharedByKey.clear();
+		sharedByMember.clear();
+	}
+
+	boolean isUpstream(ServiceCommand<?> subscription) {
+		return subscription.getResponseListener() instanceof SharedSubscription;
+	}
+
+	private static String keyFor(ServiceCommand<?> command) {
+		Object payload = command.getPayload();
+
+		return command.getTarget() + "|" + (payload == null ? "" : payload.toString());
+	}
+}
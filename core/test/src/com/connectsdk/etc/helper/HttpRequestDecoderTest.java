@@ -0,0 +1,138 @@
+package com.connectsdk.etc.helper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpRequestDecoderTest {
+
+	private HttpRequestDecoder decoder;
+
+	@Before
+	public void setUp() {
+		decoder = new HttpRequestDecoder();
+	}
+
+	private static ByteBuffer bytes(String text) throws Exception {
+		return ByteBuffer.wrap(text.getBytes("ISO-8859-1"));
+	}
+
+	@Test
+	public void testRequestWithoutBody() throws Exception {
+		Assert.assertTrue(decoder.decode(bytes("get /dlna/1?x=1 HTTP/1.1\r\nHost: 10.0.0.2\r\n\r\n")));
+
+		Assert.assertEquals("GET", decoder.getMethod());
+		Assert.assertEquals("/dlna/1", decoder.getPath());
+		Assert.assertEquals("HTTP/1.1", decoder.getVersion());
+		Assert.assertEquals("10.0.0.2", decoder.getHeader("host"));
+		Assert.assertEquals(0, decoder.getBody().length);
+	}
+
+	@Test
+	public void testContentLengthBody() throws Exception {
+		ByteBuffer buffer = bytes("NOTIFY /dlna/1 HTTP/1.1\r\nContent-Length: 5\r\n\r\nhelloEXTRA");
+
+		Assert.assertTrue(decoder.decode(buffer));
+		Assert.assertEquals("hello", decoder.getBodyAsString());
+
+		// bytes after the request are left for the next one
+		Assert.assertEquals(5, buffer.remaining());
+	}
+
+	@Test
+	public void testSplitReads() throws Exception {
+		String request = "NOTIFY /dlna/1 HTTP/1.1\r\nCONTENT-LENGTH: 11\r\nSID: uuid:1\r\n\r\nhello world";
+
+		// feed the request one byte at a time, splitting every line and the body
+		for (int i = 0; i < request.length() - 1; i++) {
+			Assert.assertFalse(decoder.decode(bytes(request.substring(i, i + 1))));
+		}
+
+		Assert.assertTrue(decoder.decode(bytes(request.substring(request.length() - 1))));
+		Assert.assertEquals("uuid:1", decoder.getHeader("Sid"));
+		Assert.assertEquals("hello world", decoder.getBodyAsString());
+	}
+
+	@Test
+	public void testChunkedBodyWithExtensionsAndTrailers() throws Exception {
+		String request = "NOTIFY /dlna/1 HTTP/1.1\r\n"
+				+ "Transfer-Encoding: chunked\r\n\r\n"
+				+ "5;name=value\r\nhello\r\n"
+				+ "6 ; last\r\n world\r\n"
+				+ "0\r\n"
+				+ "X-Trailer: ignored\r\n"
+				+ "\r\n";
+
+		Assert.assertTrue(decoder.decode(bytes(request)));
+		Assert.assertEquals("hello world", decoder.getBodyAsString());
+		Assert.assertNull(decoder.getHeader("X-Trailer"));
+	}
+
+	@Test
+	public void testChunkedBodySplitAcrossReads() throws Exception {
+		Assert.assertFalse(decoder.decode(bytes("NOTIFY / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n1")));
+		Assert.assertFalse(decoder.decode(bytes("0\r\n0123456")));
+		Assert.assertFalse(decoder.decode(bytes("789abcdef\r")));
+		Assert.assertFalse(decoder.decode(bytes("\n0\r\n")));
+		Assert.assertTrue(decoder.decode(bytes("\r\n")));
+
+		Assert.assertEquals("0123456789abcdef", decoder.getBodyAsString());
+	}
+
+	@Test
+	public void testLeadingBlankLines() throws Exception {
+		Assert.assertTrue(decoder.decode(bytes("\r\n\r\nGET /a HTTP/1.1\r\n\r\n")));
+
+		Assert.assertEquals("GET", decoder.getMethod());
+		Assert.assertEquals("/a", decoder.getPath());
+	}
+
+	@Test(expected = IOException.class)
+	public void testContentLengthOverLimit() throws Exception {
+		decoder.decode(bytes("NOTIFY / HTTP/1.1\r\nContent-Length: " + (HttpRequestDecoder.MAX_BODY_SIZE + 1) + "\r\n\r\n"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testMalformedContentLength() throws Exception {
+		decoder.decode(bytes("NOTIFY / HTTP/1.1\r\nContent-Length: ten\r\n\r\n"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testMalformedChunkSize() throws Exception {
+		decoder.decode(bytes("NOTIFY / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testChunkWithoutLineEnd() throws Exception {
+		decoder.decode(bytes("NOTIFY / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n2\r\nabc\r\n"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testChunkedBodyOverLimit() throws Exception {
+		decoder.decode(bytes("NOTIFY / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+				+ Integer.toHexString(HttpRequestDecoder.MAX_BODY_SIZE + 1) + "\r\n"));
+	}
+
+	@Test(expected = IOException.class)
+	public void testHeaderOverLimit() throws Exception {
+		StringBuilder header = new StringBuilder("GET / HTTP/1.1\r\nX-Long: ");
+
+		while (header.length() <= HttpRequestDecoder.MAX_HEADER_SIZE)
+			header.append("aaaaaaaaaaaaaaaa");
+
+		decoder.decode(bytes(header.toString()));
+	}
+
+	@Test
+	public void testBodyCharset() throws Exception {
+		byte[] head = "NOTIFY / HTTP/1.1\r\nContent-Type: text/xml; charset=\"ISO-8859-1\"\r\nContent-Length: 1\r\n\r\n".getBytes("ISO-8859-1");
+		ByteBuffer buffer = ByteBuffer.allocate(head.length + 1);
+		buffer.put(head).put((byte) 0xE9).flip();
+
+		Assert.assertTrue(decoder.decode(buffer));
+		Assert.assertEquals("\u00e9", decoder.getBodyAsString());
+	}
+}
@@ -0,0 +1,121 @@
+package com.connectsdk.service.upnp;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import com.connectsdk.core.MediaInfo;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DLNAMediaInfoParserTest {
+
+	private static final String DIDL = "<DIDL-Lite xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\" "
+			+ "xmlns:dc=\"http://purl.org/dc/elements/1.1/\" "
+			+ "xmlns:upnp=\"urn:schemas-upnp-org:metadata-1-0/upnp/\">"
+			+ "<item id=\"1\" parentID=\"0\" restricted=\"1\">"
+			+ "<dc:title>Song &amp; Dance</dc:title>"
+			+ "<dc:creator>Artist</dc:creator>"
+			+ "<upnp:albumArtist>Album Artist</upnp:albumArtist>"
+			+ "<upnp:album>Album</upnp:album>"
+			+ "<upnp:genre>Pop</upnp:genre>"
+			+ "<upnp:albumArtURI>http://10.0.0.1/art%201.jpg</upnp:albumArtURI>"
+			+ "<upnp:albumArtURI>http://10.0.0.1/art2.jpg</upnp:albumArtURI>"
+			+ "<upnp:class>object.item.audioItem.musicTrack</upnp:class>"
+			+ "<res protocolInfo=\"http-get:*:audio/mpeg:DLNA.ORG_OP=01\" duration=\"0:03:25.000\">"
+			+ " http://10.0.0.1/song.mp3 </res>"
+			+ "<res protocolInfo=\"http-get:*:audio/ogg:*\">http://10.0.0.1/song.ogg</res>"
+			+ "</item>"
+			+ "<item id=\"2\"><dc:title>Second</dc:title></item>"
+			+ "</DIDL-Lite>";
+
+	@Test
+	public void testMetadata() {
+		DLNAMediaInfoParser.Metadata metadata = DLNAMediaInfoParser.parse(DIDL);
+
+		Assert.assertEquals("Song & Dance", metadata.getTitle());
+		Assert.assertEquals("Artist", metadata.getCreator());
+		Assert.assertEquals("Album Artist", metadata.getAlbumArtist());
+		Assert.assertEquals("Album", metadata.getAlbum());
+		Assert.assertEquals("Pop", metadata.getGenre());
+		Assert.assertEquals("http://10.0.0.1/art 1.jpg", metadata.getAlbumArtURI());
+		Assert.assertEquals("object.item.audioItem.musicTrack", metadata.getUpnpClass());
+	}
+
+	@Test
+	public void testResources() {
+		DLNAMediaInfoParser.Metadata metadata = DLNAMediaInfoParser.parse(DIDL);
+
+		Assert.assertEquals(2, metadata.getResources().size());
+		Assert.assertEquals("http://10.0.0.1/song.mp3", metadata.getURL());
+		Assert.assertEquals("audio/mpeg", metadata.getMimeType());
+		Assert.assertEquals("0:03:25.000", metadata.getResources().get(0).getDuration());
+		Assert.assertEquals("audio/ogg", metadata.getResources().get(1).getMimeType());
+		Assert.assertNull(metadata.getResources().get(1).getDuration());
+	}
+
+	@Test
+	public void testMediaInfo() {
+		MediaInfo info = DLNAMediaInfoParser.getMediaInfo(DIDL);
+
+		Assert.assertEquals("http://10.0.0.1/song.mp3", info.getUrl());
+		Assert.assertEquals("audio/mpeg", info.getMimeType());
+		Assert.assertEquals("Song & Dance", info.getTitle());
+		Assert.assertEquals("Artist\nAlbum", info.getDescription());
+		Assert.assertEquals("http://10.0.0.1/art 1.jpg", info.getImages().get(0).getUrl());
+		Assert.assertEquals(205000, info.getDuration());
+	}
+
+	@Test
+	public void testStreamContentIsPreferredTitle() {
+		String didl = "<DIDL-Lite xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\" "
+				+ "xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:r=\"urn:schemas-rinconnetworks-com:metadata-1-0/\">"
+				+ "<item><dc:title>Radio</dc:title><r:streamContent>Now Playing</r:streamContent></item></DIDL-Lite>";
+
+		Assert.assertEquals("Now Playing", DLNAMediaInfoParser.getTitle(didl));
+	}
+
+	@Test
+	public void testUndeclaredPrefixes() {
+		// r: and dlna: are used without being declared, as many renderers do
+		String didl = "<DIDL-Lite xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">"
+				+ "<item><dc:title>Song</dc:title>"
+				+ "<r:streamContent>Radio</r:streamContent>"
+				+ "<res protocolInfo=\"http-get:*:audio/mpeg:*\" dlna:profileID=\"MP3\">http://x/s.mp3</res>"
+				+ "<dlna:extra>ignored</dlna:extra>"
+				+ "</item></DIDL-Lite>";
+
+		MediaInfo info = DLNAMediaInfoParser.getMediaInfo(didl);
+
+		Assert.assertEquals("Radio", info.getTitle());
+		Assert.assertEquals("http://x/s.mp3", info.getUrl());
+		Assert.assertEquals("audio/mpeg", info.getMimeType());
+	}
+
+	@Test
+	public void testEscapedMetadata() {
+		String escaped = DIDL.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+
+		Assert.assertEquals("Song & Dance", DLNAMediaInfoParser.getTitle(escaped));
+		Assert.assertEquals("http://10.0.0.1/song.mp3", DLNAMediaInfoParser.getURL(escaped));
+	}
+
+	@Test
+	public void testContainer() {
+		String didl = "<DIDL-Lite xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">"
+				+ "<container id=\"1\"><dc:title>Folder</dc:title></container></DIDL-Lite>";
+
+		Assert.assertEquals("Folder", DLNAMediaInfoParser.getTitle(didl));
+	}
+
+	@Test
+	public void testMissingMetadata() {
+		Assert.assertEquals("", DLNAMediaInfoParser.getTitle(null));
+		Assert.assertEquals("", DLNAMediaInfoParser.getTitle("NOT_IMPLEMENTED"));
+		Assert.assertEquals("", DLNAMediaInfoParser.getURL("<DIDL-Lite><item>"));
+		Assert.assertTrue(DLNAMediaInfoParser.parse("").getResources().isEmpty());
+		Assert.assertEquals(0, DLNAMediaInfoParser.getMediaInfo("").getDuration());
+	}
+}
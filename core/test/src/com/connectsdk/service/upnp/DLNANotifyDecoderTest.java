@@ -0,0 +1,129 @@
+package com.connectsdk.service.upnp;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DLNANotifyDecoderTest {
+
+	private static List<DLNALastChange> decode(String lastChange) throws Exception {
+		String body = "<?xml version=\"1.0\"?>"
+				+ "<e:propertyset xmlns:e=\"urn:schemas-upnp-org:event-1-0\">"
+				+ "<e:property><LastChange>" + escape(lastChange) + "</LastChange></e:property>"
+				+ "</e:propertyset>";
+
+		return DLNANotifyDecoder.decode(new ByteArrayInputStream(body.getBytes("UTF-8")));
+	}
+
+	private static String escape(String xml) {
+		return xml.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+	}
+
+	@Test
+	public void testTransportEvent() throws Exception {
+		String metadata = "<DIDL-Lite xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\"><item><dc:title xmlns:dc=\"http://purl.org/dc/elements/1.1/\">A &amp; B</dc:title></item></DIDL-Lite>";
+
+		List<DLNALastChange> changes = decode("<Event xmlns=\"urn:schemas-upnp-org:metadata-1-0/AVT/\">"
+				+ "<InstanceID val=\"0\">"
+				+ "<TransportState val=\"PLAYING\"/>"
+				+ "<CurrentTrackURI val=\"http://10.0.0.1/a.mp4\"/>"
+				+ "<CurrentTrackMetaData val=\"" + escape(metadata) + "\"/>"
+				+ "<NumberOfTracks val=\"1\"/>"
+				+ "</InstanceID></Event>");
+
+		Assert.assertEquals(1, changes.size());
+
+		DLNALastChange change = changes.get(0);
+
+		Assert.assertEquals("0", change.getInstanceId());
+		Assert.assertEquals("PLAYING", change.getTransportState());
+		Assert.assertEquals("http://10.0.0.1/a.mp4", change.getCurrentTrackURI());
+		Assert.assertEquals(metadata, change.getCurrentTrackMetaData());
+		Assert.assertNull(change.getVolume(DLNALastChange.MASTER_CHANNEL));
+	}
+
+	@Test
+	public void testRenderingControlEvent() throws Exception {
+		List<DLNALastChange> changes = decode("<Event xmlns=\"urn:schemas-upnp-org:metadata-1-0/RCS/\">"
+				+ "<InstanceID val=\"0\">"
+				+ "<Volume channel=\"Master\" val=\"25\"/>"
+				+ "<Volume channel=\"LF\" val=\"30\"/>"
+				+ "<Mute channel=\"Master\" val=\"1\"/>"
+				+ "<Mute channel=\"LF\" val=\"false\"/>"
+				+ "</InstanceID></Event>");
+
+		DLNALastChange change = changes.get(0);
+
+		Assert.assertEquals(Integer.valueOf(25), change.getVolume(DLNALastChange.MASTER_CHANNEL));
+		Assert.assertEquals(Integer.valueOf(30), change.getVolume("LF"));
+		Assert.assertEquals(Boolean.TRUE, change.getMute(DLNALastChange.MASTER_CHANNEL));
+		Assert.assertEquals(Boolean.FALSE, change.getMute("LF"));
+		Assert.assertNull(change.getTransportState());
+	}
+
+	@Test
+	public void testVariablesWithoutChannelAreMaster() throws Exception {
+		DLNALastChange change = decode("<Event><InstanceID val=\"0\"><Volume val=\"7\"/><Mute val=\"true\"/></InstanceID></Event>").get(0);
+
+		Assert.assertEquals(Integer.valueOf(7), change.getVolume(DLNALastChange.MASTER_CHANNEL));
+		Assert.assertEquals(Boolean.TRUE, change.getMute(DLNALastChange.MASTER_CHANNEL));
+	}
+
+	@Test
+	public void testInvalidValuesAreSkipped() throws Exception {
+		DLNALastChange change = decode("<Event><InstanceID val=\"0\"><Volume val=\"loud\"/><TransportState/></InstanceID></Event>").get(0);
+
+		Assert.assertNull(change.getVolume(DLNALastChange.MASTER_CHANNEL));
+		Assert.assertNull(change.getTransportState());
+	}
+
+	@Test
+	public void testSeveralInstancesAndQueues() throws Exception {
+		List<DLNALastChange> changes = decode("<Event>"
+				+ "<InstanceID val=\"0\"><TransportState val=\"STOPPED\"/></InstanceID>"
+				+ "<QueueID val=\"1\"><TransportState val=\"PLAYING\"/></QueueID>"
+				+ "<InstanceID val=\"1\"><TransportState val=\"PAUSED_PLAYBACK\"/></InstanceID>"
+				+ "</Event>");
+
+		Assert.assertEquals(2, changes.size());
+		Assert.assertEquals("0", changes.get(0).getInstanceId());
+		Assert.assertEquals("STOPPED", changes.get(0).getTransportState());
+		Assert.assertEquals("1", changes.get(1).getInstanceId());
+		Assert.assertEquals("PAUSED_PLAYBACK", changes.get(1).getTransportState());
+	}
+
+	@Test
+	public void testUndeclaredPrefixes() throws Exception {
+		String body = "<e:propertyset><e:property><LastChange>"
+				+ escape("<Event><InstanceID val=\"0\"><TransportState val=\"PLAYING\"/><r:EnqueuedTransportURI val=\"x\"/></InstanceID></Event>")
+				+ "</LastChange></e:property></e:propertyset>";
+
+		List<DLNALastChange> changes = DLNANotifyDecoder.decode(new ByteArrayInputStream(body.getBytes("UTF-8")));
+
+		Assert.assertEquals(1, changes.size());
+		Assert.assertEquals("PLAYING", changes.get(0).getTransportState());
+	}
+
+	@Test
+	public void testPropertiesOtherThanLastChangeAreIgnored() throws Exception {
+		String body = "<e:propertyset xmlns:e=\"urn:schemas-upnp-org:event-1-0\">"
+				+ "<e:property><SystemUpdateID>4</SystemUpdateID></e:property>"
+				+ "</e:propertyset>";
+
+		Assert.assertTrue(DLNANotifyDecoder.decode(new ByteArrayInputStream(body.getBytes("UTF-8"))).isEmpty());
+	}
+
+	@Test
+	public void testEmptyLastChange() throws Exception {
+		String body = "<e:propertyset xmlns:e=\"urn:schemas-upnp-org:event-1-0\"><e:property><LastChange></LastChange></e:property></e:propertyset>";
+
+		Assert.assertTrue(DLNANotifyDecoder.decode(new ByteArrayInputStream(body.getBytes("UTF-8"))).isEmpty());
+	}
+}
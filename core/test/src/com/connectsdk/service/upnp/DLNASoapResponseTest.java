@@ -0,0 +1,112 @@
+package com.connectsdk.service.upnp;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class DLNASoapResponseTest {
+
+	private static final String POSITION_INFO = "<?xml version=\"1.0\"?>"
+			+ "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\" s:encodingStyle=\"http://schemas.xmlsoap.org/soap/encoding/\">"
+			+ "<s:Body><u:GetPositionInfoResponse xmlns:u=\"urn:schemas-upnp-org:service:AVTransport:1\">"
+			+ "<Track>1</Track>"
+			+ "<TrackDuration>0:03:25.500</TrackDuration>"
+			+ "<TrackMetaData>&lt;DIDL-Lite xmlns=&quot;urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/&quot;&gt;&lt;/DIDL-Lite&gt;</TrackMetaData>"
+			+ "<TrackURI>http://10.0.0.1/a.mp4?x=1&amp;y=2</TrackURI>"
+			+ "<RelTime>0:01:02</RelTime>"
+			+ "<AbsTime>NOT_IMPLEMENTED</AbsTime>"
+			+ "</u:GetPositionInfoResponse></s:Body></s:Envelope>";
+
+	private static final String FAULT = "<?xml version=\"1.0\"?>"
+			+ "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body><s:Fault>"
+			+ "<faultcode>s:Client</faultcode><faultstring>UPnPError</faultstring>"
+			+ "<detail><UPnPError xmlns=\"urn:schemas-upnp-org:control-1-0\">"
+			+ "<errorCode>701</errorCode><errorDescription>Transition not available</errorDescription>"
+			+ "</UPnPError></detail></s:Fault></s:Body></s:Envelope>";
+
+	@Test
+	public void testRequestedValuesAreDecoded() {
+		DLNASoapResponse response = DLNASoapResponse.parse(POSITION_INFO, "Track", "TrackURI", "TrackMetaData");
+
+		Assert.assertFalse(response.isFault());
+		Assert.assertEquals(1, response.getInt("Track", -1));
+		Assert.assertEquals("http://10.0.0.1/a.mp4?x=1&y=2", response.getString("TrackURI"));
+		Assert.assertEquals("<DIDL-Lite xmlns=\"urn:schemas-upnp-org:metadata-1-0/DIDL-Lite/\"></DIDL-Lite>", response.getString("TrackMetaData"));
+	}
+
+	@Test
+	public void testValuesNotAskedForAreNotKept() {
+		DLNASoapResponse response = DLNASoapResponse.parse(POSITION_INFO, "RelTime");
+
+		Assert.assertEquals(62000, response.getTime("RelTime"));
+		Assert.assertNull(response.getString("TrackURI"));
+		Assert.assertEquals(-1, response.getInt("Track", -1));
+	}
+
+	@Test
+	public void testBooleans() {
+		String xml = "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body><u:GetMuteResponse xmlns:u=\"urn:schemas-upnp-org:service:RenderingControl:1\">"
+				+ "<A>1</A><B>true</B><C>0</C><D>false</D>"
+				+ "</u:GetMuteResponse></s:Body></s:Envelope>";
+
+		DLNASoapResponse response = DLNASoapResponse.parse(xml, "A", "B", "C", "D");
+
+		Assert.assertTrue(response.getBoolean("A"));
+		Assert.assertTrue(response.getBoolean("B"));
+		Assert.assertFalse(response.getBoolean("C"));
+		Assert.assertFalse(response.getBoolean("D"));
+		Assert.assertFalse(response.getBoolean("E"));
+	}
+
+	@Test
+	public void testFault() {
+		DLNASoapResponse response = DLNASoapResponse.parse(FAULT, "CurrentVolume");
+
+		Assert.assertTrue(response.isFault());
+		Assert.assertEquals(701, response.getErrorCode());
+		Assert.assertEquals("Transition not available", response.getErrorDescription());
+		Assert.assertNull(response.getString("CurrentVolume"));
+	}
+
+	@Test
+	public void testMalformedResponse() {
+		DLNASoapResponse response = DLNASoapResponse.parse("<s:Envelope><Track>1</Tr", "Track");
+
+		Assert.assertFalse(response.isFault());
+		Assert.assertEquals(-1, response.getInt("Track", -1));
+		Assert.assertNull(DLNASoapResponse.parse(null, "Track").getString("Track"));
+	}
+
+	@Test
+	public void testPositionInfo() {
+		DLNAPositionInfo info = DLNAPositionInfo.parse(POSITION_INFO);
+
+		Assert.assertEquals(205500, info.getDuration());
+		Assert.assertEquals(62000, info.getPosition());
+		Assert.assertEquals("http://10.0.0.1/a.mp4?x=1&y=2", info.getTrackURI());
+	}
+
+	@Test
+	public void testParseTime() {
+		Assert.assertEquals(0, DLNAPositionInfo.parseTime("0:00:00"));
+		Assert.assertEquals(62000, DLNAPositionInfo.parseTime("0:01:02"));
+		Assert.assertEquals(3723000, DLNAPositionInfo.parseTime("01:02:03"));
+		Assert.assertEquals(100 * 3600000L + 1000, DLNAPositionInfo.parseTime("100:00:01"));
+		Assert.assertEquals(1500, DLNAPositionInfo.parseTime("0:00:01.5"));
+		Assert.assertEquals(1250, DLNAPositionInfo.parseTime("0:00:01.250"));
+		Assert.assertEquals(1999, DLNAPositionInfo.parseTime("0:00:01.9999"));
+	}
+
+	@Test
+	public void testParseTimeRejectsNonTimes() {
+		Assert.assertEquals(0, DLNAPositionInfo.parseTime(null));
+		Assert.assertEquals(0, DLNAPositionInfo.parseTime(""));
+		Assert.assertEquals(0, DLNAPositionInfo.parseTime("NOT_IMPLEMENTED"));
+		Assert.assertEquals(0, DLNAPositionInfo.parseTime("0:xx:01"));
+		Assert.assertEquals(0, DLNAPositionInfo.parseTime("0::01"));
+	}
+}
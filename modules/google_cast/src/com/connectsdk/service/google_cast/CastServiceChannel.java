@@ -43,15 +43,19 @@ public class CastServiceChannel implements Cast.MessageReceivedCallback{
 
 	@Override
 	public void onMessageReceived(CastDevice castDevice, String namespace, final String message) {
-		if (session.getWebAppSessionListener() == null)
-			return;
-		
 		JSONObject messageJSON = null;
 		
 		try {
 			messageJSON = new JSONObject(message);
 		} catch (JSONException e) { }
 		
+		// acknowledgements of bulk message chunks are not for the app
+		if (messageJSON != null && session.getMessageChunker().handleMessage(messageJSON))
+			return;
+		
+		if (session.getWebAppSessionListener() == null)
+			return;
+		
 		final JSONObject mMessage = messageJSON;
 		
 		Util.runOnUI(new Runnable() {
@@ -48,6 +48,14 @@ public class CastWebAppSession extends WebAppSession {
 		super(launchSession, service);
 		
 		this.service = (CastService) service;
+
+		messageChunker = new WebAppMessageChunker(new WebAppMessageChunker.Transport() {
+
+			@Override
+			public void sendFrame(JSONObject frame, ResponseListener<Object> listener) {
+				sendMessage(frame, listener);
+			}
+		});
 	}
 	
 	@Override
@@ -77,6 +85,8 @@ public class CastWebAppSession extends WebAppSession {
 	}
 	
 	public void disconnectFromWebApp() {
+		messageChunker.cancelAll();
+
 		if (castServiceChannel == null) 
 			return;
 
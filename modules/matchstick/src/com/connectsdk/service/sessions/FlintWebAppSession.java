@@ -49,6 +49,14 @@ public class FlintWebAppSession extends WebAppSession {
         super(launchSession, service);
 
         this.service = (FlintService) service;
+
+        messageChunker = new WebAppMessageChunker(new WebAppMessageChunker.Transport() {
+
+            @Override
+            public void sendFrame(JSONObject frame, ResponseListener<Object> listener) {
+                sendMessage(frame, listener);
+            }
+        });
     }
 
     @Override
@@ -79,6 +87,8 @@ public class FlintWebAppSession extends WebAppSession {
     }
 
     public void disconnectFromWebApp() {
+        messageChunker.cancelAll();
+
         if (castServiceChannel == null)
             return;
 